@@ -0,0 +1,53 @@
+package com.remotefalcon.controlpanel.config;
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * What POI's SXSSF writer needs in the native image. The XMLBeans schema types behind a
+ * workbook are looked up by name: the type system holder through its public
+ * {@code typeSystem} field, each type's interface and implementation with
+ * {@code Class.forName}, and the implementation built through its public constructor.
+ * The compiled schemas ({@code .xsb}) and POI's own templates are read as resources.
+ */
+public class PoiRuntimeHints implements RuntimeHintsRegistrar {
+    private static final String TYPE_SYSTEM_HOLDER = "org.apache.poi.schemas.ooxml.system.ooxml.TypeSystemHolder";
+
+    // The schemas a workbook is written with: sheets, styles and shared strings, the
+    // package relationships and document properties, and the theme.
+    private static final List<String> SCHEMA_PACKAGES = List.of(
+            "org/openxmlformats/schemas/spreadsheetml/x2006/main",
+            "org/openxmlformats/schemas/officeDocument/x2006",
+            "org/openxmlformats/schemas/drawingml/x2006/main");
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        hints.resources().registerPattern("org/apache/poi/schemas/ooxml/**");
+        hints.resources().registerPattern("org/apache/poi/xssf/usermodel/presetTableStyles.xml");
+        hints.resources().registerPattern("font_metrics.properties");
+
+        hints.reflection().registerType(TypeReference.of(TYPE_SYSTEM_HOLDER), MemberCategory.PUBLIC_FIELDS);
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(classLoader);
+        MetadataReaderFactory metadataReaderFactory = new CachingMetadataReaderFactory(resolver);
+        try {
+            for(String schemaPackage : SCHEMA_PACKAGES) {
+                for(Resource resource : resolver.getResources("classpath*:" + schemaPackage + "/**/*.class")) {
+                    String className = metadataReaderFactory.getMetadataReader(resource).getClassMetadata().getClassName();
+                    hints.reflection().registerType(TypeReference.of(className), MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
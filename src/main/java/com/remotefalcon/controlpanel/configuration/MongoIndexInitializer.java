@@ -1,5 +1,7 @@
 package com.remotefalcon.controlpanel.configuration;
 
+import com.remotefalcon.controlpanel.document.StatsRollup;
+import com.remotefalcon.controlpanel.document.ViewerPageBody;
 import com.remotefalcon.library.documents.Show;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -12,7 +14,8 @@ import org.springframework.data.mongodb.core.query.Collation;
 import org.springframework.stereotype.Component;
 
 /**
- * Ensures the production indexes on the {@code show} collection exist at startup.
+ * Ensures the production indexes on the {@code show} collection (and the collections
+ * derived from it) exist at startup.
  *
  * <p>Historically these indexes were applied imperatively via {@code mongosh} against
  * the live cluster, which left fresh environments (local dev, new clusters, ephemeral
@@ -27,6 +30,11 @@ import org.springframework.stereotype.Component;
  *   <li>{@code idx_showToken} — unique index on {@code showToken}</li>
  *   <li>{@code idx_email_ci} — unique index on {@code email} with case-insensitive
  *       collation ({@code locale: "en", strength: 2})</li>
+ *   <li>{@code idx_showToken_bucket_type_name} — unique compound index on the
+ *       {@code statsRollup} collection; serves both the dashboard's bucket range scan
+ *       and the rollup job's upserts</li>
+ *   <li>{@code idx_showToken_name} — unique compound index on the
+ *       {@code viewerPageBody} collection; one page reference per show page (the HTML itself is keyed by hash in {@code viewerPageContent})</li>
  * </ul>
  */
 @Component
@@ -53,6 +61,22 @@ public class MongoIndexInitializer {
               .unique()
               .collation(Collation.of("en").strength(Collation.ComparisonLevel.secondary()))
       );
+      mongoTemplate.indexOps(StatsRollup.class).ensureIndex(
+          new Index()
+              .on("showToken", Sort.Direction.ASC)
+              .on("bucket", Sort.Direction.ASC)
+              .on("type", Sort.Direction.ASC)
+              .on("name", Sort.Direction.ASC)
+              .named("idx_showToken_bucket_type_name")
+              .unique()
+      );
+      mongoTemplate.indexOps(ViewerPageBody.class).ensureIndex(
+          new Index()
+              .on("showToken", Sort.Direction.ASC)
+              .on("name", Sort.Direction.ASC)
+              .named("idx_showToken_name")
+              .unique()
+      );
       log.info("Show collection indexes ensured in {} ms",
                System.currentTimeMillis() - start);
     } catch (Exception e) {
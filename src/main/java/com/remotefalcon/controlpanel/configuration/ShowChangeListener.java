@@ -0,0 +1,35 @@
+package com.remotefalcon.controlpanel.configuration;
+
+import com.remotefalcon.controlpanel.repository.ShowChangedEvent;
+import com.remotefalcon.library.documents.Show;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns whole-document saves and deletes of shows, which go through
+ * {@code ShowRepository} rather than the field-level writes in
+ * {@code ShowRepositoryCustomImpl}, into {@link ShowChangedEvent}s.
+ */
+@Component
+@RequiredArgsConstructor
+public class ShowChangeListener extends AbstractMongoEventListener<Show> {
+  private final ApplicationEventPublisher applicationEventPublisher;
+
+  @Override
+  public void onAfterSave(AfterSaveEvent<Show> event) {
+    this.applicationEventPublisher.publishEvent(new ShowChangedEvent(event.getSource().getShowToken()));
+  }
+
+  @Override
+  public void onAfterDelete(AfterDeleteEvent<Show> event) {
+    // The source is the delete filter; anything but a plain showToken match could have hit any show.
+    Document filter = event.getSource();
+    Object showToken = filter.get("showToken");
+    this.applicationEventPublisher.publishEvent(new ShowChangedEvent(showToken instanceof String token ? token : null));
+  }
+}
@@ -0,0 +1,35 @@
+package com.remotefalcon.controlpanel.configuration;
+
+import com.remotefalcon.controlpanel.dashboard.StatsTimeIndex;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.Stat;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.mapping.event.AfterConvertCallback;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the embedded {@code stats} lists of every loaded {@link Show} in chronological
+ * order, so readers can select date windows with {@link StatsTimeIndex#window} instead
+ * of scanning. Lists written in order by the viewer API only cost one comparison pass.
+ */
+@Component
+@Slf4j
+public class StatsOrderCallback implements AfterConvertCallback<Show> {
+
+  @Override
+  public Show onAfterConvert(Show show, Document document, String collection) {
+    Stat stats = show.getStats();
+    if(stats == null) {
+      return show;
+    }
+    boolean sorted = StatsTimeIndex.ensureSorted(stats.getPage(), Stat.Page::getDateTime);
+    sorted |= StatsTimeIndex.ensureSorted(stats.getJukebox(), Stat.Jukebox::getDateTime);
+    sorted |= StatsTimeIndex.ensureSorted(stats.getVoting(), Stat.Voting::getDateTime);
+    sorted |= StatsTimeIndex.ensureSorted(stats.getVotingWin(), Stat.VotingWin::getDateTime);
+    if(sorted) {
+      log.debug("Sorted out-of-order stats for show {}", show.getShowToken());
+    }
+    return show;
+  }
+}
@@ -4,11 +4,11 @@ import com.remotefalcon.controlpanel.aop.RequiresAccess;
 import com.remotefalcon.controlpanel.request.DownloadStatsToExcelRequest;
 import com.remotefalcon.controlpanel.service.DashboardService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequiredArgsConstructor
@@ -17,7 +17,7 @@ public class DashboardController {
 
   @PostMapping(value = "/controlPanel/downloadStatsToExcel")
   @RequiresAccess
-  public ResponseEntity<ByteArrayResource> downloadStatsToExcel(@RequestBody DownloadStatsToExcelRequest downloadStatsToExcelRequest) {
+  public ResponseEntity<StreamingResponseBody> downloadStatsToExcel(@RequestBody DownloadStatsToExcelRequest downloadStatsToExcelRequest) {
     return this.dashboardService.downloadStatsToExcel(downloadStatsToExcelRequest);
   }
 }
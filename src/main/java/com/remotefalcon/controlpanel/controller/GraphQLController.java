@@ -2,8 +2,14 @@ package com.remotefalcon.controlpanel.controller;
 
 import com.remotefalcon.controlpanel.aop.RequiresAccess;
 import com.remotefalcon.controlpanel.aop.RequiresAdminAccess;
+import com.remotefalcon.controlpanel.dashboard.DashboardStatsOptions;
+import com.remotefalcon.controlpanel.enums.DashboardStatsSource;
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.controlpanel.enums.UniqueViewerMode;
 import com.remotefalcon.controlpanel.model.AskWattson;
 import com.remotefalcon.controlpanel.model.WattsonResponse;
+import com.remotefalcon.controlpanel.repository.ShowProjection;
+import com.remotefalcon.controlpanel.response.DeletedStats;
 import com.remotefalcon.controlpanel.response.ShowsOnAMap;
 import com.remotefalcon.library.documents.Notification;
 import com.remotefalcon.library.documents.Show;
@@ -14,13 +20,19 @@ import com.remotefalcon.controlpanel.response.dashboard.DashboardStatsResponse;
 import com.remotefalcon.controlpanel.service.DashboardService;
 import com.remotefalcon.controlpanel.service.GraphQLMutationService;
 import com.remotefalcon.controlpanel.service.GraphQLQueryService;
+import com.remotefalcon.controlpanel.service.ViewerPageService;
+import graphql.schema.DataFetchingFieldSelectionSet;
+import graphql.schema.SelectedField;
 import lombok.RequiredArgsConstructor;
 import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.graphql.data.method.annotation.SchemaMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequiredArgsConstructor
@@ -28,6 +40,7 @@ public class GraphQLController {
     private final GraphQLMutationService graphQLMutationService;
     private final GraphQLQueryService graphQLQueryService;
     private final DashboardService dashboardService;
+    private final ViewerPageService viewerPageService;
 
     /********
     Mutations
@@ -167,6 +180,12 @@ public class GraphQLController {
         return this.graphQLMutationService.deleteStatsWithinRange(startDate, endDate, timezone);
     }
 
+    @MutationMapping
+    @RequiresAccess
+    public DeletedStats deleteStatsInRange(@Argument Long startDate, @Argument Long endDate) {
+        return this.graphQLMutationService.deleteStatsInRange(startDate, endDate);
+    }
+
     @MutationMapping
     @RequiresAccess
     public Boolean markNotificationsAsRead(@Argument List<String> uuids) {
@@ -197,6 +216,24 @@ public class GraphQLController {
         return this.graphQLMutationService.deleteNotification(uuid);
     }
 
+    @MutationMapping
+    @RequiresAdminAccess
+    public Boolean backfillStatsRollups() {
+        return this.graphQLMutationService.backfillStatsRollups();
+    }
+
+    @MutationMapping
+    @RequiresAdminAccess
+    public Boolean migrateViewerPages() {
+        return this.graphQLMutationService.migrateViewerPages();
+    }
+
+    @MutationMapping
+    @RequiresAdminAccess
+    public Boolean migrateStatsToTimeSeries() {
+        return this.graphQLMutationService.migrateStatsToTimeSeries();
+    }
+
     @MutationMapping
     @RequiresAccess
     public Boolean wattsonFeedback(@Argument String responseId, @Argument String feedback) {
@@ -208,14 +245,14 @@ public class GraphQLController {
      Queries
      *******/
     @QueryMapping
-    public Show signIn() {
-        return graphQLQueryService.signIn();
+    public Show signIn(DataFetchingFieldSelectionSet selectionSet) {
+        return graphQLQueryService.signIn(this.showProjection(selectionSet));
     }
 
     @QueryMapping
     @RequiresAdminAccess
-    public Show impersonateShow(@Argument String showSubdomain) {
-        return graphQLQueryService.impersonateShow(showSubdomain);
+    public Show impersonateShow(@Argument String showSubdomain, DataFetchingFieldSelectionSet selectionSet) {
+        return graphQLQueryService.impersonateShow(showSubdomain, this.showProjection(selectionSet));
     }
 
     @QueryMapping
@@ -225,20 +262,67 @@ public class GraphQLController {
     }
 
     @QueryMapping
-    public Show verifyPasswordResetLink(@Argument String passwordResetLink) {
-        return graphQLQueryService.verifyPasswordResetLink(passwordResetLink);
+    public Show verifyPasswordResetLink(@Argument String passwordResetLink, DataFetchingFieldSelectionSet selectionSet) {
+        return graphQLQueryService.verifyPasswordResetLink(passwordResetLink, this.showProjection(selectionSet));
     }
 
     @QueryMapping
     @RequiresAccess()
-    public Show getShow() {
-        return graphQLQueryService.getShow();
+    public Show getShow(DataFetchingFieldSelectionSet selectionSet) {
+        return graphQLQueryService.getShow(this.showProjection(selectionSet));
+    }
+
+    // Show fields map one-to-one onto document fields; serviceToken is computed, not stored.
+    private ShowProjection showProjection(DataFetchingFieldSelectionSet selectionSet) {
+        return ShowProjection.of(selectionSet.getImmediateFields().stream()
+                .map(SelectedField::getName)
+                .filter(name -> !name.startsWith("__") && !name.equals("serviceToken"))
+                .toList());
     }
 
     @QueryMapping
     @RequiresAccess()
-    public DashboardStatsResponse dashboardStats(@Argument Long startDate, @Argument Long endDate, @Argument String timezone) {
-        return dashboardService.dashboardStats(startDate, endDate, timezone);
+    public DashboardStatsResponse dashboardStats(@Argument Long startDate, @Argument Long endDate, @Argument String timezone,
+                                                 @Argument DashboardStatsSource source, @Argument UniqueViewerMode uniqueViewerMode,
+                                                 @Argument Boolean includeViewerIps, DataFetchingFieldSelectionSet selectionSet) {
+        return dashboardService.dashboardStats(startDate, endDate, timezone, DashboardStatsOptions.builder()
+                .source(source)
+                .uniqueViewerMode(uniqueViewerMode)
+                .includeViewerIps(Boolean.TRUE.equals(includeViewerIps) || selectionSet.contains("page/viewerIps"))
+                .statTypes(this.requestedStatTypes(selectionSet))
+                .build());
+    }
+
+    // Only the stat types behind the selected sections are scanned.
+    private Set<StatType> requestedStatTypes(DataFetchingFieldSelectionSet selectionSet) {
+        Set<StatType> statTypes = EnumSet.noneOf(StatType.class);
+        if(selectionSet.containsAnyOf("page", "uniqueViewers")) {
+            statTypes.add(StatType.PAGE);
+        }
+        if(selectionSet.containsAnyOf("jukeboxByDate", "jukeboxBySequence")) {
+            statTypes.add(StatType.JUKEBOX);
+        }
+        if(selectionSet.containsAnyOf("votingByDate", "votingBySequence")) {
+            statTypes.add(StatType.VOTING);
+        }
+        if(selectionSet.containsAnyOf("votingWinByDate", "votingWinBySequence")) {
+            statTypes.add(StatType.VOTING_WIN);
+        }
+        return statTypes;
+    }
+
+    @SchemaMapping(typeName = "Stat", field = "viewerIps")
+    public List<String> viewerIps(DashboardStatsResponse.Stat stat, @Argument Integer offset, @Argument Integer limit) {
+        return dashboardService.viewerIpsPage(stat, offset, limit);
+    }
+
+    // Page HTML may live outside the show document; it is only fetched when selected.
+    @SchemaMapping(typeName = "Show", field = "pages")
+    public List<ViewerPage> pages(Show show, DataFetchingFieldSelectionSet selectionSet) {
+        if(!selectionSet.contains("html")) {
+            return show.getPages();
+        }
+        return viewerPageService.withHtml(show.getShowToken(), show.getPages());
     }
 
     @QueryMapping
@@ -255,8 +339,8 @@ public class GraphQLController {
 
     @QueryMapping
     @RequiresAdminAccess
-    public Show getShowByShowName(@Argument String showName) {
-        return graphQLQueryService.getShowByShowName(showName);
+    public Show getShowByShowName(@Argument String showName, DataFetchingFieldSelectionSet selectionSet) {
+        return graphQLQueryService.getShowByShowName(showName, this.showProjection(selectionSet));
     }
 
     @QueryMapping
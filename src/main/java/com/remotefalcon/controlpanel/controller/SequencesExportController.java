@@ -1,14 +1,15 @@
 package com.remotefalcon.controlpanel.controller;
 
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.remotefalcon.controlpanel.aop.RequiresAccess;
+import com.remotefalcon.controlpanel.enums.ExportFormat;
 import com.remotefalcon.controlpanel.service.SequencesExportService;
 
 import lombok.RequiredArgsConstructor;
@@ -20,8 +21,9 @@ public class SequencesExportController {
 
     @PostMapping(value = "/controlPanel/downloadSequencesToExcel")
     @RequiresAccess
-    public ResponseEntity<ByteArrayResource> downloadSequencesToExcel() {
-        return this.sequencesExportService.downloadSequencesToExcel();
+    public ResponseEntity<StreamingResponseBody> downloadSequencesToExcel(@RequestParam(value = "format", defaultValue = "CSV") ExportFormat format,
+                                                                          @RequestParam(value = "gzip", defaultValue = "false") boolean gzip) {
+        return this.sequencesExportService.downloadSequencesToExcel(format, gzip);
     }
 
     @PostMapping(value = "/controlPanel/uploadSequencesCsv", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -0,0 +1,196 @@
+package com.remotefalcon.controlpanel.dashboard;
+
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.library.models.Stat;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Immutable, column-oriented copy of a show's embedded stats.
+ *
+ * <p>Each stats list becomes two parallel primitive arrays: a sorted {@code long[]} of UTC
+ * epoch millis and an {@code int[]} of ids into a string dictionary (sequence names for
+ * jukebox/voting/votingWin, viewer IPs for page hits, {@code -1} for a missing value).
+ * Repeated names and IPs are stored once, so a show's history costs about 12 bytes per
+ * stat instead of a mapped object graph, and a date window is located with a binary
+ * search over the time column.
+ *
+ * <p>Times are kept in millis rather than seconds: the dashboard window's bounds are
+ * exclusive and stat times carry sub-second precision, so a seconds column would count or
+ * drop entries within a second of either bound differently from the list it replaces. The
+ * accumulator is still handed epoch seconds.
+ */
+public final class ColumnarStats {
+  private static final int ARRAY_HEADER_BYTES = 16;
+  private static final int STRING_OVERHEAD_BYTES = 40;
+
+  private final Column page;
+  private final Column jukebox;
+  private final Column voting;
+  private final Column votingWin;
+  private final String[] ipDictionary;
+  private final String[] nameDictionary;
+  private final boolean present;
+  private final long sizeInBytes;
+
+  private ColumnarStats(boolean present, Column page, Column jukebox, Column voting, Column votingWin,
+                        String[] ipDictionary, String[] nameDictionary) {
+    this.present = present;
+    this.page = page;
+    this.jukebox = jukebox;
+    this.voting = voting;
+    this.votingWin = votingWin;
+    this.ipDictionary = ipDictionary;
+    this.nameDictionary = nameDictionary;
+    this.sizeInBytes = page.sizeInBytes() + jukebox.sizeInBytes() + voting.sizeInBytes() + votingWin.sizeInBytes()
+            + dictionarySizeInBytes(ipDictionary) + dictionarySizeInBytes(nameDictionary);
+  }
+
+  public static ColumnarStats of(Stat stats) {
+    Dictionary ips = new Dictionary();
+    Dictionary names = new Dictionary();
+    if(stats == null) {
+      return new ColumnarStats(false, Column.EMPTY, Column.EMPTY, Column.EMPTY, Column.EMPTY, ips.toArray(), names.toArray());
+    }
+    return new ColumnarStats(true,
+            Column.of(stats.getPage(), Stat.Page::getDateTime, Stat.Page::getIp, ips),
+            Column.of(stats.getJukebox(), Stat.Jukebox::getDateTime, Stat.Jukebox::getName, names),
+            Column.of(stats.getVoting(), Stat.Voting::getDateTime, Stat.Voting::getName, names),
+            Column.of(stats.getVotingWin(), Stat.VotingWin::getDateTime, Stat.VotingWin::getName, names),
+            ips.toArray(),
+            names.toArray());
+  }
+
+  /**
+   * Feeds every stat strictly inside the accumulator's window into it, skipping columns
+   * for stat types it was not asked for. Page hits without
+   * an IP are skipped, as they always have been for the dashboard.
+   */
+  public void accumulate(DashboardStatsAccumulator accumulator) {
+    long startMillis = accumulator.getStartUtc().toInstant(ZoneOffset.UTC).toEpochMilli();
+    long endMillis = accumulator.getEndUtc().toInstant(ZoneOffset.UTC).toEpochMilli();
+
+    if(accumulator.isRequested(StatType.PAGE)) {
+      int to = this.page.firstIndexAtOrAfter(endMillis);
+      for(int i = this.page.firstIndexAtOrAfter(startMillis + 1); i < to; i++) {
+        int ip = this.page.values[i];
+        if(ip >= 0) {
+          accumulator.addPage(Math.floorDiv(this.page.epochMillis[i], 1000L), this.ipDictionary[ip]);
+        }
+      }
+    }
+    this.accumulateSequences(accumulator, StatType.JUKEBOX, this.jukebox, startMillis, endMillis);
+    this.accumulateSequences(accumulator, StatType.VOTING, this.voting, startMillis, endMillis);
+    this.accumulateSequences(accumulator, StatType.VOTING_WIN, this.votingWin, startMillis, endMillis);
+  }
+
+  /**
+   * Whether the show had a stats object at all, as opposed to empty lists.
+   */
+  public boolean isPresent() {
+    return this.present;
+  }
+
+  public long sizeInBytes() {
+    return this.sizeInBytes;
+  }
+
+  private void accumulateSequences(DashboardStatsAccumulator accumulator, StatType type, Column column,
+                                   long startMillis, long endMillis) {
+    if(!accumulator.isRequested(type)) {
+      return;
+    }
+    int to = column.firstIndexAtOrAfter(endMillis);
+    for(int i = column.firstIndexAtOrAfter(startMillis + 1); i < to; i++) {
+      int name = column.values[i];
+      accumulator.addSequence(type, Math.floorDiv(column.epochMillis[i], 1000L), name >= 0 ? this.nameDictionary[name] : null, 1);
+    }
+  }
+
+  private static long dictionarySizeInBytes(String[] dictionary) {
+    long bytes = ARRAY_HEADER_BYTES + 8L * dictionary.length;
+    for(String value : dictionary) {
+      bytes += STRING_OVERHEAD_BYTES + value.length();
+    }
+    return bytes;
+  }
+
+  private static final class Column {
+    private static final Column EMPTY = new Column(new long[0], new int[0]);
+
+    private final long[] epochMillis;
+    private final int[] values;
+
+    private Column(long[] epochMillis, int[] values) {
+      this.epochMillis = epochMillis;
+      this.values = values;
+    }
+
+    private static <T> Column of(List<T> stats, Function<T, LocalDateTime> dateTime, Function<T, String> value,
+                                 Dictionary dictionary) {
+      if(stats == null || stats.isEmpty()) {
+        return EMPTY;
+      }
+      // Sorted on load already (see StatsTimeIndex); this is a no-op pass in practice.
+      StatsTimeIndex.ensureSorted(stats, dateTime);
+      long[] epochMillis = new long[stats.size()];
+      int[] values = new int[stats.size()];
+      int size = 0;
+      for(T stat : stats) {
+        LocalDateTime statDateTime = dateTime.apply(stat);
+        if(statDateTime == null) {
+          continue;
+        }
+        epochMillis[size] = statDateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+        values[size] = dictionary.idOf(value.apply(stat));
+        size++;
+      }
+      if(size < epochMillis.length) {
+        epochMillis = Arrays.copyOf(epochMillis, size);
+        values = Arrays.copyOf(values, size);
+      }
+      return new Column(epochMillis, values);
+    }
+
+    private int firstIndexAtOrAfter(long millis) {
+      int low = 0;
+      int high = this.epochMillis.length;
+      while(low < high) {
+        int mid = (low + high) >>> 1;
+        if(this.epochMillis[mid] < millis) {
+          low = mid + 1;
+        }else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    private long sizeInBytes() {
+      return 2L * ARRAY_HEADER_BYTES + 8L * this.epochMillis.length + 4L * this.values.length;
+    }
+  }
+
+  private static final class Dictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    private int idOf(String value) {
+      if(value == null) {
+        return -1;
+      }
+      return this.ids.computeIfAbsent(value, key -> this.ids.size());
+    }
+
+    private String[] toArray() {
+      String[] values = new String[this.ids.size()];
+      this.ids.forEach((value, id) -> values[id] = value);
+      return values;
+    }
+  }
+}
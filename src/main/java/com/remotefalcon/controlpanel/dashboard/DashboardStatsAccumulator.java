@@ -0,0 +1,294 @@
+package com.remotefalcon.controlpanel.dashboard;
+
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.controlpanel.enums.UniqueViewerMode;
+import com.remotefalcon.controlpanel.response.dashboard.DashboardStatsResponse;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Collects dashboard counts into per-day primitive counters for a single date window
+ * and renders them as {@link DashboardStatsResponse} sections.
+ *
+ * <p>Callers feed it counts keyed by a UTC epoch second — either one raw stat at a
+ * time or a pre-aggregated bucket — and it resolves the user-zone day with a binary
+ * search over precomputed day boundaries, so no per-event {@link ZonedDateTime} is
+ * created. Counts that were already grouped by user-zone date (e.g. by Mongo) can be
+ * added by {@link LocalDate} directly. Days between the window start and end are always present in the output
+ * (gap filled with zero counts), matching what the dashboard charts expect.
+ *
+ * <p>Unique page viewers are counted per day and across the whole window, either
+ * exactly (a set of IPs per day) or with one {@link HyperLogLog} sketch per day, whose
+ * size does not grow with traffic. Viewer IP lists are only kept and returned when
+ * asked for.
+ *
+ * <p>Only the requested {@link StatType}s are tracked and rendered; sections for the
+ * other types are left {@code null} in the response.
+ */
+public class DashboardStatsAccumulator {
+  private final ZoneId userZone;
+  private final LocalDate firstDay;
+  private final int gapFillDays;
+  private final long[] dayStartEpochSeconds;
+  private final LocalDateTime startUtc;
+  private final LocalDateTime endUtc;
+
+  private final UniqueViewerMode uniqueViewerMode;
+  private final boolean includeViewerIps;
+  private final Set<StatType> statTypes;
+  private final int[] pageTotals;
+  private final Set<String>[] pageIps;
+  private final HyperLogLog[] pageSketches;
+  private final Map<StatType, SequenceCounts> sequenceCounts = new EnumMap<>(StatType.class);
+
+  public DashboardStatsAccumulator(ZonedDateTime startDateAtZone, ZonedDateTime endDateAtZone) {
+    this(startDateAtZone, endDateAtZone, UniqueViewerMode.EXACT, true, EnumSet.allOf(StatType.class));
+  }
+
+  @SuppressWarnings("unchecked")
+  public DashboardStatsAccumulator(ZonedDateTime startDateAtZone, ZonedDateTime endDateAtZone,
+                                   UniqueViewerMode uniqueViewerMode, boolean includeViewerIps, Set<StatType> statTypes) {
+    this.userZone = startDateAtZone.getZone();
+    this.firstDay = startDateAtZone.toLocalDate();
+    this.gapFillDays = (int) Math.max(0, ChronoUnit.DAYS.between(this.firstDay, endDateAtZone.toLocalDate()));
+    this.startUtc = startDateAtZone.withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime();
+    this.endUtc = endDateAtZone.withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime();
+    this.uniqueViewerMode = uniqueViewerMode;
+    this.includeViewerIps = includeViewerIps;
+    this.statTypes = statTypes.isEmpty() ? EnumSet.noneOf(StatType.class) : EnumSet.copyOf(statTypes);
+
+    // One extra day so stats on the end date itself (before the end instant) have a slot.
+    int days = this.gapFillDays + 1;
+    this.dayStartEpochSeconds = new long[days];
+    for(int day = 0; day < days; day++) {
+      this.dayStartEpochSeconds[day] = this.firstDay.plusDays(day).atStartOfDay(this.userZone).toEpochSecond();
+    }
+    this.pageTotals = new int[days];
+    this.pageIps = this.keepsViewerIps() ? new Set[days] : null;
+    this.pageSketches = uniqueViewerMode == UniqueViewerMode.HLL ? new HyperLogLog[days] : null;
+  }
+
+  public LocalDateTime getStartUtc() {
+    return this.startUtc;
+  }
+
+  public LocalDateTime getEndUtc() {
+    return this.endUtc;
+  }
+
+  public Set<StatType> getStatTypes() {
+    return Collections.unmodifiableSet(this.statTypes);
+  }
+
+  public boolean isRequested(StatType type) {
+    return this.statTypes.contains(type);
+  }
+
+  public void addPage(long epochSecond, String ip) {
+    int day = this.dayIndex(epochSecond);
+    this.pageTotals[day]++;
+    this.addViewer(day, ip);
+  }
+
+  public void addPage(long epochSecond, int total, Collection<String> ips) {
+    this.addPageAt(this.dayIndex(epochSecond), total, ips);
+  }
+
+  public void addPage(LocalDate date, int total, Collection<String> ips) {
+    this.addPageAt(this.dayIndex(date), total, ips);
+  }
+
+  public void addSequence(StatType type, long epochSecond, String name, int total) {
+    this.sequenceCountsFor(type).add(this.dayIndex(epochSecond), name, total);
+  }
+
+  public void addSequence(StatType type, LocalDate date, String name, int total) {
+    this.sequenceCountsFor(type).add(this.dayIndex(date), name, total);
+  }
+
+  public DashboardStatsResponse toResponse() {
+    DashboardStatsResponse.DashboardStatsResponseBuilder response = DashboardStatsResponse.builder();
+    if(this.isRequested(StatType.PAGE)) {
+      response.page(this.pageStats())
+              .uniqueViewers(this.uniqueViewers());
+    }
+    if(this.isRequested(StatType.JUKEBOX)) {
+      response.jukeboxByDate(this.statsByDate(StatType.JUKEBOX))
+              .jukeboxBySequence(this.statsBySequence(StatType.JUKEBOX));
+    }
+    if(this.isRequested(StatType.VOTING)) {
+      response.votingByDate(this.statsByDate(StatType.VOTING))
+              .votingBySequence(this.statsBySequence(StatType.VOTING));
+    }
+    if(this.isRequested(StatType.VOTING_WIN)) {
+      response.votingWinByDate(this.statsByDate(StatType.VOTING_WIN))
+              .votingWinBySequence(this.statsBySequence(StatType.VOTING_WIN));
+    }
+    return response.build();
+  }
+
+  public List<DashboardStatsResponse.Stat> pageStats() {
+    List<DashboardStatsResponse.Stat> pageStats = new ArrayList<>();
+    for(int day = 0; day < this.pageTotals.length; day++) {
+      if(day >= this.gapFillDays && this.pageTotals[day] == 0) {
+        continue;
+      }
+      pageStats.add(DashboardStatsResponse.Stat.builder()
+              .date(this.dayStartEpochMillis(day))
+              .total(this.pageTotals[day])
+              .unique(this.uniqueViewers(day))
+              .viewerIps(this.includeViewerIps ? this.viewerIps(day) : null)
+              .build());
+    }
+    return pageStats;
+  }
+
+  /**
+   * Distinct viewers across the whole window, not the sum of the daily uniques.
+   */
+  public int uniqueViewers() {
+    if(this.uniqueViewerMode == UniqueViewerMode.HLL) {
+      HyperLogLog range = new HyperLogLog();
+      for(HyperLogLog sketch : this.pageSketches) {
+        if(sketch != null) {
+          range.merge(sketch);
+        }
+      }
+      return (int) range.cardinality();
+    }
+    Set<String> viewers = new HashSet<>();
+    for(Set<String> ips : this.pageIps) {
+      if(ips != null) {
+        viewers.addAll(ips);
+      }
+    }
+    return viewers.size();
+  }
+
+  public List<DashboardStatsResponse.Stat> statsByDate(StatType type) {
+    SequenceCounts counts = this.sequenceCountsFor(type);
+    List<DashboardStatsResponse.Stat> stats = new ArrayList<>();
+    for(int day = 0; day < counts.totals.length; day++) {
+      if(day >= this.gapFillDays && counts.totals[day] == 0) {
+        continue;
+      }
+      stats.add(DashboardStatsResponse.Stat.builder()
+              .sequences(toSequenceStats(counts.byDay[day]))
+              .date(this.dayStartEpochMillis(day))
+              .total(counts.totals[day])
+              .build());
+    }
+    return stats;
+  }
+
+  public DashboardStatsResponse.Stat statsBySequence(StatType type) {
+    return DashboardStatsResponse.Stat.builder()
+            .sequences(toSequenceStats(this.sequenceCountsFor(type).bySequence))
+            .build();
+  }
+
+  private int dayIndex(long epochSecond) {
+    int index = Arrays.binarySearch(this.dayStartEpochSeconds, epochSecond);
+    if(index >= 0) {
+      return index;
+    }
+    // Insertion point minus one is the day whose start precedes the timestamp. Buckets
+    // that begin before the window (e.g. the hour containing the start instant) land on
+    // the first day.
+    return Math.max(0, -index - 2);
+  }
+
+  private int dayIndex(LocalDate date) {
+    long day = ChronoUnit.DAYS.between(this.firstDay, date);
+    return (int) Math.min(Math.max(0, day), this.pageTotals.length - 1);
+  }
+
+  private void addPageAt(int day, int total, Collection<String> ips) {
+    this.pageTotals[day] += total;
+    if(ips != null) {
+      for(String ip : ips) {
+        this.addViewer(day, ip);
+      }
+    }
+  }
+
+  private void addViewer(int day, String ip) {
+    if(this.pageSketches != null) {
+      if(this.pageSketches[day] == null) {
+        this.pageSketches[day] = new HyperLogLog();
+      }
+      this.pageSketches[day].offer(ip);
+    }
+    if(this.pageIps != null) {
+      if(this.pageIps[day] == null) {
+        this.pageIps[day] = new HashSet<>();
+      }
+      this.pageIps[day].add(ip);
+    }
+  }
+
+  private boolean keepsViewerIps() {
+    return this.includeViewerIps || this.uniqueViewerMode == UniqueViewerMode.EXACT;
+  }
+
+  private int uniqueViewers(int day) {
+    if(this.pageSketches != null) {
+      return this.pageSketches[day] != null ? (int) this.pageSketches[day].cardinality() : 0;
+    }
+    return this.pageIps[day] != null ? this.pageIps[day].size() : 0;
+  }
+
+  private Set<String> viewerIps(int day) {
+    return this.pageIps[day] != null ? this.pageIps[day] : new HashSet<>();
+  }
+
+  private long dayStartEpochMillis(int day) {
+    LocalDate date = this.firstDay.plusDays(day);
+    return ZonedDateTime.of(date, LocalTime.MIDNIGHT, this.userZone).toInstant().toEpochMilli();
+  }
+
+  private SequenceCounts sequenceCountsFor(StatType type) {
+    return this.sequenceCounts.computeIfAbsent(type, key -> new SequenceCounts(this.pageTotals.length));
+  }
+
+  private static List<DashboardStatsResponse.SequenceStat> toSequenceStats(Map<String, int[]> counts) {
+    List<DashboardStatsResponse.SequenceStat> sequences = new ArrayList<>();
+    if(counts == null) {
+      return sequences;
+    }
+    counts.forEach((name, total) -> sequences.add(DashboardStatsResponse.SequenceStat.builder()
+            .total(total[0])
+            .name(name)
+            .build()));
+    sequences.sort(Comparator.comparing(DashboardStatsResponse.SequenceStat::getTotal).reversed());
+    return sequences;
+  }
+
+  private static final class SequenceCounts {
+    private final int[] totals;
+    private final Map<String, int[]>[] byDay;
+    private final Map<String, int[]> bySequence = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private SequenceCounts(int days) {
+      this.totals = new int[days];
+      this.byDay = new Map[days];
+    }
+
+    private void add(int day, String name, int total) {
+      this.totals[day] += total;
+      if(this.byDay[day] == null) {
+        this.byDay[day] = new HashMap<>();
+      }
+      this.byDay[day].computeIfAbsent(name, key -> new int[1])[0] += total;
+      this.bySequence.computeIfAbsent(name, key -> new int[1])[0] += total;
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package com.remotefalcon.controlpanel.dashboard;
+
+import com.remotefalcon.controlpanel.enums.DashboardStatsSource;
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.controlpanel.enums.UniqueViewerMode;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Set;
+
+/**
+ * Per-request knobs for {@code dashboardStats}. Unset values fall back to the
+ * {@code dashboard.*} configuration.
+ */
+@Builder
+@Data
+public class DashboardStatsOptions {
+  private DashboardStatsSource source;
+  private UniqueViewerMode uniqueViewerMode;
+  private boolean includeViewerIps;
+  // Stat types whose sections were asked for; null means all of them.
+  private Set<StatType> statTypes;
+}
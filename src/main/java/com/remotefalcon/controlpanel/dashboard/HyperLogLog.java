@@ -0,0 +1,86 @@
+package com.remotefalcon.controlpanel.dashboard;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed-size HyperLogLog sketch for approximate distinct counts of strings (viewer
+ * IPs). A sketch with precision {@code p} uses {@code 2^p} one-byte registers; the
+ * standard error is roughly {@code 1.04 / sqrt(2^p)}, so the default precision of 12
+ * costs 4 KB per sketch for about 1.6% error. Sketches of the same precision can be
+ * merged, which is how per-day sketches are combined into a range-wide count.
+ */
+public class HyperLogLog {
+  public static final int DEFAULT_PRECISION = 12;
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private final int precision;
+  private final byte[] registers;
+
+  public HyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+  public HyperLogLog(int precision) {
+    if(precision < 4 || precision > 18) {
+      throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 18");
+    }
+    this.precision = precision;
+    this.registers = new byte[1 << precision];
+  }
+
+  public void offer(String value) {
+    if(value == null) {
+      return;
+    }
+    long hash = HASH.hashString(value, StandardCharsets.UTF_8).asLong();
+    int index = (int) (hash >>> (Long.SIZE - this.precision));
+    // Rank of the first set bit in the remaining bits; the sentinel bit caps it.
+    long remaining = (hash << this.precision) | (1L << (this.precision - 1));
+    byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+    if(rank > this.registers[index]) {
+      this.registers[index] = rank;
+    }
+  }
+
+  public void merge(HyperLogLog other) {
+    if(other.precision != this.precision) {
+      throw new IllegalArgumentException("Cannot merge HyperLogLog sketches of different precision");
+    }
+    for(int i = 0; i < this.registers.length; i++) {
+      if(other.registers[i] > this.registers[i]) {
+        this.registers[i] = other.registers[i];
+      }
+    }
+  }
+
+  public long cardinality() {
+    int m = this.registers.length;
+    double sum = 0;
+    int zeroRegisters = 0;
+    for(byte register : this.registers) {
+      sum += 1.0 / (1L << register);
+      if(register == 0) {
+        zeroRegisters++;
+      }
+    }
+    double estimate = alpha(m) * m * m / sum;
+    // Linear counting is far more accurate while many registers are still empty.
+    if(estimate <= 2.5 * m && zeroRegisters > 0) {
+      estimate = m * Math.log((double) m / zeroRegisters);
+    }
+    return Math.round(estimate);
+  }
+
+  private static double alpha(int m) {
+    return switch (m) {
+      case 16 -> 0.673;
+      case 32 -> 0.697;
+      case 64 -> 0.709;
+      default -> 0.7213 / (1 + 1.079 / m);
+    };
+  }
+}
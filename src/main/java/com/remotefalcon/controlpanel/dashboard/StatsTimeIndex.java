@@ -0,0 +1,86 @@
+package com.remotefalcon.controlpanel.dashboard;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Range selection over stats lists kept in chronological order.
+ *
+ * <p>The viewer API appends stats as they happen, so the embedded lists are almost
+ * always already sorted by {@code dateTime}. {@link #ensureSorted} verifies that with a
+ * single comparison pass when a document is loaded and only sorts when it finds an
+ * element out of place; {@link #window} then locates a date window with two binary
+ * searches and returns a view of just that slice. Entries without a {@code dateTime}
+ * sort first and are never inside a window.
+ */
+public final class StatsTimeIndex {
+
+  private StatsTimeIndex() {
+  }
+
+  /**
+   * Sorts the list in place by date time unless it is already in order. Returns whether
+   * a sort was needed.
+   */
+  public static <T> boolean ensureSorted(List<T> stats, Function<T, LocalDateTime> dateTime) {
+    if(stats == null || isSorted(stats, dateTime)) {
+      return false;
+    }
+    stats.sort(Comparator.comparing(dateTime, Comparator.nullsFirst(Comparator.naturalOrder())));
+    return true;
+  }
+
+  public static <T> boolean isSorted(List<T> stats, Function<T, LocalDateTime> dateTime) {
+    LocalDateTime previous = null;
+    boolean first = true;
+    for(T stat : stats) {
+      LocalDateTime current = dateTime.apply(stat);
+      if(!first && compare(previous, current) > 0) {
+        return false;
+      }
+      previous = current;
+      first = false;
+    }
+    return true;
+  }
+
+  /**
+   * The slice of a sorted list strictly after {@code startExclusive} and strictly before
+   * {@code endExclusive}, as a view backed by the list.
+   */
+  public static <T> List<T> window(List<T> sortedStats, Function<T, LocalDateTime> dateTime,
+                                   LocalDateTime startExclusive, LocalDateTime endExclusive) {
+    if(sortedStats == null || sortedStats.isEmpty()) {
+      return List.of();
+    }
+    int from = firstIndexAfter(sortedStats, dateTime, startExclusive, false);
+    int to = firstIndexAfter(sortedStats, dateTime, endExclusive, true);
+    return from < to ? sortedStats.subList(from, to) : List.of();
+  }
+
+  // First index whose date time is > bound (or >= bound when inclusive).
+  private static <T> int firstIndexAfter(List<T> sortedStats, Function<T, LocalDateTime> dateTime,
+                                         LocalDateTime bound, boolean inclusive) {
+    int low = 0;
+    int high = sortedStats.size();
+    while(low < high) {
+      int mid = (low + high) >>> 1;
+      int comparison = compare(dateTime.apply(sortedStats.get(mid)), bound);
+      if(comparison > 0 || (inclusive && comparison == 0)) {
+        high = mid;
+      }else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+
+  private static int compare(LocalDateTime left, LocalDateTime right) {
+    if(left == null) {
+      return right == null ? 0 : -1;
+    }
+    return right == null ? 1 : left.compareTo(right);
+  }
+}
@@ -0,0 +1,30 @@
+package com.remotefalcon.controlpanel.document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Cluster-wide lease on one scheduled job, keyed by job name. A replica may run the job
+ * while it is the {@code holder} and {@code expiresAt} has not passed.
+ * {@code fencingToken} goes up by one with every acquisition, so a holder whose lease
+ * expired under it can tell it has been replaced.
+ */
+@Document(collection = "jobLease")
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class JobLease {
+  @Id
+  private String name;
+  private String holder;
+  private long fencingToken;
+  private Instant acquiredAt;
+  private Instant expiresAt;
+}
@@ -0,0 +1,40 @@
+package com.remotefalcon.controlpanel.document;
+
+import com.remotefalcon.controlpanel.enums.StatType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * One stats event in the {@code statsEvents} time-series collection: a page hit
+ * ({@code ip}) or a jukebox request, vote or vote win ({@code name}). {@code dateTime} is
+ * the time field and {@code meta} the meta field, so Mongo buckets each show's events of
+ * one type together and expires them by {@code dateTime}.
+ */
+@Document(collection = "statsEvents")
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatsEvent {
+  @Id
+  private String id;
+  private LocalDateTime dateTime;
+  private Meta meta;
+  private String name;
+  private String ip;
+
+  @Builder
+  @Data
+  @AllArgsConstructor
+  @NoArgsConstructor
+  public static class Meta {
+    private String showToken;
+    private StatType type;
+  }
+}
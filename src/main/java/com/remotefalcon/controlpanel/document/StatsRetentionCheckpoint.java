@@ -0,0 +1,35 @@
+package com.remotefalcon.controlpanel.document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of the incremental stats retention sweep: every show with an {@code _id} up to
+ * {@code lastShowId} has had its stats before {@code cutoff} removed. A sweep that is
+ * interrupted resumes after {@code lastShowId}; {@code completedAt} is set once the last
+ * show has been swept. {@code fencingToken} is that of the lease it was last written
+ * under.
+ */
+@Document(collection = "statsRetentionCheckpoint")
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatsRetentionCheckpoint {
+  @Id
+  private String id;
+  private String lastShowId;
+  private LocalDateTime cutoff;
+  private long processed;
+  private long total;
+  private LocalDateTime startedAt;
+  private LocalDateTime updatedAt;
+  private LocalDateTime completedAt;
+  private long fencingToken;
+}
@@ -0,0 +1,34 @@
+package com.remotefalcon.controlpanel.document;
+
+import com.remotefalcon.controlpanel.enums.StatType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * One pre-aggregated stats bucket: the number of {@code type} events recorded for a
+ * show within a single UTC hour, per sequence. Page buckets have no {@code name} and
+ * instead carry the distinct viewer IPs seen in that hour so daily unique counts can
+ * still be derived.
+ */
+@Document(collection = "statsRollup")
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatsRollup {
+  @Id
+  private String id;
+  private String showToken;
+  private StatType type;
+  private LocalDateTime bucket;
+  private String name;
+  private Integer total;
+  private Set<String> viewerIps;
+}
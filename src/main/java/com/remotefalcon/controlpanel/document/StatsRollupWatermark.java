@@ -0,0 +1,45 @@
+package com.remotefalcon.controlpanel.document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * High-water mark of the stats rollup job: every embedded stat with a
+ * {@code dateTime} at or before {@code rolledUpTo} is already counted in
+ * {@code statsRollup}, except in the {@code pendingRanges} still queued for a rebuild
+ * (stats deleted from a show, or a show whose rollup failed). The watermark only moves
+ * once a window's buckets have been written.
+ */
+@Document(collection = "statsRollupWatermark")
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatsRollupWatermark {
+  @Id
+  private String id;
+  private LocalDateTime rolledUpTo;
+  private List<PendingRange> pendingRanges;
+
+  /**
+   * One show's buckets, for the hours from {@code from} through {@code to}, to be
+   * re-derived from its embedded stats.
+   */
+  @Builder
+  @Data
+  @AllArgsConstructor
+  @NoArgsConstructor
+  public static class PendingRange {
+    private String rangeId;
+    private String showToken;
+    private LocalDateTime from;
+    private LocalDateTime to;
+  }
+}
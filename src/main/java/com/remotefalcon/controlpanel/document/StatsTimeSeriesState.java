@@ -0,0 +1,55 @@
+package com.remotefalcon.controlpanel.document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Progress of copying the embedded stats into {@code statsEvents}. Every stat with a
+ * {@code dateTime} after {@code migrateUpTo} and at or before {@code copiedTo} has been
+ * copied, except in the {@code pendingWindows} of shows whose copy failed, and so have
+ * the older ones of every show with an {@code _id} up to {@code lastShowId};
+ * {@code migratedAt} is set once the last show's history is in. {@code copiedTo} only
+ * moves once a window has been copied. {@code embeddedTrimmedAt} is set when the
+ * embedded arrays were first trimmed, after which only the time series holds the full
+ * history.
+ */
+@Document(collection = "statsTimeSeriesState")
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatsTimeSeriesState {
+  @Id
+  private String id;
+  private LocalDateTime copiedTo;
+  private LocalDateTime migrateUpTo;
+  private String lastShowId;
+  private long migratedShows;
+  private long migratedEvents;
+  private LocalDateTime startedAt;
+  private LocalDateTime migratedAt;
+  private List<PendingWindow> pendingWindows;
+  private LocalDateTime embeddedTrimmedAt;
+
+  /**
+   * One show's stats dated after {@code after} and at or before {@code upTo}, to be
+   * copied again.
+   */
+  @Builder
+  @Data
+  @AllArgsConstructor
+  @NoArgsConstructor
+  public static class PendingWindow {
+    private String windowId;
+    private String showToken;
+    private LocalDateTime after;
+    private LocalDateTime upTo;
+  }
+}
@@ -0,0 +1,29 @@
+package com.remotefalcon.controlpanel.document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Which HTML one viewer page shows: a reference, keyed by {@code showToken} and page
+ * {@code name}, to the {@link ViewerPageContent} with the given {@code hash}. The page
+ * entry in {@code Show.pages} keeps its name and active flag with {@code html} unset.
+ */
+@Document(collection = "viewerPageBody")
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ViewerPageBody {
+  @Id
+  private String id;
+  private String showToken;
+  private String name;
+  private String hash;
+  private LocalDateTime updatedDate;
+}
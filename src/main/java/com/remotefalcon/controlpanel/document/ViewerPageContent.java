@@ -0,0 +1,30 @@
+package com.remotefalcon.controlpanel.document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Viewer page HTML stored once per distinct content, keyed by its SHA-256. Every show
+ * created from the same template points at the same document. {@code refCount} is the
+ * number of {@link ViewerPageBody} references; a document is deleted when it drops to
+ * zero. {@code lastAcquired} is when a reference was last taken.
+ */
+@Document(collection = "viewerPageContent")
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ViewerPageContent {
+  @Id
+  private String hash;
+  private String html;
+  private long refCount;
+  private LocalDateTime createdDate;
+  private LocalDateTime lastAcquired;
+}
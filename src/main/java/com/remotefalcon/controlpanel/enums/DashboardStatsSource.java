@@ -0,0 +1,23 @@
+package com.remotefalcon.controlpanel.enums;
+
+/**
+ * Where {@code dashboardStats} reads its numbers from.
+ * <ul>
+ *   <li>{@link #DOCUMENT} — scan the embedded {@code Show.stats} arrays in the JVM</li>
+ *   <li>{@link #ROLLUP} — sum the pre-aggregated hourly {@code statsRollup} buckets</li>
+ *   <li>{@link #AGGREGATION} — filter and group the embedded arrays inside Mongo and
+ *       return only the day/sequence buckets</li>
+ *   <li>{@link #TIME_SERIES} — group the {@code statsEvents} time series inside Mongo;
+ *       falls back to {@link #DOCUMENT} until its migration has completed</li>
+ * </ul>
+ * Once the time-series retention has trimmed the embedded arrays, every request is
+ * served as {@link #TIME_SERIES}.
+ * Each request is timed under {@code dashboard.stats}, tagged by source, so the paths
+ * can be compared side by side.
+ */
+public enum DashboardStatsSource {
+  DOCUMENT,
+  ROLLUP,
+  AGGREGATION,
+  TIME_SERIES
+}
@@ -0,0 +1,9 @@
+package com.remotefalcon.controlpanel.enums;
+
+/**
+ * File format for the stats and sequences downloads.
+ */
+public enum ExportFormat {
+  CSV,
+  XLSX
+}
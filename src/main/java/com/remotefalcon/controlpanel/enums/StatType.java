@@ -0,0 +1,25 @@
+package com.remotefalcon.controlpanel.enums;
+
+/**
+ * The four embedded {@code Show.stats} arrays, used wherever stats are handled
+ * outside the show document (rollups, dashboard aggregation, retention).
+ */
+public enum StatType {
+  PAGE("stats.page"),
+  JUKEBOX("stats.jukebox"),
+  VOTING("stats.voting"),
+  VOTING_WIN("stats.votingWin");
+
+  private final String field;
+
+  StatType(String field) {
+    this.field = field;
+  }
+
+  /**
+   * Path of the array in the show document.
+   */
+  public String getField() {
+    return this.field;
+  }
+}
@@ -0,0 +1,22 @@
+package com.remotefalcon.controlpanel.enums;
+
+/**
+ * How the nightly stats retention sweep removes expired stats.
+ * <ul>
+ *   <li>{@link #DOCUMENT} — stream every show into the JVM, trim its arrays and save it</li>
+ *   <li>{@link #SERVER_SIDE} — one {@code updateMany} with {@code $pull} per stats
+ *       array, so only shows holding expired stats are touched and nothing is read</li>
+ *   <li>{@link #INCREMENTAL} — the same {@code $pull}s a batch of shows at a time, in
+ *       {@code _id} order, paced to Mongo latency and resumable from a checkpoint</li>
+ *   <li>{@link #TIME_SERIES} — the {@code statsEvents} time series expires its own
+ *       events, so only the embedded arrays are trimmed, to their last few days; the
+ *       {@code DOCUMENT}, {@code AGGREGATION} and {@code ROLLUP} backfill paths then see
+ *       only those days. Behaves as {@link #SERVER_SIDE} until the migration completes</li>
+ * </ul>
+ */
+public enum StatsRetentionMode {
+  DOCUMENT,
+  SERVER_SIDE,
+  INCREMENTAL,
+  TIME_SERIES
+}
@@ -0,0 +1,13 @@
+package com.remotefalcon.controlpanel.enums;
+
+/**
+ * How {@code dashboardStats} counts unique page viewers.
+ * <ul>
+ *   <li>{@link #EXACT} — keep every distinct viewer IP in a set</li>
+ *   <li>{@link #HLL} — estimate with a fixed-size HyperLogLog sketch (about 1.6% error)</li>
+ * </ul>
+ */
+public enum UniqueViewerMode {
+  EXACT,
+  HLL
+}
@@ -0,0 +1,46 @@
+package com.remotefalcon.controlpanel.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Dashboard counts grouped inside Mongo by user-zone day ({@code yyyy-MM-dd}) and,
+ * for the sequence stats, by sequence name.
+ */
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DashboardStatsBuckets {
+    private List<PageBucket> page;
+    private List<SequenceBucket> jukebox;
+    private List<SequenceBucket> voting;
+    private List<SequenceBucket> votingWin;
+    // Whether the show was matched at all; null from sources that do not report it.
+    private Boolean found;
+
+    @Builder
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class PageBucket {
+        private String day;
+        private Integer total;
+        private Set<String> viewerIps;
+    }
+
+    @Builder
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class SequenceBucket {
+        private String day;
+        private String name;
+        private Integer total;
+    }
+}
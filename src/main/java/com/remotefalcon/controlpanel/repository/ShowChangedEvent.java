@@ -0,0 +1,21 @@
+package com.remotefalcon.controlpanel.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Published after a write to a show document made by this service, so that anything
+ * holding a copy of the show can drop it. A null {@code showToken} means the write may
+ * have touched any show. {@code revision} is the show's revision after the write, when
+ * the writer knows it, and null otherwise.
+ */
+@Data
+@AllArgsConstructor
+public class ShowChangedEvent {
+    private String showToken;
+    private Long revision;
+
+    public ShowChangedEvent(String showToken) {
+        this(showToken, null);
+    }
+}
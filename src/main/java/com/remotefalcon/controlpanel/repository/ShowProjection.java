@@ -0,0 +1,75 @@
+package com.remotefalcon.controlpanel.repository;
+
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The show fields a read actually needs, as Mongo field paths, so that callers which
+ * only use a few fields never load the stats arrays, page HTML or notifications.
+ * {@code showToken} is always included. {@link #ALL} loads the whole document.
+ */
+public final class ShowProjection {
+    public static final ShowProjection ALL = new ShowProjection(null);
+
+    private final Set<String> fields;
+
+    private ShowProjection(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    public static ShowProjection of(Collection<String> fields) {
+        Set<String> projected = new TreeSet<>(fields);
+        projected.add("showToken");
+        return new ShowProjection(projected);
+    }
+
+    /**
+     * This projection plus the fields the caller itself reads or writes.
+     */
+    public ShowProjection with(String... fields) {
+        if(this.isAll()) {
+            return this;
+        }
+        Set<String> projected = new TreeSet<>(this.fields);
+        projected.addAll(Arrays.asList(fields));
+        return new ShowProjection(projected);
+    }
+
+    public boolean isAll() {
+        return this.fields == null;
+    }
+
+    /**
+     * Whether {@code path} is loaded, either directly or as part of a parent field.
+     */
+    public boolean includes(String path) {
+        if(this.isAll()) {
+            return true;
+        }
+        for(String prefix = path; ; prefix = prefix.substring(0, prefix.lastIndexOf('.'))) {
+            if(this.fields.contains(prefix)) {
+                return true;
+            }
+            if(prefix.indexOf('.') < 0) {
+                return false;
+            }
+        }
+    }
+
+    void applyTo(Query query) {
+        if(this.isAll()) {
+            return;
+        }
+        // Mongo rejects a projection holding both a field and one of its sub-paths.
+        for(String field : this.fields) {
+            int dot = field.lastIndexOf('.');
+            if(dot < 0 || !this.includes(field.substring(0, dot))) {
+                query.fields().include(field);
+            }
+        }
+    }
+}
@@ -11,7 +11,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
-public interface ShowRepository extends MongoRepository<Show, String> {
+public interface ShowRepository extends MongoRepository<Show, String>, ShowRepositoryCustom {
     @Transactional
     void deleteByShowToken(String showToken);
     Optional<Show> findByShowToken(String showToken);
@@ -40,5 +40,70 @@ public interface ShowRepository extends MongoRepository<Show, String> {
             "{ '$replaceRoot': { 'newRoot': '$sequences' } }"
     })
     List<Sequence> getSequencesByShowToken(String showToken);
+
+    // Dashboard stats grouped server-side: the stats arrays are trimmed to the (start, end)
+    // window with $filter and counted per user-zone day and sequence, so only the buckets
+    // leave Mongo instead of the whole show document. Arrays whose flag (?4-?7) is false are
+    // skipped entirely.
+    @Aggregation(pipeline = {
+            "{ '$match': { 'showToken' : ?0 } }",
+            "{ '$project': { " +
+            "'page': { '$filter': { 'input': { '$cond': [ ?4, { '$ifNull': [ '$stats.page', [] ] }, [] ] }, 'as': 'stat', 'cond': { '$and': [ " +
+                    "{ '$gt': [ '$$stat.dateTime', ?1 ] }, { '$lt': [ '$$stat.dateTime', ?2 ] }, { '$eq': [ { '$type': '$$stat.ip' }, 'string' ] } ] } } }, " +
+            "'jukebox': { '$filter': { 'input': { '$cond': [ ?5, { '$ifNull': [ '$stats.jukebox', [] ] }, [] ] }, 'as': 'stat', 'cond': { '$and': [ " +
+                    "{ '$gt': [ '$$stat.dateTime', ?1 ] }, { '$lt': [ '$$stat.dateTime', ?2 ] } ] } } }, " +
+            "'voting': { '$filter': { 'input': { '$cond': [ ?6, { '$ifNull': [ '$stats.voting', [] ] }, [] ] }, 'as': 'stat', 'cond': { '$and': [ " +
+                    "{ '$gt': [ '$$stat.dateTime', ?1 ] }, { '$lt': [ '$$stat.dateTime', ?2 ] } ] } } }, " +
+            "'votingWin': { '$filter': { 'input': { '$cond': [ ?7, { '$ifNull': [ '$stats.votingWin', [] ] }, [] ] }, 'as': 'stat', 'cond': { '$and': [ " +
+                    "{ '$gt': [ '$$stat.dateTime', ?1 ] }, { '$lt': [ '$$stat.dateTime', ?2 ] } ] } } } } }",
+            "{ '$facet': { " +
+            "'page': [ { '$unwind': '$page' }, " +
+                    "{ '$group': { '_id': { '$dateToString': { 'format': '%Y-%m-%d', 'date': '$page.dateTime', 'timezone': ?3 } }, 'total': { '$sum': 1 }, 'viewerIps': { '$addToSet': '$page.ip' } } }, " +
+                    "{ '$project': { '_id': 0, 'day': '$_id', 'total': 1, 'viewerIps': 1 } } ], " +
+            "'jukebox': [ { '$unwind': '$jukebox' }, " +
+                    "{ '$group': { '_id': { 'day': { '$dateToString': { 'format': '%Y-%m-%d', 'date': '$jukebox.dateTime', 'timezone': ?3 } }, 'name': '$jukebox.name' }, 'total': { '$sum': 1 } } }, " +
+                    "{ '$project': { '_id': 0, 'day': '$_id.day', 'name': '$_id.name', 'total': 1 } } ], " +
+            "'voting': [ { '$unwind': '$voting' }, " +
+                    "{ '$group': { '_id': { 'day': { '$dateToString': { 'format': '%Y-%m-%d', 'date': '$voting.dateTime', 'timezone': ?3 } }, 'name': '$voting.name' }, 'total': { '$sum': 1 } } }, " +
+                    "{ '$project': { '_id': 0, 'day': '$_id.day', 'name': '$_id.name', 'total': 1 } } ], " +
+            "'votingWin': [ { '$unwind': '$votingWin' }, " +
+                    "{ '$group': { '_id': { 'day': { '$dateToString': { 'format': '%Y-%m-%d', 'date': '$votingWin.dateTime', 'timezone': ?3 } }, 'name': '$votingWin.name' }, 'total': { '$sum': 1 } } }, " +
+                    "{ '$project': { '_id': 0, 'day': '$_id.day', 'name': '$_id.name', 'total': 1 } } ], " +
+            "'matched': [ { '$count': 'shows' } ] } }",
+            // $facet emits a document even when no show matched; say which case this is.
+            "{ '$project': { 'page': 1, 'jukebox': 1, 'voting': 1, 'votingWin': 1, 'found': { '$gt': [ { '$size': '$matched' }, 0 ] } } }"
+    })
+    DashboardStatsBuckets getDashboardStatsBuckets(String showToken, LocalDateTime start, LocalDateTime end, String timezone,
+                                                   boolean page, boolean jukebox, boolean voting, boolean votingWin);
+
+    // Only what dashboardLiveStats reads: the queue, votes, sequence names and the
+    // jukebox/voting stats inside the (start, end) window.
+    @Aggregation(pipeline = {
+            "{ '$match': { 'showToken' : ?0 } }",
+            "{ '$project': { 'showToken': 1, 'requests': 1, 'votes': 1, 'sequences': 1, 'playingNow': 1, 'playingNextFromSchedule': 1, " +
+            "'stats.jukebox': { '$filter': { 'input': { '$ifNull': [ '$stats.jukebox', [] ] }, 'as': 'stat', 'cond': { '$and': [ " +
+                    "{ '$gt': [ '$$stat.dateTime', ?1 ] }, { '$lt': [ '$$stat.dateTime', ?2 ] } ] } } }, " +
+            "'stats.voting': { '$filter': { 'input': { '$ifNull': [ '$stats.voting', [] ] }, 'as': 'stat', 'cond': { '$and': [ " +
+                    "{ '$gt': [ '$$stat.dateTime', ?1 ] }, { '$lt': [ '$$stat.dateTime', ?2 ] } ] } } } } }"
+    })
+    Show findLiveStatsByShowToken(String showToken, LocalDateTime start, LocalDateTime end);
+
+    @Query(value = "{ 'showToken': ?0 }", fields = "{ 'showToken': 1, 'stats': 1 }")
+    Optional<Show> findStatsOnlyByShowToken(String showToken);
+
+    // Only the stats arrays, each trimmed to the (start, end) window.
+    @Aggregation(pipeline = {
+            "{ '$match': { 'showToken' : ?0 } }",
+            "{ '$project': { 'showToken': 1, " +
+            "'stats.page': { '$filter': { 'input': { '$ifNull': [ '$stats.page', [] ] }, 'as': 'stat', 'cond': { '$and': [ " +
+                    "{ '$gt': [ '$$stat.dateTime', ?1 ] }, { '$lt': [ '$$stat.dateTime', ?2 ] } ] } } }, " +
+            "'stats.jukebox': { '$filter': { 'input': { '$ifNull': [ '$stats.jukebox', [] ] }, 'as': 'stat', 'cond': { '$and': [ " +
+                    "{ '$gt': [ '$$stat.dateTime', ?1 ] }, { '$lt': [ '$$stat.dateTime', ?2 ] } ] } } }, " +
+            "'stats.voting': { '$filter': { 'input': { '$ifNull': [ '$stats.voting', [] ] }, 'as': 'stat', 'cond': { '$and': [ " +
+                    "{ '$gt': [ '$$stat.dateTime', ?1 ] }, { '$lt': [ '$$stat.dateTime', ?2 ] } ] } } }, " +
+            "'stats.votingWin': { '$filter': { 'input': { '$ifNull': [ '$stats.votingWin', [] ] }, 'as': 'stat', 'cond': { '$and': [ " +
+                    "{ '$gt': [ '$$stat.dateTime', ?1 ] }, { '$lt': [ '$$stat.dateTime', ?2 ] } ] } } } } }"
+    })
+    Show findStatsByShowToken(String showToken, LocalDateTime start, LocalDateTime end);
     
 }
@@ -0,0 +1,136 @@
+package com.remotefalcon.controlpanel.repository;
+
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.Request;
+import com.remotefalcon.library.models.Vote;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Field-level access to a show document, for callers that only touch a few fields and
+ * should not read or rewrite the whole (stats- and page-heavy) document.
+ */
+public interface ShowRepositoryCustom {
+    /**
+     * Document field holding the show's write revision. {@link Show} has no version
+     * property of its own, so the counter lives only in Mongo. Every write from this
+     * service bumps it; a whole-document {@code save} would drop it, so shows are written
+     * through the methods here instead.
+     */
+    String REVISION_FIELD = "revision";
+
+    /**
+     * Fields the viewer API and the FPP plugin write with their own updates, which do not
+     * bump the revision. {@link #replaceIfUnchanged} keeps their stored values, so a
+     * replace cannot undo a vote, request or heartbeat recorded after the show was read;
+     * change them with field-level updates. A path into an array ({@code sequences.visibilityCount})
+     * is kept per element, matched by {@code name}; at most one path per parent field.
+     */
+    List<String> VIEWER_WRITTEN_FIELDS = List.of("stats", "requests", "votes", "activeViewers",
+            "playingNow", "playingNext", "playingNextFromSchedule", "lastFppHeartbeat", "pluginVersion", "fppVersion",
+            "preferences.sequencesPlayed", "sequences.visibilityCount", "sequenceGroups.visibilityCount");
+
+    /**
+     * Applies the {@code $set}/{@code $unset}/... operators in {@code update} to the show
+     * with the given token and bumps its revision. Returns false when no show matched.
+     */
+    boolean updateByShowToken(String showToken, Update update);
+
+    /**
+     * Loads only the given fields (dot paths allowed), plus {@code showToken}, of the show
+     * with the given token. Everything else on the returned {@link Show} is left null.
+     */
+    Optional<Show> findFieldsByShowToken(String showToken, String... fields);
+
+    Optional<Show> findByShowToken(String showToken, ShowProjection projection);
+
+    Optional<Show> findByShowSubdomain(String showSubdomain, ShowProjection projection);
+
+    Optional<Show> findByShowName(String showName, ShowProjection projection);
+
+    /**
+     * Case-insensitive email lookup on the {@code idx_email_ci} collation index, like
+     * {@code findByEmailCollation}.
+     */
+    Optional<Show> findByEmailCollation(String email, ShowProjection projection);
+
+    Optional<Show> findByPasswordResetLinkAndPasswordResetExpiryGreaterThan(String passwordResetLink, LocalDateTime passwordResetExpiry,
+                                                                           ShowProjection projection);
+
+    /**
+     * Applies {@code update} to the show with the given token only if it also matches
+     * {@code condition}. Returns false when nothing matched.
+     */
+    boolean updateByShowToken(String showToken, Criteria condition, Update update);
+
+    /**
+     * Loads the whole show with the given token together with its current revision.
+     */
+    Optional<VersionedShow> findVersionedByShowToken(String showToken);
+
+    /**
+     * Replaces the stored show with {@code versionedShow.getShow()} only if its revision
+     * is still {@code versionedShow.getRevision()}, and bumps the revision. The
+     * {@link #VIEWER_WRITTEN_FIELDS} keep their stored values. Returns false when another
+     * write got there first.
+     */
+    boolean replaceIfUnchanged(VersionedShow versionedShow);
+
+    /**
+     * Inserts a new show at revision 0.
+     */
+    void insertWithRevision(Show show);
+
+    /**
+     * Removes the jukebox request at {@code position}, renumbers the rest 1..n in queue
+     * order and points {@code playingNext} at the new head, in one atomic update. Returns
+     * false when no show matched.
+     */
+    boolean removeRequestAndRenumber(String showToken, int position);
+
+    /**
+     * Appends {@code request} unless the queue already holds an owner request. Returns
+     * false when there was one (or no show matched).
+     */
+    boolean pushRequestIfNoOwnerRequest(String showToken, Request request);
+
+    /**
+     * Appends {@code vote} unless the owner has already voted. Returns false when they
+     * had (or no show matched).
+     */
+    boolean pushVoteIfNoOwnerVote(String showToken, Vote vote);
+
+    /**
+     * Empties {@code queueField} ({@code votes} or {@code requests}) and zeroes every
+     * sequence's and sequence group's {@code visibilityCount}, server-side. Returns false
+     * when no show matched.
+     */
+    boolean clearQueueAndResetVisibility(String showToken, String queueField);
+
+    /**
+     * Removes the entries of every stats array dated before {@code cutoff}, server-side
+     * and in one pass, from the show with the given token, or from every show when
+     * {@code showToken} is null. Only shows holding such entries are written. Returns the
+     * number of shows modified.
+     */
+    long pullStatsBefore(String showToken, LocalDateTime cutoff);
+
+    /**
+     * {@link #pullStatsBefore(String, LocalDateTime)} for a batch of shows.
+     */
+    long pullStatsBefore(Collection<String> showTokens, LocalDateTime cutoff);
+
+    /**
+     * Removes every stat dated strictly between {@code after} and {@code before} from the
+     * show with the given token, in one atomic update, and returns how many entries each
+     * stats array lost. Empty when no show matched.
+     */
+    Optional<Map<StatType, Long>> deleteStatsBetween(String showToken, LocalDateTime after, LocalDateTime before);
+}
@@ -0,0 +1,376 @@
+package com.remotefalcon.controlpanel.repository;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.Request;
+import com.remotefalcon.library.models.Vote;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Collation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@RequiredArgsConstructor
+public class ShowRepositoryCustomImpl implements ShowRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    @Override
+    public boolean updateByShowToken(String showToken, Update update) {
+        update.inc(REVISION_FIELD, 1);
+        return this.updateAndPublish(showToken, byShowToken(showToken), update);
+    }
+
+    @Override
+    public Optional<Show> findFieldsByShowToken(String showToken, String... fields) {
+        return this.findByShowToken(showToken, ShowProjection.of(List.of(fields)));
+    }
+
+    @Override
+    public Optional<Show> findByShowToken(String showToken, ShowProjection projection) {
+        return this.findOne(byShowToken(showToken), projection);
+    }
+
+    @Override
+    public Optional<Show> findByShowSubdomain(String showSubdomain, ShowProjection projection) {
+        return this.findOne(Query.query(Criteria.where("showSubdomain").is(showSubdomain)), projection);
+    }
+
+    @Override
+    public Optional<Show> findByShowName(String showName, ShowProjection projection) {
+        return this.findOne(Query.query(Criteria.where("showName").is(showName)), projection);
+    }
+
+    @Override
+    public Optional<Show> findByEmailCollation(String email, ShowProjection projection) {
+        Query query = Query.query(Criteria.where("email").is(email)).collation(Collation.of("en").strength(2));
+        return this.findOne(query, projection);
+    }
+
+    @Override
+    public Optional<Show> findByPasswordResetLinkAndPasswordResetExpiryGreaterThan(String passwordResetLink, LocalDateTime passwordResetExpiry,
+                                                                                  ShowProjection projection) {
+        Query query = Query.query(Criteria.where("passwordResetLink").is(passwordResetLink)
+                .and("passwordResetExpiry").gt(passwordResetExpiry));
+        return this.findOne(query, projection);
+    }
+
+    @Override
+    public boolean updateByShowToken(String showToken, Criteria condition, Update update) {
+        update.inc(REVISION_FIELD, 1);
+        Query query = Query.query(new Criteria().andOperator(Criteria.where("showToken").is(showToken), condition));
+        return this.updateAndPublish(showToken, query, update);
+    }
+
+    @Override
+    public Optional<VersionedShow> findVersionedByShowToken(String showToken) {
+        // Read the raw document so the revision, which Show cannot carry, comes back too.
+        Document document = this.mongoTemplate.findOne(byShowToken(showToken), Document.class, this.collectionName());
+        if(document == null) {
+            return Optional.empty();
+        }
+        Number revision = document.get(REVISION_FIELD, Number.class);
+        Show show = this.mongoTemplate.getConverter().read(Show.class, document);
+        return Optional.of(new VersionedShow(show, revision == null ? 0 : revision.longValue()));
+    }
+
+    @Override
+    public boolean replaceIfUnchanged(VersionedShow versionedShow) {
+        Show show = versionedShow.getShow();
+        long revision = versionedShow.getRevision();
+        Criteria revisionMatches = revision == 0
+                ? new Criteria().orOperator(Criteria.where(REVISION_FIELD).is(0), Criteria.where(REVISION_FIELD).exists(false))
+                : Criteria.where(REVISION_FIELD).is(revision);
+        Query query = Query.query(new Criteria().andOperator(Criteria.where("showToken").is(show.getShowToken()), revisionMatches));
+
+        Document document = new Document();
+        this.mongoTemplate.getConverter().write(show, document);
+        // The replacement is a literal; the viewer-written fields and the new revision are
+        // taken from the stored document in the same update, so nothing can slip in between.
+        Document stored = new Document(REVISION_FIELD, revision + 1);
+        VIEWER_WRITTEN_FIELDS.forEach(field -> {
+            int dot = field.indexOf('.');
+            if(dot < 0) {
+                stored.append(field, "$" + field);
+                return;
+            }
+            String parent = field.substring(0, dot);
+            stored.append(parent, keepStored(parent, field.substring(dot + 1), document.get(parent)));
+        });
+        Document replaceWith = new Document("$replaceWith", new Document("$mergeObjects",
+                List.of(new Document("$literal", document), stored)));
+        // Only plain fields in the filter, so it needs no mapping against Show.
+        boolean replaced = this.mongoTemplate.getCollection(this.collectionName())
+                .updateOne(query.getQueryObject(), List.of(replaceWith))
+                .getMatchedCount() > 0;
+        if(replaced) {
+            versionedShow.setRevision(revision + 1);
+            this.applicationEventPublisher.publishEvent(new ShowChangedEvent(show.getShowToken(), revision + 1));
+        }
+        return replaced;
+    }
+
+    // The replacement's value of parent with its child field taken from the stored document:
+    // per element, matched by name, when parent is an array, and left alone where the
+    // stored document has none.
+    private static Object keepStored(String parent, String child, Object replacement) {
+        if(replacement instanceof List<?>) {
+            Document storedElement = new Document("$arrayElemAt", List.of(new Document("$filter", new Document()
+                    .append("input", new Document("$ifNull", List.of("$" + parent, List.of())))
+                    .append("as", "element")
+                    .append("cond", new Document("$eq", List.of("$$element.name", "$$this.name")))), 0));
+            return new Document("$map", new Document()
+                    .append("input", new Document("$literal", replacement))
+                    .append("in", new Document("$mergeObjects", List.of("$$this", new Document("$let", new Document()
+                            .append("vars", new Document("stored", storedElement))
+                            .append("in", new Document(child, "$$stored." + child)))))));
+        }
+        if(replacement instanceof Document) {
+            return new Document("$mergeObjects", List.of(new Document("$literal", replacement), new Document(child, "$" + parent + "." + child)));
+        }
+        return new Document("$literal", replacement);
+    }
+
+    @Override
+    public void insertWithRevision(Show show) {
+        Document document = new Document();
+        this.mongoTemplate.getConverter().write(show, document);
+        document.put(REVISION_FIELD, 0L);
+        this.mongoTemplate.insert(document, this.collectionName());
+        show.setId(String.valueOf(document.get("_id")));
+    }
+
+    @Override
+    public boolean removeRequestAndRenumber(String showToken, int position) {
+        Document remaining = new Document("$filter", new Document()
+                .append("input", new Document("$ifNull", List.of("$requests", List.of())))
+                .append("cond", new Document("$ne", List.of("$$this.position", position))));
+        // Positions follow queue order, as they did when this was renumbered in Java.
+        Document renumbered = new Document("$map", new Document()
+                .append("input", new Document("$range", List.of(0, new Document("$size", "$requests"))))
+                .append("as", "index")
+                .append("in", new Document("$mergeObjects", List.of(
+                        new Document("$arrayElemAt", List.of("$requests", "$$index")),
+                        new Document("position", new Document("$add", List.of("$$index", 1)))))));
+        Document playingNext = new Document("$let", new Document()
+                .append("vars", new Document("head", new Document("$arrayElemAt", List.of("$requests", 0))))
+                .append("in", new Document("$ifNull", List.of("$$head.sequence.displayName", ""))));
+        AggregationUpdate update = AggregationUpdate.from(List.of(
+                context -> new Document("$set", new Document("requests", remaining)),
+                context -> new Document("$set", new Document()
+                        .append("requests", renumbered)
+                        .append("playingNext", playingNext)
+                        .append(REVISION_FIELD, new Document("$add", List.of(new Document("$ifNull", List.of("$" + REVISION_FIELD, 0)), 1))))));
+        return this.updateAndPublish(showToken, byShowToken(showToken), update);
+    }
+
+    @Override
+    public boolean pushRequestIfNoOwnerRequest(String showToken, Request request) {
+        Query query = Query.query(Criteria.where("showToken").is(showToken).and("requests.ownerRequested").ne(true));
+        Update update = new Update().push("requests", request).inc(REVISION_FIELD, 1);
+        return this.updateAndPublish(showToken, query, update);
+    }
+
+    @Override
+    public boolean pushVoteIfNoOwnerVote(String showToken, Vote vote) {
+        Query query = Query.query(Criteria.where("showToken").is(showToken).and("votes.ownerVoted").ne(true));
+        Update update = new Update().push("votes", vote).inc(REVISION_FIELD, 1);
+        return this.updateAndPublish(showToken, query, update);
+    }
+
+    @Override
+    public boolean clearQueueAndResetVisibility(String showToken, String queueField) {
+        Query query = Query.query(Criteria.where("showToken").is(showToken)
+                .and("sequences").type(JsonSchemaObject.Type.ARRAY)
+                .and("sequenceGroups").type(JsonSchemaObject.Type.ARRAY));
+        Update update = new Update()
+                .set(queueField, List.of())
+                .set("sequences.$[].visibilityCount", 0)
+                .set("sequenceGroups.$[].visibilityCount", 0)
+                .inc(REVISION_FIELD, 1);
+        if(this.updateAndPublish(showToken, query, update)) {
+            return true;
+        }
+        // $[] cannot address a missing array, which older shows may have; the pipeline
+        // form treats a missing list as empty.
+        AggregationUpdate fallback = AggregationUpdate.from(List.of(context -> new Document("$set", new Document()
+                .append(queueField, List.of())
+                .append("sequences", zeroVisibilityCounts("$sequences"))
+                .append("sequenceGroups", zeroVisibilityCounts("$sequenceGroups"))
+                .append(REVISION_FIELD, new Document("$add", List.of(new Document("$ifNull", List.of("$" + REVISION_FIELD, 0)), 1))))));
+        return this.updateAndPublish(showToken, byShowToken(showToken), fallback);
+    }
+
+    @Override
+    public long pullStatsBefore(String showToken, LocalDateTime cutoff) {
+        if(showToken != null) {
+            return this.updateAndPublish(showToken, this.holdingStatsBefore(Criteria.where("showToken").is(showToken), cutoff),
+                    pullStatsUpdate(cutoff)) ? 1 : 0;
+        }
+        long modified = this.pullStats(new Criteria(), cutoff);
+        if(modified > 0) {
+            this.applicationEventPublisher.publishEvent(new ShowChangedEvent(null));
+        }
+        return modified;
+    }
+
+    @Override
+    public long pullStatsBefore(Collection<String> showTokens, LocalDateTime cutoff) {
+        long modified = this.pullStats(Criteria.where("showToken").in(showTokens), cutoff);
+        if(modified > 0) {
+            showTokens.forEach(showToken -> this.applicationEventPublisher.publishEvent(new ShowChangedEvent(showToken)));
+        }
+        return modified;
+    }
+
+    // One updateMulti for all four arrays. The filter picks the shows holding an old
+    // entry in any of them; the update is the pipeline form of a $pull on each array,
+    // because a plain $pull fails the whole update on a show whose other array is null.
+    private long pullStats(Criteria scope, LocalDateTime cutoff) {
+        return this.mongoTemplate.updateMulti(this.holdingStatsBefore(scope, cutoff), pullStatsUpdate(cutoff), Show.class).getModifiedCount();
+    }
+
+    private Query holdingStatsBefore(Criteria scope, LocalDateTime cutoff) {
+        Date cutoffDate = toDate(cutoff);
+        Criteria[] holdingOldStats = new Criteria[StatType.values().length];
+        for(StatType type : StatType.values()) {
+            holdingOldStats[type.ordinal()] = Criteria.where(type.getField()).elemMatch(Criteria.where("dateTime").lt(cutoffDate));
+        }
+        return Query.query(scope.orOperator(holdingOldStats));
+    }
+
+    private static AggregationUpdate pullStatsUpdate(LocalDateTime cutoff) {
+        Date cutoffDate = toDate(cutoff);
+        Document kept = new Document();
+        for(StatType type : StatType.values()) {
+            String array = "$" + type.getField();
+            kept.append(type.getField().substring("stats.".length()), new Document("$cond", List.of(
+                    new Document("$isArray", array),
+                    new Document("$filter", new Document()
+                            .append("input", array)
+                            .append("cond", new Document("$gte", List.of("$$this.dateTime", cutoffDate)))),
+                    array)));
+        }
+        return AggregationUpdate.from(List.of(context -> new Document("$set", new Document()
+                .append("stats", new Document("$mergeObjects", List.of("$stats", kept)))
+                .append(REVISION_FIELD, new Document("$add", List.of(new Document("$ifNull", List.of("$" + REVISION_FIELD, 0)), 1))))));
+    }
+
+    @Override
+    public Optional<Map<StatType, Long>> deleteStatsBetween(String showToken, LocalDateTime after, LocalDateTime before) {
+        Date afterDate = toDate(after);
+        Date beforeDate = toDate(before);
+        // Counted on the pre-image returned by the same findOneAndUpdate, so they are exact.
+        Document removedCounts = new Document("_id", 0).append(REVISION_FIELD, 1);
+        Document kept = new Document();
+        for(StatType type : StatType.values()) {
+            String array = "$" + type.getField();
+            removedCounts.append(type.name(), new Document("$size", new Document("$filter", new Document()
+                    .append("input", new Document("$cond", List.of(new Document("$isArray", array), array, List.of())))
+                    .append("cond", inRange(afterDate, beforeDate)))));
+            // A missing or null array is left as it is; $pull would reject a null one.
+            kept.append(type.getField().substring("stats.".length()), new Document("$cond", List.of(
+                    new Document("$isArray", array),
+                    new Document("$filter", new Document()
+                            .append("input", array)
+                            .append("cond", new Document("$not", List.of(inRange(afterDate, beforeDate))))),
+                    array)));
+        }
+        List<Document> pipeline = List.of(new Document("$set", new Document()
+                .append("stats", new Document("$cond", List.of(
+                        new Document("$eq", List.of(new Document("$type", "$stats"), "object")),
+                        new Document("$mergeObjects", List.of("$stats", kept)),
+                        "$stats")))
+                .append(REVISION_FIELD, new Document("$add", List.of(new Document("$ifNull", List.of("$" + REVISION_FIELD, 0)), 1)))));
+        Document preImage = this.mongoTemplate.getCollection(this.collectionName()).findOneAndUpdate(
+                new Document("showToken", showToken), pipeline,
+                new FindOneAndUpdateOptions().projection(removedCounts).returnDocument(ReturnDocument.BEFORE));
+        if(preImage == null) {
+            return Optional.empty();
+        }
+        Map<StatType, Long> removed = new EnumMap<>(StatType.class);
+        for(StatType type : StatType.values()) {
+            Number count = preImage.get(type.name(), Number.class);
+            removed.put(type, count == null ? 0 : count.longValue());
+        }
+        Number revision = preImage.get(REVISION_FIELD, Number.class);
+        this.applicationEventPublisher.publishEvent(new ShowChangedEvent(showToken, (revision == null ? 0 : revision.longValue()) + 1));
+        return Optional.of(removed);
+    }
+
+    private static Document inRange(Date after, Date before) {
+        return new Document("$and", List.of(
+                new Document("$gt", List.of("$$this.dateTime", after)),
+                new Document("$lt", List.of("$$this.dateTime", before))));
+    }
+
+    // The same conversion Spring applies to LocalDateTime fields, for the pipeline
+    // expressions it does not map.
+    private static Date toDate(LocalDateTime dateTime) {
+        return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    private static Document zeroVisibilityCounts(String arrayPath) {
+        return new Document("$map", new Document()
+                .append("input", new Document("$ifNull", List.of(arrayPath, List.of())))
+                .append("in", new Document("$mergeObjects", List.of("$$this", new Document("visibilityCount", 0)))));
+    }
+
+    // A findOneAndUpdate that returns only the new revision, so the change is published
+    // with the revision the write left and without reading the show back. The query and
+    // update are mapped against Show the way updateFirst would map them.
+    private boolean updateAndPublish(String showToken, Query query, UpdateDefinition update) {
+        MongoConverter converter = this.mongoTemplate.getConverter();
+        MongoPersistentEntity<?> entity = converter.getMappingContext().getPersistentEntity(Show.class);
+        Document filter = new QueryMapper(converter).getMappedObject(query.getQueryObject(), entity);
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions()
+                .projection(new Document("_id", 0).append(REVISION_FIELD, 1))
+                .returnDocument(ReturnDocument.AFTER);
+        MongoCollection<Document> collection = this.mongoTemplate.getCollection(this.collectionName());
+        Document updated = update instanceof AggregationUpdate pipeline
+                ? collection.findOneAndUpdate(filter, pipeline.toPipeline(Aggregation.DEFAULT_CONTEXT), options)
+                : collection.findOneAndUpdate(filter, new UpdateMapper(converter).getMappedObject(update.getUpdateObject(), entity), options);
+        if(updated == null) {
+            return false;
+        }
+        Number revision = updated.get(REVISION_FIELD, Number.class);
+        this.applicationEventPublisher.publishEvent(new ShowChangedEvent(showToken, revision == null ? null : revision.longValue()));
+        return true;
+    }
+
+    private Optional<Show> findOne(Query query, ShowProjection projection) {
+        projection.applyTo(query);
+        return Optional.ofNullable(this.mongoTemplate.findOne(query, Show.class));
+    }
+
+    private String collectionName() {
+        return this.mongoTemplate.getCollectionName(Show.class);
+    }
+
+    private static Query byShowToken(String showToken) {
+        return Query.query(Criteria.where("showToken").is(showToken));
+    }
+}
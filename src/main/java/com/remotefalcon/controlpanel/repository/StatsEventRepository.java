@@ -0,0 +1,35 @@
+package com.remotefalcon.controlpanel.repository;
+
+import com.remotefalcon.controlpanel.document.StatsEvent;
+import com.remotefalcon.controlpanel.enums.StatType;
+import org.springframework.data.mongodb.repository.Aggregation;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+public interface StatsEventRepository extends MongoRepository<StatsEvent, String> {
+    void deleteByMetaShowToken(String showToken);
+
+    // The same buckets as ShowRepository.getDashboardStatsBuckets, grouped from the
+    // statsEvents time series: the $match on meta and dateTime is served by the
+    // collection's bucket index, so only the show's events inside (start, end) are read.
+    @Aggregation(pipeline = {
+            "{ '$match': { 'meta.showToken': ?0, 'meta.type': { '$in': ?4 }, 'dateTime': { '$gt': ?1, '$lt': ?2 } } }",
+            "{ '$facet': { " +
+            "'page': [ { '$match': { 'meta.type': 'PAGE', 'ip': { '$type': 'string' } } }, " +
+                    "{ '$group': { '_id': { '$dateToString': { 'format': '%Y-%m-%d', 'date': '$dateTime', 'timezone': ?3 } }, 'total': { '$sum': 1 }, 'viewerIps': { '$addToSet': '$ip' } } }, " +
+                    "{ '$project': { '_id': 0, 'day': '$_id', 'total': 1, 'viewerIps': 1 } } ], " +
+            "'jukebox': [ { '$match': { 'meta.type': 'JUKEBOX' } }, " +
+                    "{ '$group': { '_id': { 'day': { '$dateToString': { 'format': '%Y-%m-%d', 'date': '$dateTime', 'timezone': ?3 } }, 'name': '$name' }, 'total': { '$sum': 1 } } }, " +
+                    "{ '$project': { '_id': 0, 'day': '$_id.day', 'name': '$_id.name', 'total': 1 } } ], " +
+            "'voting': [ { '$match': { 'meta.type': 'VOTING' } }, " +
+                    "{ '$group': { '_id': { 'day': { '$dateToString': { 'format': '%Y-%m-%d', 'date': '$dateTime', 'timezone': ?3 } }, 'name': '$name' }, 'total': { '$sum': 1 } } }, " +
+                    "{ '$project': { '_id': 0, 'day': '$_id.day', 'name': '$_id.name', 'total': 1 } } ], " +
+            "'votingWin': [ { '$match': { 'meta.type': 'VOTING_WIN' } }, " +
+                    "{ '$group': { '_id': { 'day': { '$dateToString': { 'format': '%Y-%m-%d', 'date': '$dateTime', 'timezone': ?3 } }, 'name': '$name' }, 'total': { '$sum': 1 } } }, " +
+                    "{ '$project': { '_id': 0, 'day': '$_id.day', 'name': '$_id.name', 'total': 1 } } ] } }"
+    })
+    DashboardStatsBuckets getDashboardStatsBuckets(String showToken, LocalDateTime start, LocalDateTime end, String timezone,
+                                                   Collection<StatType> types);
+}
@@ -0,0 +1,17 @@
+package com.remotefalcon.controlpanel.repository;
+
+import com.remotefalcon.controlpanel.document.StatsRollup;
+import com.remotefalcon.controlpanel.enums.StatType;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface StatsRollupRepository extends MongoRepository<StatsRollup, String> {
+    List<StatsRollup> findByShowTokenAndTypeInAndBucketGreaterThanEqualAndBucketLessThan(String showToken, Collection<StatType> types, LocalDateTime from, LocalDateTime to);
+    void deleteByShowToken(String showToken);
+    void deleteByShowTokenAndBucketLessThan(String showToken, LocalDateTime bucket);
+    void deleteByBucketLessThan(LocalDateTime bucket);
+    void deleteByShowTokenAndBucketGreaterThanEqualAndBucketLessThan(String showToken, LocalDateTime from, LocalDateTime to);
+}
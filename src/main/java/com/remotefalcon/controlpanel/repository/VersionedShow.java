@@ -0,0 +1,16 @@
+package com.remotefalcon.controlpanel.repository;
+
+import com.remotefalcon.library.documents.Show;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A show as read for a compare-and-set write, with the {@code revision} it had at read
+ * time. Documents that have never been written this way are at revision 0.
+ */
+@Data
+@AllArgsConstructor
+public class VersionedShow {
+    private Show show;
+    private long revision;
+}
@@ -0,0 +1,11 @@
+package com.remotefalcon.controlpanel.repository;
+
+import com.remotefalcon.controlpanel.document.ViewerPageBody;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface ViewerPageBodyRepository extends MongoRepository<ViewerPageBody, String> {
+    List<ViewerPageBody> findByShowToken(String showToken);
+    void deleteByShowToken(String showToken);
+}
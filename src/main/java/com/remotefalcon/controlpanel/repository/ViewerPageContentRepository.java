@@ -0,0 +1,7 @@
+package com.remotefalcon.controlpanel.repository;
+
+import com.remotefalcon.controlpanel.document.ViewerPageContent;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface ViewerPageContentRepository extends MongoRepository<ViewerPageContent, String> {
+}
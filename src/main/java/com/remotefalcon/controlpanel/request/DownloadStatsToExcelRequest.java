@@ -1,5 +1,6 @@
 package com.remotefalcon.controlpanel.request;
 
+import com.remotefalcon.controlpanel.enums.ExportFormat;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,4 +14,6 @@ public class DownloadStatsToExcelRequest {
   private String timezone;
   private Long dateFilterStart;
   private Long dateFilterEnd;
+  private Boolean gzip;
+  private ExportFormat format;
 }
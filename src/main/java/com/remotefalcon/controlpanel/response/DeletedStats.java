@@ -0,0 +1,33 @@
+package com.remotefalcon.controlpanel.response;
+
+import com.remotefalcon.controlpanel.enums.StatType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DeletedStats {
+    private Long page;
+    private Long jukebox;
+    private Long voting;
+    private Long votingWin;
+
+    public static DeletedStats of(Map<StatType, Long> removed) {
+        return DeletedStats.builder()
+                .page(removed.getOrDefault(StatType.PAGE, 0L))
+                .jukebox(removed.getOrDefault(StatType.JUKEBOX, 0L))
+                .voting(removed.getOrDefault(StatType.VOTING, 0L))
+                .votingWin(removed.getOrDefault(StatType.VOTING_WIN, 0L))
+                .build();
+    }
+
+    public Long getTotal() {
+        return this.page + this.jukebox + this.voting + this.votingWin;
+    }
+}
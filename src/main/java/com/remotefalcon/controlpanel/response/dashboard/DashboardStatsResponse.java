@@ -10,6 +10,7 @@ import java.util.Set;
 @Data
 public class DashboardStatsResponse {
   private List<Stat> page;
+  private Integer uniqueViewers;
   private List<Stat> jukeboxByDate;
   private Stat jukeboxBySequence;
   private List<Stat> votingByDate;
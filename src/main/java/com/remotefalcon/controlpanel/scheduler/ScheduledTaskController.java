@@ -1,28 +1,87 @@
 package com.remotefalcon.controlpanel.scheduler;
 
+import com.remotefalcon.controlpanel.service.JobLeaseService;
 import com.remotefalcon.controlpanel.service.ScheduledTaskService;
+import com.remotefalcon.controlpanel.service.ShowTouchBuffer;
+import com.remotefalcon.controlpanel.service.StatsRollupService;
+import com.remotefalcon.controlpanel.service.StatsTimeSeriesService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+
 @Service
 @RequiredArgsConstructor
 public class ScheduledTaskController {
     private final ScheduledTaskService scheduledTaskService;
+    private final StatsRollupService statsRollupService;
+    private final ShowTouchBuffer showTouchBuffer;
+    private final JobLeaseService jobLeaseService;
+    private final StatsTimeSeriesService statsTimeSeriesService;
+
+    @Value("${fpp-heartbeat.enabled:false}")
+    private boolean fppHeartbeatEnabled;
 
+    /**
+     * Per-minute FPP heartbeat check, on one replica per minute, when
+     * fpp-heartbeat.enabled is on.
+     */
     @Scheduled(cron = "0 * * * * *")
     public void runTask() {
-        // scheduledTaskService.fppHeartbeatTask();
+        if (fppHeartbeatEnabled) {
+            jobLeaseService.runExclusively("fppHeartbeat", Duration.ofSeconds(30), Duration.ofSeconds(50),
+                    lease -> scheduledTaskService.fppHeartbeatTask());
+        }
     }
 
     /**
      * Nightly 18-month stats retention sweep at 03:00 UTC.
      * Iterates every show via a streaming cursor and trims stats older than 18
      * months. Replaces the dashboard-mount trigger removed in UI PR #67
-     * (PERF-FIX-PLAN Phase 1).
+     * (PERF-FIX-PLAN Phase 1). Runs on one replica only, under the
+     * purgeStaleStats lease. In INCREMENTAL retention mode stats.retention.cron
+     * can fire more often: each run resumes the checkpointed sweep. The lease is
+     * kept for just under a minute, long enough to stop a second replica repeating
+     * the same firing but never past the next one; stats.retention.min-interval-hours
+     * is what spaces out completed sweeps. The paced sweep runs on its own
+     * scheduler thread (spring.task.scheduling.pool.size).
      */
-    @Scheduled(cron = "0 0 3 * * ?")
+    @Scheduled(cron = "${stats.retention.cron:0 0 3 * * ?}")
     public void purgeStaleStats() {
-        scheduledTaskService.purgeStaleStatsForAllShows();
+        jobLeaseService.runExclusively("purgeStaleStats", Duration.ofMinutes(2), Duration.ofSeconds(50),
+                scheduledTaskService::purgeStaleStatsForAllShows);
+    }
+
+    /**
+     * Folds stats recorded since the previous run into the hourly statsRollup
+     * buckets that back the ROLLUP dashboard source, on one replica at a time.
+     * Replaying a window is harmless, so the lease is not held past the run.
+     */
+    @Scheduled(cron = "0 */5 * * * *")
+    public void rollupStats() {
+        jobLeaseService.runExclusively(StatsRollupService.LEASE, StatsRollupService.LEASE_TTL, Duration.ZERO,
+                statsRollupService::rollupNewStats);
+    }
+
+    /**
+     * Copies stats recorded since the previous run into the statsEvents time
+     * series, once its migration has seeded the watermark, on one replica at a
+     * time under the statsTimeSeriesCopy lease.
+     */
+    @Scheduled(cron = "${stats.time-series.copy-cron:30 * * * * *}")
+    public void copyStatsToTimeSeries() {
+        statsTimeSeriesService.copyNewStats();
+    }
+
+    /**
+     * Writes the lastLoginDate / sign-in / PSA touches buffered since the last flush.
+     * spring.task.scheduling.pool.size gives every job here its own thread, so this
+     * keeps running while a stats sweep or rebuild is in progress.
+     */
+    @Scheduled(fixedDelayString = "${show.touch-buffer.flush-interval-millis:5000}")
+    public void flushShowTouches() {
+        showTouchBuffer.flush();
     }
 }
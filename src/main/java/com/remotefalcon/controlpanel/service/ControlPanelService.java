@@ -2,6 +2,7 @@ package com.remotefalcon.controlpanel.service;
 
 import com.remotefalcon.controlpanel.model.S3Image;
 import com.remotefalcon.controlpanel.util.S3Util;
+import com.remotefalcon.controlpanel.repository.ShowProjection;
 import com.remotefalcon.controlpanel.repository.ShowRepository;
 import com.remotefalcon.controlpanel.response.GitHubIssueResponse;
 import com.remotefalcon.controlpanel.util.AuthUtil;
@@ -26,9 +27,12 @@ import java.util.Optional;
 @RequiredArgsConstructor
 @Slf4j
 public class ControlPanelService {
+  private static final ShowProjection SUBDOMAIN = ShowProjection.of(List.of("showSubdomain"));
+
   private final RestTemplate gitHubRestTemplate;
   private final AuthUtil authUtil;
   private final ShowRepository showRepository;
+  private final ShowCache showCache;
 
   private final S3Util s3Util;
 
@@ -72,7 +76,7 @@ public class ControlPanelService {
   }
 
   public ResponseEntity<String> uploadImage(MultipartFile file) {
-    Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
+    Optional<Show> show = this.showCache.findByShowToken(authUtil.getTokenDTO().getShowToken(), SUBDOMAIN);
     if(show.isEmpty()) {
       throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
     }
@@ -93,7 +97,7 @@ public class ControlPanelService {
   }
 
   public ResponseEntity<Boolean> downloadImage(String image) {
-    Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
+    Optional<Show> show = this.showCache.findByShowToken(authUtil.getTokenDTO().getShowToken(), SUBDOMAIN);
     if(show.isEmpty()) {
       throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
     }
@@ -104,7 +108,7 @@ public class ControlPanelService {
   }
 
   public ResponseEntity<String> deleteImage(String image) {
-    Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
+    Optional<Show> show = this.showCache.findByShowToken(authUtil.getTokenDTO().getShowToken(), SUBDOMAIN);
     if(show.isEmpty()) {
       throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
     }
@@ -115,7 +119,7 @@ public class ControlPanelService {
   }
 
   public ResponseEntity<List<S3Image>> getImages() {
-    Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
+    Optional<Show> show = this.showCache.findByShowToken(authUtil.getTokenDTO().getShowToken(), SUBDOMAIN);
     if(show.isEmpty()) {
       throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
     }
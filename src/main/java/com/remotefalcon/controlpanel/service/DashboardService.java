@@ -7,24 +7,36 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import com.remotefalcon.library.models.*;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.remotefalcon.controlpanel.dashboard.ColumnarStats;
+import com.remotefalcon.controlpanel.dashboard.DashboardStatsAccumulator;
+import com.remotefalcon.controlpanel.dashboard.DashboardStatsOptions;
+import com.remotefalcon.controlpanel.dashboard.StatsTimeIndex;
 import com.remotefalcon.controlpanel.dto.TokenDTO;
+import com.remotefalcon.controlpanel.enums.DashboardStatsSource;
+import com.remotefalcon.controlpanel.enums.ExportFormat;
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.controlpanel.enums.UniqueViewerMode;
+import com.remotefalcon.controlpanel.repository.DashboardStatsBuckets;
 import com.remotefalcon.controlpanel.repository.ShowRepository;
 import com.remotefalcon.controlpanel.request.DownloadStatsToExcelRequest;
 import com.remotefalcon.controlpanel.response.dashboard.DashboardLiveStatsResponse;
 import com.remotefalcon.controlpanel.response.dashboard.DashboardStatsResponse;
 import com.remotefalcon.controlpanel.util.AuthUtil;
 import com.remotefalcon.controlpanel.util.ExcelUtil;
+import com.remotefalcon.controlpanel.util.XlsxUtil;
 import com.remotefalcon.library.documents.Show;
 import com.remotefalcon.library.enums.StatusResponse;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -32,379 +44,198 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 @Slf4j
 public class DashboardService {
+  private static final int VIEWER_IPS_PAGE_SIZE = 100;
+  private static final int VIEWER_IPS_MAX_PAGE_SIZE = 1000;
+
   private final AuthUtil jwtUtil;
   private final ExcelUtil excelUtil;
+  private final XlsxUtil xlsxUtil;
   private final ShowRepository showRepository;
+  private final StatsRollupService statsRollupService;
+  private final StatsColumnCache statsColumnCache;
+  private final StatsTimeSeriesService statsTimeSeriesService;
+  private final MeterRegistry meterRegistry;
+
+  @Value("${dashboard.stats-source:DOCUMENT}")
+  DashboardStatsSource defaultStatsSource;
+
+  @Value("${dashboard.unique-viewers:EXACT}")
+  UniqueViewerMode defaultUniqueViewerMode;
 
   public DashboardStatsResponse dashboardStats(Long startDate, Long endDate, String timezone) {
+    return this.dashboardStats(startDate, endDate, timezone, DashboardStatsOptions.builder().build());
+  }
+
+  public DashboardStatsResponse dashboardStats(Long startDate, Long endDate, String timezone, DashboardStatsOptions options) {
     TokenDTO tokenDTO = this.jwtUtil.getJwtPayload();
-    Optional<Show> show = this.showRepository.findByShowToken(tokenDTO.getShowToken());
-    if(show.isEmpty()) {
+    ZonedDateTime startDateAtZone = ZonedDateTime.ofInstant(Instant.ofEpochMilli(startDate), ZoneId.of(timezone));
+    ZonedDateTime endDateAtZone = ZonedDateTime.ofInstant(Instant.ofEpochMilli(endDate), ZoneId.of(timezone)).plusDays(2);
+
+    DashboardStatsSource statsSource = options.getSource() != null ? options.getSource() : this.defaultStatsSource;
+    if(this.statsTimeSeriesService.isEmbeddedStatsTrimmed()) {
+      // The other sources read the embedded arrays, which now only hold the last few days.
+      statsSource = DashboardStatsSource.TIME_SERIES;
+    }
+    UniqueViewerMode uniqueViewerMode = options.getUniqueViewerMode() != null ? options.getUniqueViewerMode() : this.defaultUniqueViewerMode;
+    Set<StatType> statTypes = options.getStatTypes() != null ? options.getStatTypes() : EnumSet.allOf(StatType.class);
+    DashboardStatsAccumulator accumulator = new DashboardStatsAccumulator(startDateAtZone, endDateAtZone,
+            uniqueViewerMode, options.isIncludeViewerIps(), statTypes);
+    Timer.Sample sample = Timer.start(this.meterRegistry);
+    try {
+      return switch (statsSource) {
+        case ROLLUP -> this.statsRollupService.dashboardStats(tokenDTO.getShowToken(), accumulator);
+        case AGGREGATION -> this.dashboardStatsFromAggregation(tokenDTO.getShowToken(), accumulator, startDateAtZone.getZone());
+        case DOCUMENT -> this.dashboardStatsFromDocument(tokenDTO.getShowToken(), accumulator);
+        case TIME_SERIES -> this.statsTimeSeriesService.isReadable()
+                ? this.dashboardStatsFromTimeSeries(tokenDTO.getShowToken(), accumulator, startDateAtZone.getZone())
+                : this.dashboardStatsFromDocument(tokenDTO.getShowToken(), accumulator);
+      };
+    } finally {
+      sample.stop(this.meterRegistry.timer("dashboard.stats", "source", statsSource.name()));
+    }
+  }
+
+  /**
+   * Reads the show's stats as columns, from {@link StatsColumnCache} when it is enabled
+   * or from a window-trimmed projection otherwise.
+   */
+  private DashboardStatsResponse dashboardStatsFromDocument(String showToken, DashboardStatsAccumulator accumulator) {
+    if(this.statsColumnCache.isEnabled()) {
+      return this.aggregateDashboardStats(this.statsColumnCache.get(showToken), accumulator);
+    }
+    Show show = this.showRepository.findStatsByShowToken(showToken, accumulator.getStartUtc(), accumulator.getEndUtc());
+    if(show == null) {
       throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
     }
+    return this.aggregateDashboardStats(ColumnarStats.of(show.getStats()), accumulator);
+  }
+
+  /**
+   * Lets Mongo filter and group the stats by user-zone day and sequence; only the
+   * resulting buckets are transferred and folded into the response here.
+   */
+  private DashboardStatsResponse dashboardStatsFromAggregation(String showToken, DashboardStatsAccumulator accumulator, ZoneId userZone) {
+    DashboardStatsBuckets buckets = this.showRepository.getDashboardStatsBuckets(showToken,
+            accumulator.getStartUtc(), accumulator.getEndUtc(), userZone.getId(),
+            accumulator.isRequested(StatType.PAGE), accumulator.isRequested(StatType.JUKEBOX),
+            accumulator.isRequested(StatType.VOTING), accumulator.isRequested(StatType.VOTING_WIN));
+    if(buckets == null || !Boolean.TRUE.equals(buckets.getFound())) {
+      throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
+    }
+    return this.addBuckets(accumulator, buckets);
+  }
 
-    ZonedDateTime startDateAtZone = ZonedDateTime.ofInstant(Instant.ofEpochMilli(startDate), ZoneId.of(timezone));
-    ZonedDateTime endDateAtZone = ZonedDateTime.ofInstant(Instant.ofEpochMilli(endDate), ZoneId.of(timezone)).plusDays(2);
+  /**
+   * The same day/sequence buckets as {@link #dashboardStatsFromAggregation}, grouped from
+   * the show's events in the {@code statsEvents} time series.
+   */
+  private DashboardStatsResponse dashboardStatsFromTimeSeries(String showToken, DashboardStatsAccumulator accumulator, ZoneId userZone) {
+    DashboardStatsBuckets buckets = this.statsTimeSeriesService.dashboardStatsBuckets(showToken,
+            accumulator.getStartUtc(), accumulator.getEndUtc(), userZone, accumulator.getStatTypes());
+    return this.addBuckets(accumulator, buckets != null ? buckets : new DashboardStatsBuckets());
+  }
 
-    List<DashboardStatsResponse.Stat> pageStats = this.buildPageStats(startDateAtZone, endDateAtZone, timezone, show.get());
-    List<DashboardStatsResponse.Stat> jukeboxStatsByDate = this.buildJukeboxStatsByDate(startDateAtZone, endDateAtZone, timezone, show.get());
-    DashboardStatsResponse.Stat jukeboxStatsBySequence = this.buildJukeboxStatsBySequence(startDateAtZone, endDateAtZone, timezone, show.get());
-    List<DashboardStatsResponse.Stat> voteStatsByDate = this.buildVoteStatsByDate(startDateAtZone, endDateAtZone, timezone, show.get());
-    DashboardStatsResponse.Stat voteStatsBySequence = this.buildVoteStatsBySequence(startDateAtZone, endDateAtZone, timezone, show.get());
-    List<DashboardStatsResponse.Stat> voteWinStatsByDate = this.buildVoteWinStatsByDate(startDateAtZone, endDateAtZone, timezone, show.get());
-    DashboardStatsResponse.Stat voteWinStatsBySequence = this.buildVoteWinStatsBySequence(startDateAtZone, endDateAtZone, timezone, show.get());
+  private DashboardStatsResponse addBuckets(DashboardStatsAccumulator accumulator, DashboardStatsBuckets buckets) {
+    Optional.ofNullable(buckets.getPage()).orElse(Collections.emptyList())
+            .forEach(bucket -> accumulator.addPage(LocalDate.parse(bucket.getDay()), bucket.getTotal(), bucket.getViewerIps()));
+    this.addSequenceBuckets(accumulator, StatType.JUKEBOX, buckets.getJukebox());
+    this.addSequenceBuckets(accumulator, StatType.VOTING, buckets.getVoting());
+    this.addSequenceBuckets(accumulator, StatType.VOTING_WIN, buckets.getVotingWin());
+    return accumulator.toResponse();
+  }
 
-    return DashboardStatsResponse.builder()
-            .page(pageStats)
-            .jukeboxByDate(jukeboxStatsByDate)
-            .jukeboxBySequence(jukeboxStatsBySequence)
-            .votingByDate(voteStatsByDate)
-            .votingBySequence(voteStatsBySequence)
-            .votingWinByDate(voteWinStatsByDate)
-            .votingWinBySequence(voteWinStatsBySequence)
-            .build();
+  private void addSequenceBuckets(DashboardStatsAccumulator accumulator, StatType type, List<DashboardStatsBuckets.SequenceBucket> buckets) {
+    if(buckets == null) {
+      return;
+    }
+    buckets.forEach(bucket -> accumulator.addSequence(type, LocalDate.parse(bucket.getDay()), bucket.getName(), bucket.getTotal()));
   }
 
-  public DashboardLiveStatsResponse dashboardLiveStats(Long startDate, Long endDate, String timezone) {
-    TokenDTO tokenDTO = this.jwtUtil.getJwtPayload();
-    Optional<Show> show = this.showRepository.findByShowToken(tokenDTO.getShowToken());
-    if(show.isEmpty()) {
-      throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
+  /**
+   * One page of a day's viewer IPs, sorted so offsets are stable between calls.
+   */
+  public List<String> viewerIpsPage(DashboardStatsResponse.Stat stat, Integer offset, Integer limit) {
+    if(stat.getViewerIps() == null) {
+      return null;
     }
+    int from = Math.max(0, offset != null ? offset : 0);
+    int size = Math.min(Math.max(0, limit != null ? limit : VIEWER_IPS_PAGE_SIZE), VIEWER_IPS_MAX_PAGE_SIZE);
+    return stat.getViewerIps().stream()
+            .sorted()
+            .skip(from)
+            .limit(size)
+            .toList();
+  }
 
-    Show existingShow = show.get();
+  public DashboardLiveStatsResponse dashboardLiveStats(Long startDate, Long endDate, String timezone) {
+    TokenDTO tokenDTO = this.jwtUtil.getJwtPayload();
     ZoneId userZone = ZoneId.of(timezone);
     // Only return stats for the current day in the user's timezone.
     ZonedDateTime startDateAtZone = ZonedDateTime.now(userZone).toLocalDate().atStartOfDay(userZone);
     ZonedDateTime endDateAtZone = startDateAtZone.plusDays(1);
+    LocalDateTime startUtc = startDateAtZone.withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime();
+    LocalDateTime endUtc = endDateAtZone.withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime();
+
+    // Projected read: no pages, page stats or anything outside today's window.
+    Show existingShow = this.showRepository.findLiveStatsByShowToken(tokenDTO.getShowToken(), startUtc, endUtc);
+    if(existingShow == null) {
+      throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
+    }
 
     return DashboardLiveStatsResponse.builder()
-            .currentRequests(show.get().getRequests() != null ? show.get().getRequests().size() : 0)
-            .totalRequests(this.buildTotalRequestsLiveStat(startDateAtZone, endDateAtZone, timezone, show.get(), false))
-            .currentVotes(show.get().getVotes() != null ? show.get().getVotes().stream().mapToInt(Vote::getVotes).sum() : 0)
-            .totalVotes(this.buildTotalVotesLiveStat(startDateAtZone, endDateAtZone, timezone, show.get(), false))
+            .currentRequests(existingShow.getRequests() != null ? existingShow.getRequests().size() : 0)
+            .totalRequests(existingShow.getStats() != null ? StatsTimeIndex.window(existingShow.getStats().getJukebox(), Stat.Jukebox::getDateTime, startUtc, endUtc).size() : 0)
+            .currentVotes(existingShow.getVotes() != null ? existingShow.getVotes().stream().mapToInt(Vote::getVotes).sum() : 0)
+            .totalVotes(existingShow.getStats() != null ? StatsTimeIndex.window(existingShow.getStats().getVoting(), Stat.Voting::getDateTime, startUtc, endUtc).size() : 0)
             .playingNow(getPlayingNow(existingShow))
             .playingNext(getPlayingNext(existingShow))
             .build();
   }
 
   private String getPlayingNow(Show show) {
-    Optional<Sequence> playingNowSequence = show.getSequences().stream()
+    Optional<Sequence> playingNowSequence = Optional.ofNullable(show.getSequences()).orElse(Collections.emptyList()).stream()
             .filter(sequence -> StringUtils.equalsIgnoreCase(sequence.getName(), show.getPlayingNow()))
             .findFirst();
     return playingNowSequence.map(Sequence::getDisplayName).orElse(show.getPlayingNow());
   }
 
   private String getPlayingNext(Show show) {
-    Optional<Request> nextRequest = show.getRequests().stream()
+    Optional<Request> nextRequest = Optional.ofNullable(show.getRequests()).orElse(Collections.emptyList()).stream()
             .min(Comparator.comparing(Request::getPosition));
 
     if(nextRequest.isPresent()) {
       return nextRequest.get().getSequence().getDisplayName();
     }else {
-      Optional<Sequence> playingNextScheduledSequence = show.getSequences().stream()
+      Optional<Sequence> playingNextScheduledSequence = Optional.ofNullable(show.getSequences()).orElse(Collections.emptyList()).stream()
               .filter(sequence -> StringUtils.equalsIgnoreCase(sequence.getName(), show.getPlayingNextFromSchedule()))
               .findFirst();
       return playingNextScheduledSequence.map(Sequence::getDisplayName).orElse(show.getPlayingNextFromSchedule());
     }
   }
 
-  public ResponseEntity<ByteArrayResource> downloadStatsToExcel(DownloadStatsToExcelRequest downloadStatsToExcelRequest) {
-    DashboardStatsResponse dashboardStats = this.dashboardStats(downloadStatsToExcelRequest.getDateFilterStart(), downloadStatsToExcelRequest.getDateFilterEnd(), downloadStatsToExcelRequest.getTimezone());
+  public ResponseEntity<StreamingResponseBody> downloadStatsToExcel(DownloadStatsToExcelRequest downloadStatsToExcelRequest) {
+    // The export lists viewer IPs, so it always asks for them.
+    DashboardStatsResponse dashboardStats = this.dashboardStats(downloadStatsToExcelRequest.getDateFilterStart(), downloadStatsToExcelRequest.getDateFilterEnd(),
+            downloadStatsToExcelRequest.getTimezone(), DashboardStatsOptions.builder().includeViewerIps(true).build());
     if(dashboardStats != null) {
-      return excelUtil.generateDashboardExcel(dashboardStats, downloadStatsToExcelRequest.getTimezone());
+      if(downloadStatsToExcelRequest.getFormat() == ExportFormat.XLSX) {
+        return xlsxUtil.generateDashboardXlsx(dashboardStats, downloadStatsToExcelRequest.getTimezone());
+      }
+      return excelUtil.generateDashboardExcel(dashboardStats, downloadStatsToExcelRequest.getTimezone(),
+              Boolean.TRUE.equals(downloadStatsToExcelRequest.getGzip()));
     }
     return ResponseEntity.status(204).build();
   }
 
-  private List<DashboardStatsResponse.Stat> buildPageStats(ZonedDateTime startDateAtZone, ZonedDateTime endDateAtZone, String timezone, Show show) {
-    List<DashboardStatsResponse.Stat> pageStats = new ArrayList<>();
-    if(show.getStats() == null) {
-      return pageStats;
-    }
-    ZoneId userZone = ZoneId.of(timezone);
-    Map<LocalDate, List<Stat.Page>> pageStatsGroupedByDate = show.getStats().getPage()
-            .stream()
-            .map(stat -> Map.entry(stat, convertStatDateTime(stat.getDateTime(), userZone)))
-            .filter(stat -> stat.getValue().isAfter(startDateAtZone))
-            .filter(stat -> stat.getValue().isBefore(endDateAtZone))
-            .filter(stat -> stat.getKey().getIp() != null)
-            .collect(Collectors.groupingBy(stat -> stat.getValue().toLocalDate(), Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
-
-    this.fillStatDateGaps(startDateAtZone, endDateAtZone, pageStatsGroupedByDate);
-
-    pageStatsGroupedByDate.forEach((date, stat) -> pageStats.add(DashboardStatsResponse.Stat.builder()
-            .date(ZonedDateTime.of(date, date.atStartOfDay().toLocalTime(), userZone).toInstant().toEpochMilli())
-            .total(stat.size())
-            .unique(stat.stream().collect(Collectors.groupingBy(Stat.Page::getIp)).size())
-            .viewerIps(stat.stream().map(Stat.Page::getIp).collect(Collectors.toSet()))
-            .build()));
-
-    pageStats.sort(Comparator.comparing(DashboardStatsResponse.Stat::getDate));
-
-    return pageStats;
-  }
-
-  private List<DashboardStatsResponse.Stat> buildJukeboxStatsByDate(ZonedDateTime startDateAtZone, ZonedDateTime endDateAtZone, String timezone, Show show) {
-    List<DashboardStatsResponse.Stat> jukeboxStats = new ArrayList<>();
-    if(show.getStats() == null) {
-      return jukeboxStats;
-    }
-    ZoneId userZone = ZoneId.of(timezone);
-    Map<LocalDate, List<Stat.Jukebox>> jukeboxStatsGroupedByDate = show.getStats().getJukebox()
-            .stream()
-            .map(stat -> Map.entry(stat, convertStatDateTime(stat.getDateTime(), userZone)))
-            .filter(stat -> stat.getValue().isAfter(startDateAtZone))
-            .filter(stat -> stat.getValue().isBefore(endDateAtZone))
-            .collect(Collectors.groupingBy(stat -> stat.getValue().toLocalDate(), Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
-
-    this.fillStatDateGaps(startDateAtZone, endDateAtZone, jukeboxStatsGroupedByDate);
-
-    jukeboxStatsGroupedByDate.forEach((date, stat) -> {
-      List<DashboardStatsResponse.SequenceStat> sequences = new ArrayList<>();
-      Map<String, List<Stat.Jukebox>> requests = stat.stream()
-              .collect(Collectors.groupingBy(Stat.Jukebox::getName));
-      requests.forEach((sequence, request) -> sequences.add(DashboardStatsResponse.SequenceStat.builder()
-              .total(request.size())
-              .name(sequence)
-              .build()));
-      jukeboxStats.add(DashboardStatsResponse.Stat.builder()
-              .sequences(sequences.stream()
-                      .sorted(Comparator.comparing(DashboardStatsResponse.SequenceStat::getTotal).reversed())
-                      .toList())
-              .date(ZonedDateTime.of(date, date.atStartOfDay().toLocalTime(), userZone).toInstant().toEpochMilli())
-              .total(stat.size())
-              .build());
-    });
-
-    jukeboxStats.sort(Comparator.comparing(DashboardStatsResponse.Stat::getDate));
-
-    return jukeboxStats;
-  }
-
-  private DashboardStatsResponse.Stat buildJukeboxStatsBySequence(ZonedDateTime startDateAtZone, ZonedDateTime endDateAtZone, String timezone, Show show) {
-    List<DashboardStatsResponse.SequenceStat> sequences = new ArrayList<>();
-    if(show.getStats() == null) {
-      return DashboardStatsResponse.Stat.builder()
-              .sequences(sequences)
-              .build();
-    }
-    ZoneId userZone = ZoneId.of(timezone);
-    Map<String, List<Stat.Jukebox>> jukeboxStatsGroupedBySequence = show.getStats().getJukebox()
-            .stream()
-            .map(stat -> Map.entry(stat, convertStatDateTime(stat.getDateTime(), userZone)))
-            .filter(stat -> stat.getValue().isAfter(startDateAtZone))
-            .filter(stat -> stat.getValue().isBefore(endDateAtZone))
-            .collect(Collectors.groupingBy(stat -> stat.getKey().getName(), Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
-
-    jukeboxStatsGroupedBySequence.forEach((sequence, stat) -> sequences.add(DashboardStatsResponse.SequenceStat.builder()
-            .total(stat.size())
-            .name(sequence)
-            .build()));
-
-    sequences.sort(Comparator.comparing(DashboardStatsResponse.SequenceStat::getTotal).reversed());
-
-    return DashboardStatsResponse.Stat.builder()
-            .sequences(sequences)
-            .build();
-  }
-
-  private List<DashboardStatsResponse.Stat> buildVoteStatsByDate(ZonedDateTime startDateAtZone, ZonedDateTime endDateAtZone, String timezone, Show show) {
-    List<DashboardStatsResponse.Stat> votingStats = new ArrayList<>();
-    if(show.getStats() == null) {
-      return votingStats;
-    }
-    ZoneId userZone = ZoneId.of(timezone);
-    Map<LocalDate, List<Stat.Voting>> votingStatsGroupedByDate = show.getStats().getVoting()
-            .stream()
-            .map(stat -> Map.entry(stat, convertStatDateTime(stat.getDateTime(), userZone)))
-            .filter(stat -> stat.getValue().isAfter(startDateAtZone))
-            .filter(stat -> stat.getValue().isBefore(endDateAtZone))
-            .collect(Collectors.groupingBy(stat -> stat.getValue().toLocalDate(), Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
-
-    this.fillStatDateGaps(startDateAtZone, endDateAtZone, votingStatsGroupedByDate);
-
-    votingStatsGroupedByDate.forEach((date, stat) -> {
-      List<DashboardStatsResponse.SequenceStat> sequences = new ArrayList<>();
-      Map<String, List<Stat.Voting>> votes = stat.stream()
-              .collect(Collectors.groupingBy(Stat.Voting::getName));
-      votes.forEach((sequence, vote) -> sequences.add(DashboardStatsResponse.SequenceStat.builder()
-              .total(vote.size())
-              .name(sequence)
-              .build()));
-      votingStats.add(DashboardStatsResponse.Stat.builder()
-              .sequences(sequences.stream()
-                      .sorted(Comparator.comparing(DashboardStatsResponse.SequenceStat::getTotal).reversed())
-                      .toList())
-              .date(ZonedDateTime.of(date, date.atStartOfDay().toLocalTime(), userZone).toInstant().toEpochMilli())
-              .total(stat.size())
-              .build());
-    });
-
-    votingStats.sort(Comparator.comparing(DashboardStatsResponse.Stat::getDate));
-
-    return votingStats;
-  }
-
-  private DashboardStatsResponse.Stat buildVoteStatsBySequence(ZonedDateTime startDateAtZone, ZonedDateTime endDateAtZone, String timezone, Show show) {
-    List<DashboardStatsResponse.SequenceStat> sequences = new ArrayList<>();
-    if(show.getStats() == null) {
-      return DashboardStatsResponse.Stat.builder()
-              .sequences(sequences)
-              .build();
-    }
-    ZoneId userZone = ZoneId.of(timezone);
-    Map<String, List<Stat.Voting>> voteStatsGroupedBySequence = show.getStats().getVoting()
-            .stream()
-            .map(stat -> Map.entry(stat, convertStatDateTime(stat.getDateTime(), userZone)))
-            .filter(stat -> stat.getValue().isAfter(startDateAtZone))
-            .filter(stat -> stat.getValue().isBefore(endDateAtZone))
-            .collect(Collectors.groupingBy(stat -> stat.getKey().getName(), Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
-
-    voteStatsGroupedBySequence.forEach((sequence, stat) -> sequences.add(DashboardStatsResponse.SequenceStat.builder()
-            .total(stat.size())
-            .name(sequence)
-            .build()));
-
-    sequences.sort(Comparator.comparing(DashboardStatsResponse.SequenceStat::getTotal).reversed());
-
-    return DashboardStatsResponse.Stat.builder()
-            .sequences(sequences)
-            .build();
-  }
-
-  private List<DashboardStatsResponse.Stat> buildVoteWinStatsByDate(ZonedDateTime startDateAtZone, ZonedDateTime endDateAtZone, String timezone, Show show) {
-    List<DashboardStatsResponse.Stat> votingWinStats = new ArrayList<>();
-    if(show.getStats() == null) {
-      return votingWinStats;
-    }
-    ZoneId userZone = ZoneId.of(timezone);
-    Map<LocalDate, List<Stat.VotingWin>> votingWinStatsGroupedByDate = show.getStats().getVotingWin()
-            .stream()
-            .map(stat -> Map.entry(stat, convertStatDateTime(stat.getDateTime(), userZone)))
-            .sorted(Comparator.comparing(entry -> entry.getValue().toLocalDateTime()))
-            .filter(stat -> stat.getValue().isAfter(startDateAtZone))
-            .filter(stat -> stat.getValue().isBefore(endDateAtZone))
-            .collect(Collectors.groupingBy(stat -> stat.getValue().toLocalDate(), Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
-
-    this.fillStatDateGaps(startDateAtZone, endDateAtZone, votingWinStatsGroupedByDate);
-
-    votingWinStatsGroupedByDate.forEach((date, stat) -> {
-      List<DashboardStatsResponse.SequenceStat> sequences = new ArrayList<>();
-      Map<String, List<Stat.VotingWin>> voteWins = stat.stream()
-              .collect(Collectors.groupingBy(Stat.VotingWin::getName));
-      voteWins.forEach((sequence, win) -> sequences.add(DashboardStatsResponse.SequenceStat.builder()
-              .total(win.size())
-              .name(sequence)
-              .build()));
-      votingWinStats.add(DashboardStatsResponse.Stat.builder()
-              .sequences(sequences.stream()
-                      .sorted(Comparator.comparing(DashboardStatsResponse.SequenceStat::getTotal).reversed())
-                      .toList())
-              .date(ZonedDateTime.of(date, date.atStartOfDay().toLocalTime(), userZone).toInstant().toEpochMilli())
-              .total(stat.size())
-              .build());
-    });
-
-    votingWinStats.sort(Comparator.comparing(DashboardStatsResponse.Stat::getDate));
-
-    return votingWinStats;
-  }
-
-  private DashboardStatsResponse.Stat buildVoteWinStatsBySequence(ZonedDateTime startDateAtZone, ZonedDateTime endDateAtZone, String timezone, Show show) {
-    List<DashboardStatsResponse.SequenceStat> sequences = new ArrayList<>();
-    if(show.getStats() == null) {
-      return DashboardStatsResponse.Stat.builder()
-              .sequences(sequences)
-              .build();
+  /**
+   * Runs the dashboard sections over the stats columns. Only the in-window slice of each
+   * column is visited, located by binary search on UTC bounds that are converted once.
+   */
+  private DashboardStatsResponse aggregateDashboardStats(ColumnarStats stats, DashboardStatsAccumulator accumulator) {
+    // A show without stats gets the same empty, gap-filled sections as one with none in the window.
+    if(stats.isPresent()) {
+      stats.accumulate(accumulator);
     }
-    ZoneId userZone = ZoneId.of(timezone);
-    Map<String, List<Stat.VotingWin>> voteWinStatsGroupedBySequence = show.getStats().getVotingWin()
-            .stream()
-            .map(stat -> Map.entry(stat, convertStatDateTime(stat.getDateTime(), userZone)))
-            .filter(stat -> stat.getValue().isAfter(startDateAtZone))
-            .filter(stat -> stat.getValue().isBefore(endDateAtZone))
-            .collect(Collectors.groupingBy(stat -> stat.getKey().getName(), Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
-
-    voteWinStatsGroupedBySequence.forEach((sequence, stat) -> sequences.add(DashboardStatsResponse.SequenceStat.builder()
-            .total(stat.size())
-            .name(sequence)
-            .build()));
-
-    sequences.sort(Comparator.comparing(DashboardStatsResponse.SequenceStat::getTotal).reversed());
-
-    return DashboardStatsResponse.Stat.builder()
-            .sequences(sequences)
-            .build();
-  }
-
-  private Integer buildTotalRequestsLiveStat(ZonedDateTime startDateAtZone, ZonedDateTime endDateAtZone, String timezone, Show show, Boolean fillDays) {
-    List<DashboardStatsResponse.Stat> jukeboxStats = new ArrayList<>();
-    if(show.getStats() == null) {
-      return 0;
-    }
-    ZoneId userZone = ZoneId.of(timezone);
-    Map<LocalDate, List<Stat.Jukebox>> jukeboxStatsGroupedByDate = show.getStats().getJukebox()
-            .stream()
-            .map(stat -> Map.entry(stat, convertStatDateTime(stat.getDateTime(), userZone)))
-            .filter(stat -> stat.getValue().isAfter(startDateAtZone))
-            .filter(stat -> stat.getValue().isBefore(endDateAtZone))
-            .collect(Collectors.groupingBy(stat -> stat.getValue().toLocalDate(), Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
-
-    if(fillDays) {
-      this.fillStatDateGaps(startDateAtZone, endDateAtZone, jukeboxStatsGroupedByDate);
-    }
-
-    jukeboxStatsGroupedByDate.forEach((date, stat) -> jukeboxStats.add(DashboardStatsResponse.Stat.builder()
-            .date(ZonedDateTime.of(date, date.atStartOfDay().toLocalTime(), userZone).toInstant().toEpochMilli())
-            .total(stat.size())
-            .unique(stat.stream().collect(Collectors.groupingBy(Stat.Jukebox::getName)).size())
-            .build()));
-
-    return jukeboxStats.stream()
-            .mapToInt(DashboardStatsResponse.Stat::getTotal)
-            .sum();
-  }
-
-  private Integer buildTotalVotesLiveStat(ZonedDateTime startDateAtZone, ZonedDateTime endDateAtZone, String timezone, Show show, Boolean fillDays) {
-    List<DashboardStatsResponse.Stat> voteStats = new ArrayList<>();
-    if(show.getStats() == null) {
-      return 0;
-    }
-    ZoneId userZone = ZoneId.of(timezone);
-    Map<LocalDate, List<Stat.Voting>> voteStatsGroupedByDate = show.getStats().getVoting()
-            .stream()
-            .map(stat -> Map.entry(stat, convertStatDateTime(stat.getDateTime(), userZone)))
-            .filter(stat -> stat.getValue().isAfter(startDateAtZone))
-            .filter(stat -> stat.getValue().isBefore(endDateAtZone))
-            .collect(Collectors.groupingBy(stat -> stat.getValue().toLocalDate(), Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
-
-    if(fillDays) {
-      this.fillStatDateGaps(startDateAtZone, endDateAtZone, voteStatsGroupedByDate);
-    }
-
-    voteStatsGroupedByDate.forEach((date, stat) -> voteStats.add(DashboardStatsResponse.Stat.builder()
-            .date(ZonedDateTime.of(date, date.atStartOfDay().toLocalTime(), userZone).toInstant().toEpochMilli())
-            .total(stat.size())
-            .unique(stat.stream().collect(Collectors.groupingBy(Stat.Voting::getName)).size())
-            .build()));
-
-    return voteStats.stream()
-            .mapToInt(DashboardStatsResponse.Stat::getTotal)
-            .sum();
-  }
-
-  @SuppressWarnings("unchecked")
-  private <V> void fillStatDateGaps(ZonedDateTime startDateAtZone, ZonedDateTime endDateAtZone, Map<LocalDate, V> statMap) {
-    List<LocalDate> datesInRange = startDateAtZone.toLocalDate().datesUntil(endDateAtZone.toLocalDate()).toList();
-    datesInRange.forEach(date -> {
-      if(!statMap.containsKey(date)) {
-        statMap.put(date, (V) new ArrayList<>());
-      }
-    });
-  }
-
-  private ZonedDateTime convertStatDateTime(LocalDateTime statDateTime, ZoneId userZone) {
-    return statDateTime.atZone(ZoneOffset.UTC).withZoneSameInstant(userZone);
+    return accumulator.toResponse();
   }
 }
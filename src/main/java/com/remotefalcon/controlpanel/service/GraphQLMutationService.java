@@ -1,9 +1,12 @@
 package com.remotefalcon.controlpanel.service;
 
 import com.mailersend.sdk.MailerSendResponse;
+import com.remotefalcon.controlpanel.enums.StatType;
 import com.remotefalcon.controlpanel.repository.NotificationRepository;
+import com.remotefalcon.controlpanel.repository.ShowProjection;
 import com.remotefalcon.controlpanel.repository.ShowRepository;
 import com.remotefalcon.controlpanel.repository.WattsonRepository;
+import com.remotefalcon.controlpanel.response.DeletedStats;
 import com.remotefalcon.controlpanel.util.AuthUtil;
 import com.remotefalcon.controlpanel.util.ClientUtil;
 import com.remotefalcon.controlpanel.util.EmailUtil;
@@ -17,19 +20,17 @@ import com.remotefalcon.library.enums.StatusResponse;
 import com.remotefalcon.library.enums.ViewerControlMode;
 import com.remotefalcon.library.models.*;
 import lombok.RequiredArgsConstructor;
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -40,6 +41,12 @@ public class GraphQLMutationService {
     private final NotificationRepository notificationRepository;
     private final WattsonRepository wattsonRepository;
     private final ClientUtil clientUtil;
+    private final StatsRollupService statsRollupService;
+    private final StatsColumnCache statsColumnCache;
+    private final ShowWriteService showWriteService;
+    private final ViewerPageService viewerPageService;
+    private final StatsRetentionService statsRetentionService;
+    private final StatsTimeSeriesService statsTimeSeriesService;
 
     @Value("${auto-validate-email}")
     Boolean autoValidateEmail;
@@ -53,7 +60,7 @@ public class GraphQLMutationService {
             String email = basicAuthCredentials[0];
             String password = basicAuthCredentials[1];
             if (this.showRepository.findByEmailCollation(email).isPresent()
-                    || this.showRepository.findByShowSubdomain(showSubdomain).isPresent()) {
+                    || this.showRepository.findByShowSubdomain(showSubdomain, ShowProjection.of(List.of())).isPresent()) {
                 throw new RuntimeException(StatusResponse.SHOW_EXISTS.name());
             }
             String showToken = this.validateShowToken(RandomUtil.generateToken(25));
@@ -70,8 +77,11 @@ public class GraphQLMutationService {
                 }
             }
 
-            this.showRepository.save(newShow);
-            return true;
+            return this.viewerPageService.store(showToken, newShow.getPages(), pages -> {
+                newShow.setPages(pages);
+                this.showRepository.insertWithRevision(newShow);
+                return true;
+            });
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
@@ -161,7 +171,9 @@ public class GraphQLMutationService {
             String passwordResetLink = RandomUtil.generateToken(25);
             show.get().setPasswordResetLink(passwordResetLink);
             show.get().setPasswordResetExpiry(LocalDateTime.now().plusDays(1));
-            this.showRepository.save(show.get());
+            this.showRepository.updateByShowToken(show.get().getShowToken(), new Update()
+                    .set("passwordResetLink", show.get().getPasswordResetLink())
+                    .set("passwordResetExpiry", show.get().getPasswordResetExpiry()));
             MailerSendResponse response = this.emailUtil.sendForgotPasswordEmail(show.get(), passwordResetLink);
             if(response.responseStatusCode != 202) {
                 throw new RuntimeException(StatusResponse.EMAIL_CANNOT_BE_SENT.name());
@@ -172,35 +184,30 @@ public class GraphQLMutationService {
     }
 
     public Boolean verifyEmail(String showToken) {
-        Optional<Show> show = this.showRepository.findByShowToken(showToken);
-        if(show.isPresent()) {
-            show.get().setEmailVerified(true);
-            this.showRepository.save(show.get());
+        if(this.showRepository.updateByShowToken(showToken, new Update().set("emailVerified", true))) {
             return true;
         }
         throw new RuntimeException(StatusResponse.UNAUTHORIZED.name());
     }
 
     public Boolean resetPassword() {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isEmpty()) {
-            throw new RuntimeException(StatusResponse.UNAUTHORIZED.name());
-        }
         String updatedPassword = this.authUtil.getPasswordFromHeader(this.authUtil.getCurrentRequest());
         if (updatedPassword != null) {
             BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
             String hashedPassword = passwordEncoder.encode(updatedPassword);
-            show.get().setPassword(hashedPassword);
-            show.get().setPasswordResetLink(null);
-            show.get().setPasswordResetExpiry(null);
-            this.showRepository.save(show.get());
-            return true;
+            boolean updated = this.showRepository.updateByShowToken(authUtil.getTokenDTO().getShowToken(), new Update()
+                    .set("password", hashedPassword)
+                    .unset("passwordResetLink")
+                    .unset("passwordResetExpiry"));
+            if(updated) {
+                return true;
+            }
         }
         throw new RuntimeException(StatusResponse.UNAUTHORIZED.name());
     }
 
     public Boolean updatePassword() {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
+        Optional<Show> show = this.showRepository.findFieldsByShowToken(authUtil.getTokenDTO().getShowToken(), "password");
         if(show.isPresent()) {
             var request = this.authUtil.getCurrentRequest();
             String password = this.authUtil.getPasswordFromHeader(request);
@@ -210,8 +217,7 @@ public class GraphQLMutationService {
                 boolean passwordsMatch = passwordEncoder.matches(password, show.get().getPassword());
                 if(passwordsMatch) {
                     String hashedPassword = passwordEncoder.encode(updatedPassword);
-                    show.get().setPassword(hashedPassword);
-                    this.showRepository.save(show.get());
+                    this.showRepository.updateByShowToken(show.get().getShowToken(), new Update().set("password", hashedPassword));
                     return true;
                 }else {
                     throw new RuntimeException(StatusResponse.UNAUTHORIZED.name());
@@ -222,23 +228,14 @@ public class GraphQLMutationService {
     }
 
     public Boolean updateUserProfile(UserProfile userProfile) {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isPresent()) {
-            show.get().setUserProfile(userProfile);
-            if(show.get().getUserProfile().getExpoPushToken() != null) {
-                userProfile.setExpoPushToken(show.get().getUserProfile().getExpoPushToken());
-            }
-            this.showRepository.save(show.get());
+        if(this.showRepository.updateByShowToken(authUtil.getTokenDTO().getShowToken(), new Update().set("userProfile", userProfile))) {
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
     public Boolean updateExpoPushToken(String expoPushToken) {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isPresent()) {
-            show.get().getUserProfile().setExpoPushToken(expoPushToken);
-            this.showRepository.save(show.get());
+        if(this.showRepository.updateByShowToken(authUtil.getTokenDTO().getShowToken(), new Update().set("userProfile.expoPushToken", expoPushToken))) {
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
@@ -260,13 +257,9 @@ public class GraphQLMutationService {
             show.get().getApiAccess().setApiAccessActive(true);
             show.get().getApiAccess().setApiAccessToken(accessToken);
             show.get().getApiAccess().setApiAccessSecret(secretKey);
-            this.showRepository.save(show.get());
+            this.showRepository.updateByShowToken(show.get().getShowToken(), new Update().set("apiAccess", show.get().getApiAccess()));
             MailerSendResponse response = this.emailUtil.sendRequestApiAccessEmail(show.get(), accessToken, secretKey);
             if(response.responseStatusCode != 202) {
-                show.get().getApiAccess().setApiAccessActive(true);
-                show.get().getApiAccess().setApiAccessToken(accessToken);
-                show.get().getApiAccess().setApiAccessSecret(secretKey);
-                this.showRepository.save(show.get());
                 throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
             }
             return true;
@@ -276,6 +269,10 @@ public class GraphQLMutationService {
 
     public Boolean deleteAccount() {
         this.showRepository.deleteByShowToken(authUtil.getTokenDTO().getShowToken());
+        this.statsRollupService.deleteRollups(authUtil.getTokenDTO().getShowToken());
+        this.statsColumnCache.invalidate(authUtil.getTokenDTO().getShowToken());
+        this.viewerPageService.deleteForShow(authUtil.getTokenDTO().getShowToken());
+        this.statsTimeSeriesService.deleteForShow(authUtil.getTokenDTO().getShowToken());
         return true;
     }
 
@@ -296,7 +293,7 @@ public class GraphQLMutationService {
             }
             if(!StringUtils.equalsIgnoreCase(show.get().getShowName(), showName)) {
                 String showSubdomain = showName.replaceAll("\\s", "").toLowerCase();
-                Optional<Show> showCheck = this.showRepository.findByShowSubdomain(showSubdomain);
+                Optional<Show> showCheck = this.showRepository.findByShowSubdomain(showSubdomain, ShowProjection.of(List.of()));
                 if(showCheck.isPresent()) {
                     throw new RuntimeException(StatusResponse.SHOW_EXISTS.name());
                 }
@@ -305,7 +302,11 @@ public class GraphQLMutationService {
                 show.get().setShowSubdomain(showSubdomain);
             }
             if(changesMade) {
-                this.showRepository.save(show.get());
+                this.showRepository.updateByShowToken(show.get().getShowToken(), new Update()
+                        .set("email", show.get().getEmail())
+                        .set("emailVerified", show.get().getEmailVerified())
+                        .set("showName", show.get().getShowName())
+                        .set("showSubdomain", show.get().getShowSubdomain()));
             }
             return true;
         }
@@ -313,141 +314,111 @@ public class GraphQLMutationService {
     }
 
     public Boolean updatePreferences(Preference preferences) {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
+        Optional<Show> show = this.showRepository.findFieldsByShowToken(authUtil.getTokenDTO().getShowToken(), "preferences.viewerControlEnabled");
         if(show.isPresent()) {
-            if(preferences.getViewerControlEnabled() != show.get().getPreferences().getViewerControlEnabled()) {
+            Boolean viewerControlEnabled = show.get().getPreferences() != null ? show.get().getPreferences().getViewerControlEnabled() : null;
+            if(preferences.getViewerControlEnabled() != viewerControlEnabled) {
                 preferences.setSequencesPlayed(0);
             }
-            show.get().setPreferences(preferences);
-            this.showRepository.save(show.get());
+            this.showRepository.updateByShowToken(show.get().getShowToken(), new Update().set("preferences", preferences));
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
     public Boolean updatePages(List<ViewerPage> pages) {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isPresent()) {
-            show.get().setPages(pages);
-            this.showRepository.save(show.get());
+        String showToken = authUtil.getTokenDTO().getShowToken();
+        if(this.viewerPageService.store(showToken, pages,
+                embedded -> this.showRepository.updateByShowToken(showToken, new Update().set("pages", embedded)))) {
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
     public Boolean updatePsaSequences(List<PsaSequence> psaSequences) {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isPresent()) {
-            show.get().setPsaSequences(psaSequences);
-            this.showRepository.save(show.get());
+        if(this.showRepository.updateByShowToken(authUtil.getTokenDTO().getShowToken(), new Update().set("psaSequences", psaSequences))) {
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
     public Boolean updateSequences(List<Sequence> sequences) {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isPresent()) {
-            Set<Sequence> sequencesSet = new HashSet<>(sequences);
-            show.get().setSequences(sequencesSet.stream().toList());
-            this.showRepository.save(show.get());
+        Set<Sequence> sequencesSet = new HashSet<>(sequences);
+        if(this.showRepository.updateByShowToken(authUtil.getTokenDTO().getShowToken(), new Update().set("sequences", sequencesSet.stream().toList()))) {
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
     public Boolean updateSequenceGroups(List<SequenceGroup> sequenceGroups) {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isPresent()) {
-            show.get().setSequenceGroups(sequenceGroups);
-            this.showRepository.save(show.get());
+        if(this.showRepository.updateByShowToken(authUtil.getTokenDTO().getShowToken(), new Update().set("sequenceGroups", sequenceGroups))) {
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
     public Boolean playSequenceFromControlPanel(Sequence sequence) {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
+        Optional<Show> show = this.showRepository.findFieldsByShowToken(authUtil.getTokenDTO().getShowToken(), "preferences.viewerControlMode");
         if(show.isPresent()) {
+            boolean added;
             if(show.get().getPreferences().getViewerControlMode() == ViewerControlMode.JUKEBOX) {
-                boolean hasOwnerRequest = show.get().getRequests().stream()
-                        .anyMatch(Request::getOwnerRequested);
-                if(hasOwnerRequest) {
-                    throw new RuntimeException(StatusResponse.OWNER_REQUESTED.name());
-                }
-                show.get().getRequests().add(Request.builder()
+                added = this.showRepository.pushRequestIfNoOwnerRequest(show.get().getShowToken(), Request.builder()
                         .sequence(sequence)
                         .ownerRequested(true)
                         .position(0)
                         .build());
             }else {
-                boolean hasOwnerVoted = show.get().getVotes().stream()
-                        .anyMatch(Vote::getOwnerVoted);
-                if(hasOwnerVoted) {
-                    throw new RuntimeException(StatusResponse.OWNER_REQUESTED.name());
-                }
-                show.get().getVotes().add(Vote.builder()
+                added = this.showRepository.pushVoteIfNoOwnerVote(show.get().getShowToken(), Vote.builder()
                         .sequence(sequence)
                         .ownerVoted(true)
                         .lastVoteTime(LocalDateTime.now())
                         .votes(1000)
                         .build());
             }
-            this.showRepository.save(show.get());
+            if(!added) {
+                throw new RuntimeException(StatusResponse.OWNER_REQUESTED.name());
+            }
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
     public Boolean deleteSingleRequest(Integer position) {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isPresent()) {
-            List<Request> updatedRequests = show.get().getRequests().stream()
-                    .filter(request -> !Objects.equals(request.getPosition(), position))
-                    .toList();
-            int requestPosition = 1;
-            for(Request request : updatedRequests) {
-                request.setPosition(requestPosition);
-                requestPosition++;
-            }
-            if(CollectionUtils.isEmpty(updatedRequests)) {
-                show.get().setPlayingNext("");
-            }else {
-                show.get().setPlayingNext(updatedRequests.get(0).getSequence().getDisplayName());
-            }
-            show.get().setRequests(updatedRequests);
-            this.showRepository.save(show.get());
+        if(this.showRepository.removeRequestAndRenumber(authUtil.getTokenDTO().getShowToken(), position)) {
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
     public Boolean deleteNowPlaying() {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isPresent()) {
-            show.get().setPlayingNow("");
-            show.get().setPlayingNext("");
-            show.get().setPlayingNextFromSchedule("");
-            this.showRepository.save(show.get());
+        boolean updated = this.showRepository.updateByShowToken(authUtil.getTokenDTO().getShowToken(), new Update()
+                .set("playingNow", "")
+                .set("playingNext", "")
+                .set("playingNextFromSchedule", ""));
+        if(updated) {
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
     public Boolean purgeStats() {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isPresent()) {
-            this.purgeStatsForShow(show.get());
+        String showToken = authUtil.getTokenDTO().getShowToken();
+        if(this.showRepository.findByShowToken(showToken, ShowProjection.of(List.of())).isPresent()) {
+            this.statsRetentionService.purgeShow(showToken);
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
+    /**
+     * Trims an already-loaded show's stats to the retention window and saves it, for
+     * the {@code DOCUMENT} retention sweep.
+     */
     public void purgeStatsForShow(Show show) {
         if(show.getStats() == null) {
             return;
         }
-        LocalDateTime purgeStatsDate = LocalDateTime.now().minusMonths(18);
+        LocalDateTime purgeStatsDate = StatsRetentionService.cutoff();
         boolean changed = false;
         if(show.getStats().getPage() != null) {
             changed |= show.getStats().getPage().removeIf(stat -> stat.getDateTime().isBefore(purgeStatsDate));
@@ -462,97 +433,121 @@ public class GraphQLMutationService {
             changed |= show.getStats().getVotingWin().removeIf(stat -> stat.getDateTime().isBefore(purgeStatsDate));
         }
         if(changed) {
-            this.showRepository.save(show);
+            // Pulled server-side rather than saving the loaded copy, which would overwrite
+            // anything written since it was read.
+            this.showRepository.pullStatsBefore(show.getShowToken(), purgeStatsDate);
+            this.statsRollupService.deleteRollupsBefore(show.getShowToken(), purgeStatsDate);
+            this.statsColumnCache.invalidate(show.getShowToken());
         }
     }
 
+    /**
+     * {@link #deleteStatsInRange} for clients that only need to know it worked.
+     *
+     * @param timezone deprecated and ignored: the bounds are epoch millis, so no zone is
+     *                 needed to place them. Kept so existing clients' queries still validate.
+     */
     public Boolean deleteStatsWithinRange(Long startDate, Long endDate, String timezone) {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isEmpty()) {
-            throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
-        }
-
-        ZonedDateTime startDateAtZone = ZonedDateTime.ofInstant(Instant.ofEpochMilli(startDate), ZoneId.of(timezone));
-        ZonedDateTime endDateAtZone = ZonedDateTime.ofInstant(Instant.ofEpochMilli(endDate), ZoneId.of(timezone));
-
-        show.get().getStats().getPage().removeIf(stat -> stat.getDateTime().isAfter(startDateAtZone.toLocalDateTime()) && stat.getDateTime().isBefore(endDateAtZone.toLocalDateTime()));
-        show.get().getStats().getJukebox().removeIf(stat -> stat.getDateTime().isAfter(startDateAtZone.toLocalDateTime()) && stat.getDateTime().isBefore(endDateAtZone.toLocalDateTime()));
-        show.get().getStats().getVoting().removeIf(stat -> stat.getDateTime().isAfter(startDateAtZone.toLocalDateTime()) && stat.getDateTime().isBefore(endDateAtZone.toLocalDateTime()));
-        show.get().getStats().getVotingWin().removeIf(stat -> stat.getDateTime().isAfter(startDateAtZone.toLocalDateTime()) && stat.getDateTime().isBefore(endDateAtZone.toLocalDateTime()));
-
-        this.showRepository.save(show.get());
+        this.deleteStatsInRange(startDate, endDate);
         return true;
     }
 
+    /**
+     * Removes the show's stats strictly between the two epoch-millis instants with one
+     * server-side update, whatever the length of the range, and returns how many entries
+     * each category lost. The same range is removed from the stats time series. The
+     * counts are those deleted from whichever copy holds the full history: the show,
+     * until the time-series retention has trimmed it, and the time series after that.
+     */
+    public DeletedStats deleteStatsInRange(Long startDate, Long endDate) {
+        String showToken = authUtil.getTokenDTO().getShowToken();
+        Instant start = Instant.ofEpochMilli(startDate);
+        Instant end = Instant.ofEpochMilli(endDate);
+        // Stat times are UTC wall-clock values; the same bounds go to the delete and the rebuild.
+        LocalDateTime after = LocalDateTime.ofInstant(start, ZoneOffset.UTC);
+        LocalDateTime before = LocalDateTime.ofInstant(end, ZoneOffset.UTC);
+        Map<StatType, Long> removed = this.showRepository.deleteStatsBetween(showToken, after, before)
+                .orElseThrow(() -> new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name()));
+        Map<StatType, Long> removedEvents = this.statsTimeSeriesService.deleteBetween(showToken, after, before);
+        DeletedStats deletedStats = DeletedStats.of(this.statsTimeSeriesService.isEmbeddedStatsTrimmed() ? removedEvents : removed);
+        if(deletedStats.getTotal() > 0) {
+            // The rebuild is queued behind the rollup lease, so it never races a window.
+            this.statsRollupService.rebuildShowRange(showToken, after, before);
+            this.statsColumnCache.invalidate(showToken);
+        }
+        return deletedStats;
+    }
+
     public Boolean resetAllVotes() {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isPresent()) {
-            show.get().setVotes(new ArrayList<>());
-            Set<Sequence> sequenceSet = show.get().getSequences().stream()
-                    .peek(sequence -> sequence.setVisibilityCount(0)).collect(Collectors.toSet());
-            show.get().setSequences(sequenceSet.stream().toList());
-            show.get().setSequenceGroups(show.get().getSequenceGroups().stream()
-                    .peek(sequenceGroup -> sequenceGroup.setVisibilityCount(0)).toList());
-            this.showRepository.save(show.get());
+        if(this.showRepository.clearQueueAndResetVisibility(authUtil.getTokenDTO().getShowToken(), "votes")) {
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
     public Boolean adminUpdateShow(Show show) {
-        Optional<Show> optionalShow = this.showRepository.findByShowToken(show.getShowToken());
-        if(optionalShow.isPresent()) {
-            show.setId(optionalShow.get().getId());
-            show.setPassword(optionalShow.get().getPassword());
-            this.showRepository.save(show);
-        }
+        this.showWriteService.modify(show.getShowToken(), "adminUpdateShow", current -> {
+            // Applied to the show as re-read on every attempt, so a retry does not put back
+            // values from a stale copy. Like the whole-show save this replaced, every
+            // admin-editable field is taken as sent, so a field left out is cleared. The id,
+            // password and the fields the viewer API and plugin write are kept.
+            current.setEmail(show.getEmail());
+            current.setShowName(show.getShowName());
+            current.setShowSubdomain(show.getShowSubdomain());
+            current.setEmailVerified(show.getEmailVerified());
+            current.setCreatedDate(show.getCreatedDate());
+            current.setLastLoginDate(show.getLastLoginDate());
+            current.setExpireDate(show.getExpireDate());
+            current.setLastLoginIp(show.getLastLoginIp());
+            current.setShowRole(show.getShowRole());
+            current.setApiAccess(show.getApiAccess());
+            current.setUserProfile(show.getUserProfile());
+            current.setPreferences(show.getPreferences());
+            current.setSequences(show.getSequences());
+            current.setSequenceGroups(show.getSequenceGroups());
+            current.setPsaSequences(show.getPsaSequences());
+            current.setPages(show.getPages());
+            return current;
+        });
         return true;
     }
 
     public Boolean deleteAllRequests() {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
-        if(show.isPresent()) {
-            show.get().setRequests(new ArrayList<>());
-            Set<Sequence> sequenceSet = show.get().getSequences().stream()
-                    .peek(sequence -> sequence.setVisibilityCount(0)).collect(Collectors.toSet());
-            show.get().setSequences(sequenceSet.stream().toList());
-            show.get().setSequenceGroups(show.get().getSequenceGroups().stream()
-                    .peek(sequenceGroup -> sequenceGroup.setVisibilityCount(0)).toList());
-            this.showRepository.save(show.get());
+        if(this.showRepository.clearQueueAndResetVisibility(authUtil.getTokenDTO().getShowToken(), "requests")) {
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
     public Boolean markNotificationsAsRead(List<String> uuids) {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
+        Optional<Show> show = this.showRepository.findFieldsByShowToken(authUtil.getTokenDTO().getShowToken(), "showNotifications");
         if(show.isPresent()) {
             Show existingShow = show.get();
-            Optional.ofNullable(existingShow.getShowNotifications())
-                    .orElse(Collections.emptyList())
-                    .forEach(showNotification -> {
+            List<ShowNotification> showNotifications = Optional.ofNullable(existingShow.getShowNotifications())
+                    .orElse(Collections.emptyList());
+            showNotifications.forEach(showNotification -> {
                 if(uuids.contains(showNotification.getNotification().getUuid())) {
                     showNotification.setRead(true);
                 }
             });
-            this.showRepository.save(existingShow);
+            this.showRepository.updateByShowToken(existingShow.getShowToken(), new Update().set("showNotifications", showNotifications));
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
     public Boolean deleteNotificationForUser(String uuid) {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
+        Optional<Show> show = this.showRepository.findFieldsByShowToken(authUtil.getTokenDTO().getShowToken(), "showNotifications");
         if(show.isPresent()) {
             Show existingShow = show.get();
-            Optional.ofNullable(existingShow.getShowNotifications())
-                    .orElse(Collections.emptyList())
-                    .forEach(showNotification -> {
+            List<ShowNotification> showNotifications = Optional.ofNullable(existingShow.getShowNotifications())
+                    .orElse(Collections.emptyList());
+            showNotifications.forEach(showNotification -> {
                 if (Objects.equals(showNotification.getNotification().getUuid(), uuid)) {
                     showNotification.setDeleted(true);
                 }
             });
-            this.showRepository.save(existingShow);
+            this.showRepository.updateByShowToken(existingShow.getShowToken(), new Update().set("showNotifications", showNotifications));
             return true;
         }
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
@@ -567,12 +562,14 @@ public class GraphQLMutationService {
     }
 
     public Boolean createNotificationForUser(Notification notification, String subdomain) {
-        Optional<Show> show = this.showRepository.findByShowSubdomain(subdomain);
+        Optional<Show> show = this.showRepository.findByShowSubdomain(subdomain, ShowProjection.of(List.of()));
         if(show.isEmpty()) {
             return false;
         }
-        buildShowNotification(notification, show.get(), NotificationType.USER);
-        this.showRepository.save(show.get());
+        Show notificationTarget = Show.builder().showToken(show.get().getShowToken()).build();
+        buildShowNotification(notification, notificationTarget, NotificationType.USER);
+        this.showRepository.updateByShowToken(notificationTarget.getShowToken(),
+                new Update().push("showNotifications", notificationTarget.getShowNotifications().get(0)));
         return true;
     }
 
@@ -603,6 +600,25 @@ public class GraphQLMutationService {
         return true;
     }
 
+    public Boolean backfillStatsRollups() {
+        if(this.statsTimeSeriesService.isEmbeddedStatsTrimmed()) {
+            // The rebuild reads the embedded arrays, which no longer hold the history.
+            return false;
+        }
+        this.statsRollupService.backfillAllShows();
+        return true;
+    }
+
+    public Boolean migrateViewerPages() {
+        this.viewerPageService.migrateAllShows();
+        return true;
+    }
+
+    public Boolean migrateStatsToTimeSeries() {
+        this.statsTimeSeriesService.migrateAllShows();
+        return true;
+    }
+
     public Boolean wattsonFeedback(String responseId, String feedback) {
         Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
         if(show.isEmpty()) {
@@ -19,6 +19,7 @@ import com.remotefalcon.library.models.*;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -28,6 +29,7 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import com.remotefalcon.controlpanel.repository.ShowProjection;
 import com.remotefalcon.controlpanel.repository.ShowRepository;
 import com.remotefalcon.controlpanel.repository.WattsonRepository;
 import com.remotefalcon.controlpanel.response.ShowsOnAMap;
@@ -52,6 +54,14 @@ public class GraphQLQueryService {
     private final ShowRepository showRepository;
     private final NotificationRepository notificationRepository;
     private final WattsonRepository wattsonRepository;
+    private final ShowTouchBuffer showTouchBuffer;
+    private final ShowCache showCache;
+
+    // Read by AuthUtil.signJwt.
+    private static final String[] JWT_FIELDS = {"email", "showSubdomain", "showRole"};
+    // Credentials and the fields checkFields may default, on top of the JWT fields.
+    private static final String[] SIGN_IN_FIELDS = {"email", "showSubdomain", "showRole", "password", "emailVerified",
+            "preferences.viewerControlMode", "requests", "votes"};
 
     @Value("${wattson.key}")
     String wattsonKey;
@@ -62,14 +72,14 @@ public class GraphQLQueryService {
     @Value("${wattson.max_output_tokens:0}")
     Long wattsonMaxOutputTokens;
 
-    public Show signIn() {
+    public Show signIn(ShowProjection projection) {
         var request = this.authUtil.getCurrentRequest();
         String[] basicAuthCredentials = this.authUtil.getBasicAuthCredentials(request);
         if (basicAuthCredentials != null) {
             String ipAddress = this.clientUtil.getClientIp(request);
             String email = basicAuthCredentials[0];
             String password = basicAuthCredentials[1];
-            Optional<Show> optionalShow = this.showRepository.findByEmailCollation(email);
+            Optional<Show> optionalShow = this.showRepository.findByEmailCollation(email, projection.with(SIGN_IN_FIELDS));
             if (optionalShow.isEmpty()) {
                 throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
             }
@@ -83,8 +93,11 @@ public class GraphQLQueryService {
                 show.setLastLoginDate(LocalDateTime.now());
                 show.setExpireDate(LocalDateTime.now().plusYears(2));
                 show.setLastLoginIp(ipAddress);
-                this.checkFields(show);
-                this.showRepository.save(show);
+                this.showTouchBuffer.touchSignIn(show.getShowToken(), show.getLastLoginDate(), show.getExpireDate(), ipAddress);
+                Update defaults = this.checkFields(show);
+                if(!defaults.getUpdateObject().isEmpty()) {
+                    this.showRepository.updateByShowToken(show.getShowToken(), defaults);
+                }
                 show.setServiceToken(this.authUtil.signJwt(show));
                 return show;
             }
@@ -92,8 +105,8 @@ public class GraphQLQueryService {
         throw new RuntimeException(StatusResponse.UNAUTHORIZED.name());
     }
 
-    public Show impersonateShow(String showSubdomain) {
-        Optional<Show> optionalShow = this.showRepository.findByShowSubdomain(showSubdomain);
+    public Show impersonateShow(String showSubdomain, ShowProjection projection) {
+        Optional<Show> optionalShow = this.showRepository.findByShowSubdomain(showSubdomain, projection.with(JWT_FIELDS));
         if (optionalShow.isEmpty()) {
             throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
         }
@@ -112,28 +125,29 @@ public class GraphQLQueryService {
                 .toList();
     }
 
-    private void checkFields(Show show) {
+    /**
+     * Fills in fields older shows may be missing and returns the update that stores them.
+     */
+    private Update checkFields(Show show) {
+        Update defaults = new Update();
         if(show.getPreferences().getViewerControlMode() == null) {
             show.getPreferences().setViewerControlMode(ViewerControlMode.JUKEBOX);
+            defaults.set("preferences.viewerControlMode", ViewerControlMode.JUKEBOX);
         }
-        if(show.getStats() == null) {
-            show.setStats(Stat.builder()
-                    .jukebox(new ArrayList<>())
-                    .page(new ArrayList<>())
-                    .voting(new ArrayList<>())
-                    .votingWin(new ArrayList<>())
-                    .build());
-        }
-        if(CollectionUtils.isEmpty(show.getRequests())) {
+        if(show.getRequests() == null) {
             show.setRequests(new ArrayList<>());
+            defaults.set("requests", show.getRequests());
         }
-        if(CollectionUtils.isEmpty(show.getVotes())) {
+        if(show.getVotes() == null) {
             show.setVotes(new ArrayList<>());
+            defaults.set("votes", show.getVotes());
         }
+        return defaults;
     }
 
-    public Show verifyPasswordResetLink(String passwordResetLink) {
-        Optional<Show> show = this.showRepository.findByPasswordResetLinkAndPasswordResetExpiryGreaterThan(passwordResetLink, LocalDateTime.now());
+    public Show verifyPasswordResetLink(String passwordResetLink, ShowProjection projection) {
+        Optional<Show> show = this.showRepository.findByPasswordResetLinkAndPasswordResetExpiryGreaterThan(passwordResetLink, LocalDateTime.now(),
+                projection.with(JWT_FIELDS));
         if(show.isPresent()) {
             String jwt = this.authUtil.signJwt(show.get());
             show.get().setServiceToken(jwt);
@@ -142,17 +156,23 @@ public class GraphQLQueryService {
         throw new RuntimeException(StatusResponse.UNAUTHORIZED.name());
     }
 
-    public Show getShow() {
-        Optional<Show> show = this.showRepository.findByShowToken(authUtil.getTokenDTO().getShowToken());
+    public Show getShow(ShowProjection projection) {
+        Optional<Show> show = this.showCache.findByShowToken(authUtil.getTokenDTO().getShowToken(),
+                projection.includes("psaSequences") ? projection : projection.with("psaSequences.lastPlayed"));
         if(show.isPresent()) {
-            show.get().setLastLoginDate(LocalDateTime.now());
-            checkPsaSequences(show.get());
-            this.showRepository.save(show.get());
+            LocalDateTime now = LocalDateTime.now();
+            show.get().setLastLoginDate(now);
+            this.showTouchBuffer.touchLastLogin(show.get().getShowToken(), now);
+            if(checkPsaSequences(show.get(), now)) {
+                this.showTouchBuffer.touchPsaLastPlayed(show.get().getShowToken(), now);
+            }
 
             List<Sequence> sequences = show.get().getSequences();
-            sequences.sort(Comparator.comparing(Sequence::getActive)
-                            .reversed()
-                    .thenComparing(Sequence::getOrder));
+            if(sequences != null) {
+                sequences.sort(Comparator.comparing(Sequence::getActive)
+                                .reversed()
+                        .thenComparing(Sequence::getOrder));
+            }
             show.get().setSequences(sequences);
 
             List<Request> jukeboxRequests = show.get().getRequests();
@@ -166,12 +186,18 @@ public class GraphQLQueryService {
         throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
     }
 
-    private void checkPsaSequences(Show show) {
+    private boolean checkPsaSequences(Show show, LocalDateTime now) {
+      boolean defaulted = false;
+      if(show.getPsaSequences() == null) {
+        return false;
+      }
       for(PsaSequence psaSequence : show.getPsaSequences()) {
         if(psaSequence.getLastPlayed() == null) {
-          psaSequence.setLastPlayed(LocalDateTime.now());
+          psaSequence.setLastPlayed(now);
+          defaulted = true;
         }
       }
+      return defaulted;
     }
 
     public List<ShowsOnAMap> showsOnAMap() {
@@ -190,8 +216,8 @@ public class GraphQLQueryService {
         return showsOnAMapList;
     }
 
-    public Show getShowByShowName(String showName) {
-        Optional<Show> show = this.showRepository.findByShowName(showName);
+    public Show getShowByShowName(String showName, ShowProjection projection) {
+        Optional<Show> show = this.showRepository.findByShowName(showName, projection);
         return show.orElse(null);
     }
 
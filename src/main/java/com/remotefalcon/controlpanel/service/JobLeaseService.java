@@ -0,0 +1,174 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.remotefalcon.controlpanel.document.JobLease;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs a {@code @Scheduled} job on one replica at a time, using a {@link JobLease}
+ * document per job.
+ *
+ * <p>A replica acquires the lease by upserting it only where it has expired; the upsert
+ * of a lease that another replica still holds fails on {@code _id}. While the job runs the
+ * lease is renewed every third of its TTL, so a long sweep keeps it and a crashed replica
+ * loses it after one TTL. Renewals and the release match on the fencing token, and a
+ * failed renewal marks the {@link Lease} lost, which long-running jobs check between
+ * units of work. On release the lease is kept until {@code lockAtLeastFor} after it was
+ * acquired, so a replica whose cron fires a little later does not run the same
+ * occurrence again. Expiry is compared against each replica's clock, which the TTLs
+ * comfortably exceed.
+ */
+@Service
+@Slf4j
+public class JobLeaseService {
+  private final MongoTemplate mongoTemplate;
+  private final MeterRegistry meterRegistry;
+  private final String holder = System.getenv().getOrDefault("HOSTNAME", "control-panel") + "-" + UUID.randomUUID().toString().substring(0, 8);
+  private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "job-lease-heartbeat");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  public JobLeaseService(MongoTemplate mongoTemplate, MeterRegistry meterRegistry) {
+    this.mongoTemplate = mongoTemplate;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Runs {@code job} if this replica can take the lease on {@code name}, renewing it
+   * until the job returns. Returns whether the job ran.
+   */
+  public boolean runExclusively(String name, Duration ttl, Duration lockAtLeastFor, Consumer<Lease> job) {
+    Optional<Lease> acquired = this.tryAcquire(name, ttl);
+    if(acquired.isEmpty()) {
+      this.meterRegistry.counter("job.lease", "job", name, "outcome", "busy").increment();
+      return false;
+    }
+    Lease lease = acquired.get();
+    this.meterRegistry.counter("job.lease", "job", name, "outcome", "acquired").increment();
+    long renewMillis = Math.max(1, ttl.toMillis() / 3);
+    ScheduledFuture<?> heartbeat = this.heartbeats.scheduleAtFixedRate(() -> this.renew(lease, ttl),
+            renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+    try {
+      job.accept(lease);
+    } finally {
+      heartbeat.cancel(false);
+      this.release(lease, lockAtLeastFor);
+    }
+    return true;
+  }
+
+  Optional<Lease> tryAcquire(String name, Duration ttl) {
+    Instant now = Instant.now();
+    Query query = Query.query(Criteria.where("_id").is(name).and("expiresAt").lte(now));
+    Update update = new Update()
+            .set("holder", this.holder)
+            .set("acquiredAt", now)
+            .set("expiresAt", now.plus(ttl))
+            .inc("fencingToken", 1);
+    try {
+      JobLease jobLease = this.mongoTemplate.findAndModify(query, update,
+              FindAndModifyOptions.options().returnNew(true).upsert(true), JobLease.class);
+      if(jobLease == null) {
+        return Optional.empty();
+      }
+      return Optional.of(new Lease(name, jobLease.getFencingToken(), now));
+    } catch (DuplicateKeyException e) {
+      // Held by another replica: the filter missed and the upsert hit the existing _id.
+      return Optional.empty();
+    }
+  }
+
+  void renew(Lease lease, Duration ttl) {
+    try {
+      boolean renewed = this.mongoTemplate.updateFirst(this.heldBy(lease),
+              new Update().set("expiresAt", Instant.now().plus(ttl)), JobLease.class).getMatchedCount() > 0;
+      if(!renewed && lease.held) {
+        lease.held = false;
+        log.warn("Lost lease on job {} (fencing token {})", lease.name, lease.fencingToken);
+        this.meterRegistry.counter("job.lease", "job", lease.name, "outcome", "lost").increment();
+      }
+    } catch (Exception e) {
+      // Keep going; the lease only lapses if renewals keep failing for a whole TTL.
+      log.warn("Failed to renew lease on job {}: {}", lease.name, e.getMessage());
+    }
+  }
+
+  private void release(Lease lease, Duration lockAtLeastFor) {
+    Instant now = Instant.now();
+    Instant earliestNextRun = lease.acquiredAt.plus(lockAtLeastFor);
+    try {
+      this.mongoTemplate.updateFirst(this.heldBy(lease),
+              new Update().set("expiresAt", earliestNextRun.isAfter(now) ? earliestNextRun : now), JobLease.class);
+    } catch (Exception e) {
+      log.warn("Failed to release lease on job {}, it expires on its own: {}", lease.name, e.getMessage());
+    }
+  }
+
+  private Query heldBy(Lease lease) {
+    return Query.query(Criteria.where("_id").is(lease.name)
+            .and("holder").is(this.holder)
+            .and("fencingToken").is(lease.fencingToken));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    this.heartbeats.shutdownNow();
+  }
+
+  /**
+   * One acquisition of a job lease, handed to the job while it runs.
+   */
+  public static final class Lease {
+    private final String name;
+    private final long fencingToken;
+    private final Instant acquiredAt;
+    private volatile boolean held = true;
+
+    private Lease(String name, long fencingToken, Instant acquiredAt) {
+      this.name = name;
+      this.fencingToken = fencingToken;
+      this.acquiredAt = acquiredAt;
+    }
+
+    public String getName() {
+      return this.name;
+    }
+
+    /**
+     * Grows with every acquisition of the lease. Writes made under the lease can be
+     * made conditional on it being at least the stored token, so a holder that has
+     * lost the lease cannot overwrite the work of the one that took it over.
+     */
+    public long getFencingToken() {
+      return this.fencingToken;
+    }
+
+    /**
+     * False once a renewal found another replica holding the lease; the job should
+     * stop before its next unit of work.
+     */
+    public boolean isHeld() {
+      return this.held;
+    }
+  }
+}
@@ -6,12 +6,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Stream;
 
+import com.remotefalcon.controlpanel.enums.StatsRetentionMode;
 import com.remotefalcon.controlpanel.repository.ShowRepository;
 import com.remotefalcon.library.documents.Notification;
 import com.remotefalcon.library.documents.Show;
 import com.remotefalcon.library.enums.NotificationType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
@@ -24,6 +26,12 @@ public class ScheduledTaskService {
     private final ExpoNotificationService expoNotificationService;
     private final GraphQLMutationService graphQLMutationService;
     private final MongoTemplate mongoTemplate;
+    private final ShowWriteService showWriteService;
+    private final StatsRetentionService statsRetentionService;
+    private final StatsTimeSeriesService statsTimeSeriesService;
+
+    @Value("${stats.retention.mode:SERVER_SIDE}")
+    private StatsRetentionMode statsRetentionMode;
 
     public void fppHeartbeatTask() {
         List<Show> showsToNotify = showRepository.findByPreferencesNotificationPreferencesEnableFppHeartbeatIsTrueAndLastFppHeartbeatBefore(LocalDateTime.now().minusMinutes(5));
@@ -46,30 +54,55 @@ public class ScheduledTaskService {
                 String notificationBody = "FPP Plugin last checked in " + minutesDiff + " minutes ago. Either the plugin has been stopped or FPPD is not running.\n\nThis notification will be deleted after 24 hours.";
 
                 this.expoNotificationService.sendExpoPush(show.getUserProfile().getExpoPushToken(), subject, pushMessage);
-                graphQLMutationService.buildShowNotification(Notification.builder().subject(subject).preview(preview).message(notificationBody).build(), show, NotificationType.FPP_HEALTH);
-
-                show.getPreferences().getNotificationPreferences().setFppHeartbeatLastNotification(LocalDateTime.now());
-
-                this.showRepository.save(show);
+                this.showWriteService.modify(show.getShowToken(), "fppHeartbeatNotification", current -> {
+                    graphQLMutationService.buildShowNotification(Notification.builder().subject(subject).preview(preview).message(notificationBody).build(), current, NotificationType.FPP_HEALTH);
+                    current.getPreferences().getNotificationPreferences().setFppHeartbeatLastNotification(LocalDateTime.now());
+                    return current;
+                });
                 log.info("Sent FPP heartbeat notification to {}", show.getShowName());
             }
         });
     }
 
     /**
-     * Iterates every show via a streaming Mongo cursor and applies the 18-month
-     * stats retention policy one document at a time. Uses {@link MongoTemplate#stream}
+     * Applies the 18-month stats retention policy to every show. In
+     * {@code SERVER_SIDE} mode ({@code stats.retention.mode}) this is a handful of
+     * {@code $pull} updates; in {@code INCREMENTAL} mode the same updates are
+     * applied in paced, checkpointed batches; in {@code TIME_SERIES} mode the
+     * time series expires its own events and only the embedded arrays are trimmed,
+     * once its migration has completed and the dashboard reads from it; in {@code DOCUMENT} mode it iterates every show via a
+     * streaming Mongo cursor and trims one document at a time. Uses {@link MongoTemplate#stream}
      * (not {@code findAll}) to avoid materializing the full collection in memory:
      * populated show documents average ~130 KB, so 1000+ shows would otherwise
-     * exceed the control-panel pod's 512 Mi memory limit.
+     * exceed the control-panel pod's 512 Mi memory limit. Stops early if
+     * {@code lease} is lost to another replica.
      */
-    public void purgeStaleStatsForAllShows() {
+    public void purgeStaleStatsForAllShows(JobLeaseService.Lease lease) {
+        if (statsRetentionMode == StatsRetentionMode.SERVER_SIDE) {
+            statsRetentionService.purgeAllShows();
+            return;
+        }
+        if (statsRetentionMode == StatsRetentionMode.TIME_SERIES) {
+            if (!statsTimeSeriesService.trimEmbeddedStats()) {
+                log.info("Embedded stats not trimmed, applying retention server-side");
+                statsRetentionService.purgeAllShows();
+            }
+            return;
+        }
+        if (statsRetentionMode == StatsRetentionMode.INCREMENTAL) {
+            statsRetentionService.sweepIncrementally(lease);
+            return;
+        }
         int swept = 0;
         int errored = 0;
         long startMillis = System.currentTimeMillis();
         try (Stream<Show> shows = mongoTemplate.stream(new Query(), Show.class)) {
             Iterator<Show> it = shows.iterator();
             while (it.hasNext()) {
+                if (!lease.isHeld()) {
+                    log.warn("Stats retention sweep stopped after {} shows: lease lost", swept);
+                    break;
+                }
                 Show show = it.next();
                 try {
                     graphQLMutationService.purgeStatsForShow(show);
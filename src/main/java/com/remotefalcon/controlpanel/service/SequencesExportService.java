@@ -9,17 +9,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.remotefalcon.controlpanel.dto.TokenDTO;
+import com.remotefalcon.controlpanel.enums.ExportFormat;
 import com.remotefalcon.controlpanel.exception.SequencesCsvException;
 import com.remotefalcon.controlpanel.exception.SequencesCsvException.ErrorType;
+import com.remotefalcon.controlpanel.repository.ShowProjection;
 import com.remotefalcon.controlpanel.repository.ShowRepository;
 import com.remotefalcon.controlpanel.util.AuthUtil;
 import com.remotefalcon.controlpanel.util.ExcelUtil;
+import com.remotefalcon.controlpanel.util.XlsxUtil;
 import com.remotefalcon.library.documents.Show;
 import com.remotefalcon.library.enums.StatusResponse;
 import com.remotefalcon.library.models.Sequence;
@@ -34,10 +37,12 @@ public class SequencesExportService {
   private final AuthUtil jwtUtil;
   private final ShowRepository showRepository;
   private final ExcelUtil excelUtil;
+  private final XlsxUtil xlsxUtil;
+  private final ShowWriteService showWriteService;
 
-  public ResponseEntity<ByteArrayResource> downloadSequencesToExcel() {
+  public ResponseEntity<StreamingResponseBody> downloadSequencesToExcel(ExportFormat format, boolean gzip) {
     TokenDTO tokenDTO = this.jwtUtil.getJwtPayload();
-    Optional<Show> show = this.showRepository.findByShowToken(tokenDTO.getShowToken());
+    Optional<Show> show = this.showRepository.findByShowToken(tokenDTO.getShowToken(), ShowProjection.of(List.of("sequences")));
     if (show.isEmpty()) {
       throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
     }
@@ -47,7 +52,10 @@ public class SequencesExportService {
       return ResponseEntity.status(204).build();
     }
 
-    return excelUtil.generateSequencesExcel(sequences);
+    if (format == ExportFormat.XLSX) {
+      return xlsxUtil.generateSequencesXlsx(sequences);
+    }
+    return excelUtil.generateSequencesExcel(sequences, gzip);
   }
 
   public ResponseEntity<Void> uploadSequencesFromCsv(MultipartFile file) {
@@ -56,16 +64,15 @@ public class SequencesExportService {
     }
 
     TokenDTO tokenDTO = this.jwtUtil.getJwtPayload();
-    Optional<Show> showOptional = this.showRepository.findByShowToken(tokenDTO.getShowToken());
+    List<Sequence> parsedSequences = parseCsvToSequences(file);
+    Optional<Show> showOptional = this.showWriteService.modify(tokenDTO.getShowToken(), "uploadSequencesFromCsv", show -> {
+      updateSequences(show, parsedSequences);
+      return show;
+    });
     if (showOptional.isEmpty()) {
       throw new SequencesCsvException(ErrorType.SHOW_NOT_FOUND, StatusResponse.SHOW_NOT_FOUND.name());
     }
 
-    List<Sequence> parsedSequences = parseCsvToSequences(file);
-    Show show = showOptional.get();
-    updateSequences(show, parsedSequences);
-    this.showRepository.save(show);
-
     return ResponseEntity.ok().build();
   }
 
@@ -0,0 +1,135 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.client.MongoCollection;
+import com.remotefalcon.controlpanel.repository.ShowChangedEvent;
+import com.remotefalcon.controlpanel.repository.ShowProjection;
+import com.remotefalcon.controlpanel.repository.ShowRepository;
+import com.remotefalcon.controlpanel.repository.ShowRepositoryCustom;
+import com.remotefalcon.library.documents.Show;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of show documents by {@code showToken}, for reads that do not modify
+ * and save the show they get back.
+ *
+ * <p>Entries hold the show's raw BSON without {@code stats}, weighed by their byte size
+ * and evicted least-recently-used once {@code show.cache.max-bytes} is reached. Every hit
+ * decodes a fresh {@link Show}, so callers are free to mutate what they get. Reads whose
+ * projection includes {@code stats} go to Mongo. Writes made by this service invalidate
+ * the show's entry through {@link ShowChangedEvent}, and writes made by other replicas
+ * through {@link ShowInvalidationBus}; writes made elsewhere (the viewer API) are picked
+ * up when the entry expires after {@code show.cache.ttl-seconds}. Flushes of {@link ShowTouchBuffer} do not invalidate:
+ * they only move login dates forward, which {@code getShow} sets on what it returns
+ * anyway, and would otherwise evict every signed-in show every few seconds.
+ */
+@Service
+public class ShowCache {
+  private static final Document WITHOUT_STATS = new Document("stats", 0);
+
+  private final ShowRepository showRepository;
+  private final MongoTemplate mongoTemplate;
+  private final boolean enabled;
+  private final Cache<String, RawBsonDocument> cache;
+  private final AtomicLong weightInBytes = new AtomicLong();
+  // Bumped by every invalidation, so a load that raced one is not kept.
+  private final AtomicLong invalidations = new AtomicLong();
+
+  public ShowCache(ShowRepository showRepository, MongoTemplate mongoTemplate, MeterRegistry meterRegistry,
+                   @Value("${show.cache.enabled:true}") boolean enabled,
+                   @Value("${show.cache.max-bytes:67108864}") long maxBytes,
+                   @Value("${show.cache.ttl-seconds:5}") long ttlSeconds) {
+    this.showRepository = showRepository;
+    this.mongoTemplate = mongoTemplate;
+    this.enabled = enabled;
+    this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String showToken, RawBsonDocument document) -> document.getByteBuffer().remaining())
+            .removalListener(notification -> this.weightInBytes.addAndGet(-notification.getValue().getByteBuffer().remaining()))
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+    GuavaCacheMetrics.monitor(meterRegistry, this.cache, "show");
+    meterRegistry.gauge("show.cache.bytes", this.weightInBytes);
+  }
+
+  /**
+   * The show with the given token, with at least the fields of {@code projection}
+   * loaded. A cached show comes back with every field but {@code stats}.
+   */
+  public Optional<Show> findByShowToken(String showToken, ShowProjection projection) {
+    if(!this.enabled || projection.includes("stats")) {
+      return this.showRepository.findByShowToken(showToken, projection);
+    }
+    RawBsonDocument document = this.cache.getIfPresent(showToken);
+    if(document == null) {
+      long invalidationsBefore = this.invalidations.get();
+      document = this.collection().find(new Document("showToken", showToken)).projection(WITHOUT_STATS).first();
+      if(document == null) {
+        return Optional.empty();
+      }
+      this.cache.put(showToken, document);
+      this.weightInBytes.addAndGet(document.getByteBuffer().remaining());
+      if(this.invalidations.get() != invalidationsBefore) {
+        this.cache.invalidate(showToken);
+      }
+    }
+    return Optional.of(this.decode(document));
+  }
+
+  @EventListener
+  public void onShowChanged(ShowChangedEvent event) {
+    this.invalidations.incrementAndGet();
+    if(event.getShowToken() == null) {
+      this.cache.invalidateAll();
+    }else {
+      this.cache.invalidate(event.getShowToken());
+    }
+  }
+
+  /**
+   * Drops the show's entry for a write made by another replica, unless the entry is
+   * already at {@code revision} or later. A null {@code showToken} drops every entry and
+   * a null {@code revision} always drops. Returns whether anything was dropped.
+   */
+  public boolean onRemoteChange(String showToken, Long revision) {
+    this.invalidations.incrementAndGet();
+    if(showToken == null) {
+      this.cache.invalidateAll();
+      return true;
+    }
+    // asMap() so the lookup does not count as a hit or miss.
+    RawBsonDocument cached = this.cache.asMap().get(showToken);
+    if(cached == null) {
+      return false;
+    }
+    if(revision != null && cached.isNumber(ShowRepositoryCustom.REVISION_FIELD)
+            && cached.getNumber(ShowRepositoryCustom.REVISION_FIELD).longValue() >= revision) {
+      return false;
+    }
+    this.cache.invalidate(showToken);
+    return true;
+  }
+
+  private Show decode(RawBsonDocument document) {
+    Document decoded = document.decode(this.collection().getCodecRegistry().get(Document.class));
+    return this.mongoTemplate.getConverter().read(Show.class, decoded);
+  }
+
+  private MongoCollection<RawBsonDocument> collection() {
+    return this.mongoTemplate.getCollection(this.mongoTemplate.getCollectionName(Show.class))
+            .withDocumentClass(RawBsonDocument.class);
+  }
+}
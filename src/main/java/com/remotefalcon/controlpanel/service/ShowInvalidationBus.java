@@ -0,0 +1,198 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.mongodb.CursorType;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.remotefalcon.controlpanel.repository.ShowChangedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carries {@link ShowChangedEvent}s between control-panel replicas, so a write on one pod
+ * evicts the show from {@link ShowCache} on the others.
+ *
+ * <p>Every local change is appended to the capped {@code showInvalidation} collection
+ * as {@code showToken}, the show's revision when known, and the publishing replica's id.
+ * Each replica tails the collection with a tailable, awaiting cursor and hands messages
+ * from the other replicas to {@link ShowCache#onRemoteChange}, which keeps an entry that
+ * is already at that revision. A tailable cursor works on a standalone server as well as
+ * a replica set; a cursor that dies (empty collection, failover) is reopened after the
+ * last message seen, by position in the collection. The collection is created on first
+ * start with {@code show.invalidation-bus.capped-size-bytes}; it only has to hold the
+ * messages written while a replica reconnects, and if that message has been overwritten
+ * the whole cache is cleared. A message that could not be published at all is covered
+ * only by the cache TTL.
+ */
+@Service
+@Slf4j
+public class ShowInvalidationBus {
+  static final String COLLECTION = "showInvalidation";
+  private static final int NAMESPACE_EXISTS = 48;
+
+  private final MongoTemplate mongoTemplate;
+  private final ShowCache showCache;
+  private final MeterRegistry meterRegistry;
+  private final boolean enabled;
+  private final long cappedSizeBytes;
+  private final long reconnectMillis;
+  private final String origin = UUID.randomUUID().toString();
+
+  private volatile boolean running;
+
+  public ShowInvalidationBus(MongoTemplate mongoTemplate, ShowCache showCache, MeterRegistry meterRegistry,
+                             @Value("${show.invalidation-bus.enabled:true}") boolean enabled,
+                             @Value("${show.invalidation-bus.capped-size-bytes:8388608}") long cappedSizeBytes,
+                             @Value("${show.invalidation-bus.reconnect-millis:500}") long reconnectMillis) {
+    this.mongoTemplate = mongoTemplate;
+    this.showCache = showCache;
+    this.meterRegistry = meterRegistry;
+    this.enabled = enabled;
+    this.cappedSizeBytes = cappedSizeBytes;
+    this.reconnectMillis = reconnectMillis;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public synchronized void start() {
+    if(!this.enabled || this.running) {
+      return;
+    }
+    this.ensureCappedCollection();
+    this.running = true;
+    Thread tailer = new Thread(this::tail, "show-invalidation-tailer");
+    tailer.setDaemon(true);
+    tailer.start();
+  }
+
+  /**
+   * Stops tailing; the tailer exits after its current await, within a second.
+   */
+  @PreDestroy
+  public synchronized void stop() {
+    this.running = false;
+  }
+
+  @EventListener
+  public void onShowChanged(ShowChangedEvent event) {
+    if(!this.enabled) {
+      return;
+    }
+    try {
+      this.collection().insertOne(new Document()
+              .append("showToken", event.getShowToken())
+              .append("revision", event.getRevision())
+              .append("origin", this.origin)
+              .append("createdDate", new Date()));
+      this.meterRegistry.counter("show.invalidation.published").increment();
+    } catch (Exception e) {
+      // Other replicas fall back to the cache TTL for this show.
+      log.warn("Failed to publish show invalidation for {}: {}", event.getShowToken(), e.getMessage());
+      this.meterRegistry.counter("show.invalidation.publish.failed").increment();
+    }
+  }
+
+  /**
+   * Applies one message read from the collection. Messages this replica published are
+   * ignored; its own cache was invalidated when the write was made.
+   */
+  void receive(Document message) {
+    if(this.origin.equals(message.getString("origin"))) {
+      return;
+    }
+    Number revision = message.get("revision", Number.class);
+    boolean evicted = this.showCache.onRemoteChange(message.getString("showToken"), revision == null ? null : revision.longValue());
+    this.meterRegistry.counter("show.invalidation.received", "outcome", evicted ? "evicted" : "current").increment();
+    Date createdDate = message.getDate("createdDate");
+    if(createdDate != null) {
+      this.meterRegistry.timer("show.invalidation.lag")
+              .record(Math.max(0, System.currentTimeMillis() - createdDate.getTime()), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void tail() {
+    ObjectId lastSeen = this.newestMessageId();
+    while(this.running) {
+      // Resumed by position: a capped collection returns messages in insertion order, but
+      // ObjectIds minted on different replicas are not ordered, so _id > lastSeen could
+      // skip a message. Everything up to the last message seen is read past again.
+      boolean resuming = lastSeen != null;
+      try (MongoCursor<Document> tailing = this.collection()
+              .find()
+              .cursorType(CursorType.TailableAwait)
+              .maxAwaitTime(1, TimeUnit.SECONDS)
+              .iterator()) {
+        while(this.running && tailing.getServerCursor() != null) {
+          Document message = tailing.tryNext();
+          if(message == null) {
+            if(resuming) {
+              // The last message seen was overwritten, and maybe messages after it too.
+              log.warn("Show invalidation messages were overwritten while reconnecting, clearing the show cache");
+              this.meterRegistry.counter("show.invalidation.overrun").increment();
+              this.showCache.onRemoteChange(null, null);
+              resuming = false;
+            }
+            continue;
+          }
+          ObjectId id = message.getObjectId("_id");
+          if(resuming) {
+            resuming = !id.equals(lastSeen);
+            continue;
+          }
+          lastSeen = id;
+          this.receive(message);
+        }
+      } catch (Exception e) {
+        if(this.running) {
+          log.warn("Show invalidation cursor failed, reopening: {}", e.getMessage());
+          this.meterRegistry.counter("show.invalidation.reconnects").increment();
+        }
+      }
+      this.pause();
+    }
+  }
+
+  private ObjectId newestMessageId() {
+    Document newest = this.collection().find().sort(new Document("$natural", -1)).limit(1).first();
+    return newest == null ? null : newest.getObjectId("_id");
+  }
+
+  private void ensureCappedCollection() {
+    if(this.mongoTemplate.collectionExists(COLLECTION)) {
+      return;
+    }
+    try {
+      this.mongoTemplate.createCollection(COLLECTION, CollectionOptions.empty().capped().size(this.cappedSizeBytes));
+    } catch (MongoCommandException e) {
+      // Another replica created it first.
+      if(e.getErrorCode() != NAMESPACE_EXISTS) {
+        throw e;
+      }
+    }
+  }
+
+  private void pause() {
+    try {
+      Thread.sleep(this.reconnectMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      this.running = false;
+    }
+  }
+
+  private MongoCollection<Document> collection() {
+    return this.mongoTemplate.getCollection(COLLECTION);
+  }
+}
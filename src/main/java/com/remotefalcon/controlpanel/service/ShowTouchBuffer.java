@@ -0,0 +1,224 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.remotefalcon.controlpanel.repository.ShowRepositoryCustom;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.Stat;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind buffer for "touch" updates that reads would otherwise each pay a write
+ * for: {@code lastLoginDate}, the sign-in metadata, and defaulting
+ * {@code psaSequences.lastPlayed} and, on sign-in, a missing {@code stats}.
+ *
+ * <p>Touches are coalesced per show in memory and written by {@link #flush()}, which the
+ * scheduler calls every {@code show.touch-buffer.flush-interval-millis}, as one unordered
+ * bulk write of {@code $max}/{@code $set} updates. Dates use {@code $max} so a late
+ * flush never moves them backwards. The buffer is flushed on shutdown; a crash loses at
+ * most one interval of touches. With {@code show.touch-buffer.enabled=false} every touch
+ * is written straight away.
+ */
+@Service
+@Slf4j
+public class ShowTouchBuffer {
+  private final MongoTemplate mongoTemplate;
+  private final MeterRegistry meterRegistry;
+  private final boolean enabled;
+  private final Map<String, Touch> pending = new ConcurrentHashMap<>();
+
+  public ShowTouchBuffer(MongoTemplate mongoTemplate, MeterRegistry meterRegistry,
+                         @Value("${show.touch-buffer.enabled:true}") boolean enabled) {
+    this.mongoTemplate = mongoTemplate;
+    this.meterRegistry = meterRegistry;
+    this.enabled = enabled;
+    meterRegistry.gaugeMapSize("show.touch.pending", List.of(), this.pending);
+  }
+
+  public void touchLastLogin(String showToken, LocalDateTime lastLoginDate) {
+    this.record(showToken, touch -> touch.lastLoginDate = max(touch.lastLoginDate, lastLoginDate));
+  }
+
+  /**
+   * Records a sign-in, and gives the show empty {@code stats} if it has none, which shows
+   * created before stats were kept may still lack.
+   */
+  public void touchSignIn(String showToken, LocalDateTime lastLoginDate, LocalDateTime expireDate, String lastLoginIp) {
+    this.record(showToken, touch -> {
+      touch.lastLoginDate = max(touch.lastLoginDate, lastLoginDate);
+      touch.expireDate = max(touch.expireDate, expireDate);
+      touch.lastLoginIp = lastLoginIp;
+      touch.defaultStats = true;
+    });
+  }
+
+  /**
+   * Gives every PSA sequence of the show that has never played a {@code lastPlayed} of
+   * {@code lastPlayed}. Only call this for a show whose {@code psaSequences} array exists.
+   */
+  public void touchPsaLastPlayed(String showToken, LocalDateTime lastPlayed) {
+    this.record(showToken, touch -> {
+      if(touch.psaLastPlayed == null) {
+        touch.psaLastPlayed = lastPlayed;
+      }
+    });
+  }
+
+  /**
+   * Writes every pending touch. Touches whose write fails are put back for the next
+   * flush; when the bulk write reports which updates failed, only those are.
+   */
+  public void flush() {
+    Map<String, Touch> batch = new LinkedHashMap<>();
+    for(String showToken : this.pending.keySet()) {
+      Touch touch = this.pending.remove(showToken);
+      if(touch != null) {
+        batch.put(showToken, touch);
+      }
+    }
+    if(batch.isEmpty()) {
+      return;
+    }
+    Timer.Sample sample = Timer.start(this.meterRegistry);
+    List<String> showTokens = new ArrayList<>();
+    try {
+      this.write(batch, showTokens);
+      this.meterRegistry.counter("show.touch.flushed").increment(batch.size());
+    } catch (BulkOperationException e) {
+      // Unordered, so every update without a write error was applied. A write concern
+      // error names no update, and then the whole batch is retried.
+      Map<String, Touch> failed = new HashMap<>();
+      for(BulkWriteError error : e.getErrors()) {
+        String showToken = showTokens.get(error.getIndex());
+        failed.put(showToken, batch.get(showToken));
+      }
+      if(failed.isEmpty()) {
+        failed = batch;
+      }
+      this.meterRegistry.counter("show.touch.flushed").increment(batch.size() - failed.size());
+      this.requeue(failed, e);
+    } catch (Exception e) {
+      this.requeue(batch, e);
+    } finally {
+      sample.stop(this.meterRegistry.timer("show.touch.flush"));
+    }
+  }
+
+  @PreDestroy
+  public void flushOnShutdown() {
+    this.flush();
+  }
+
+  private void requeue(Map<String, Touch> failed, Exception e) {
+    log.warn("Failed to flush {} show touches, retrying next flush: {}", failed.size(), e.getMessage());
+    this.meterRegistry.counter("show.touch.failed").increment(failed.size());
+    failed.forEach((showToken, touch) -> this.pending.merge(showToken, touch, Touch::merge));
+  }
+
+  private void record(String showToken, Consumer<Touch> change) {
+    this.meterRegistry.counter("show.touch.recorded").increment();
+    if(!this.enabled) {
+      Touch touch = new Touch();
+      change.accept(touch);
+      this.write(Map.of(showToken, touch), new ArrayList<>());
+      return;
+    }
+    this.pending.compute(showToken, (key, touch) -> {
+      if(touch == null) {
+        touch = new Touch();
+      }else {
+        this.meterRegistry.counter("show.touch.coalesced").increment();
+      }
+      change.accept(touch);
+      return touch;
+    });
+  }
+
+  // Adds to showTokens the show each update in the bulk write is for, in order, so a
+  // write error's index can be traced back to its touch.
+  private void write(Map<String, Touch> touches, List<String> showTokens) {
+    BulkOperations bulkOperations = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Show.class);
+    touches.forEach((showToken, touch) -> {
+      bulkOperations.updateOne(Query.query(Criteria.where("showToken").is(showToken)), touch.toUpdate());
+      showTokens.add(showToken);
+      if(touch.defaultStats) {
+        bulkOperations.updateOne(Query.query(Criteria.where("showToken").is(showToken).and("stats").is(null)), new Update()
+                .set("stats", Stat.builder()
+                        .jukebox(new ArrayList<>())
+                        .page(new ArrayList<>())
+                        .voting(new ArrayList<>())
+                        .votingWin(new ArrayList<>())
+                        .build())
+                .inc(ShowRepositoryCustom.REVISION_FIELD, 1));
+        showTokens.add(showToken);
+      }
+    });
+    bulkOperations.execute();
+  }
+
+  private static LocalDateTime max(LocalDateTime current, LocalDateTime candidate) {
+    if(current == null) {
+      return candidate;
+    }
+    return candidate != null && candidate.isAfter(current) ? candidate : current;
+  }
+
+  private static final class Touch {
+    private LocalDateTime lastLoginDate;
+    private LocalDateTime expireDate;
+    private String lastLoginIp;
+    private LocalDateTime psaLastPlayed;
+    private boolean defaultStats;
+
+    // Folds a touch that failed to flush into one recorded since; the newer IP wins.
+    private static Touch merge(Touch recorded, Touch failed) {
+      recorded.lastLoginDate = max(recorded.lastLoginDate, failed.lastLoginDate);
+      recorded.expireDate = max(recorded.expireDate, failed.expireDate);
+      if(recorded.lastLoginIp == null) {
+        recorded.lastLoginIp = failed.lastLoginIp;
+      }
+      if(failed.psaLastPlayed != null) {
+        recorded.psaLastPlayed = failed.psaLastPlayed;
+      }
+      recorded.defaultStats |= failed.defaultStats;
+      return recorded;
+    }
+
+    private Update toUpdate() {
+      Update update = new Update();
+      if(this.lastLoginDate != null) {
+        update.max("lastLoginDate", this.lastLoginDate);
+      }
+      if(this.expireDate != null) {
+        update.max("expireDate", this.expireDate);
+      }
+      if(this.lastLoginIp != null) {
+        update.set("lastLoginIp", this.lastLoginIp);
+      }
+      if(this.psaLastPlayed != null) {
+        update.set("psaSequences.$[psa].lastPlayed", this.psaLastPlayed)
+                .filterArray(Criteria.where("psa.lastPlayed").is(null));
+      }
+      return update.inc(ShowRepositoryCustom.REVISION_FIELD, 1);
+    }
+  }
+}
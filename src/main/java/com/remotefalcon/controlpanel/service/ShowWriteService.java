@@ -0,0 +1,79 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.remotefalcon.controlpanel.repository.ShowRepository;
+import com.remotefalcon.controlpanel.repository.VersionedShow;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.enums.StatusResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.UnaryOperator;
+
+/**
+ * Whole-document {@link Show} writes as compare-and-set on the document's revision.
+ *
+ * <p>{@link #modify} reads the show, applies the change and replaces the document only if
+ * nothing else wrote it in between. On a conflict it re-reads and re-applies the change,
+ * up to {@code show.write.max-attempts} times, so the change function must be safe to run
+ * more than once. Every conflict is counted in {@code show.write.conflicts}.
+ *
+ * <p>The viewer API and the FPP plugin do not bump the revision, so their writes are not seen as conflicts;
+ * instead the fields they own ({@link com.remotefalcon.controlpanel.repository.ShowRepositoryCustom#VIEWER_WRITTEN_FIELDS})
+ * are never replaced here, and changes to them made by {@code change} are ignored.
+ */
+@Service
+@Slf4j
+public class ShowWriteService {
+  private final ShowRepository showRepository;
+  private final MeterRegistry meterRegistry;
+  private final int maxAttempts;
+
+  public ShowWriteService(ShowRepository showRepository, MeterRegistry meterRegistry,
+                          @Value("${show.write.max-attempts:5}") int maxAttempts) {
+    this.showRepository = showRepository;
+    this.meterRegistry = meterRegistry;
+    this.maxAttempts = Math.max(1, maxAttempts);
+  }
+
+  /**
+   * Applies {@code change} to the current show and writes the show it returns. Returns
+   * empty if there is no such show and throws {@code UNEXPECTED_ERROR} if every attempt
+   * lost a race.
+   */
+  public Optional<Show> modify(String showToken, String operation, UnaryOperator<Show> change) {
+    for(int attempt = 1; attempt <= this.maxAttempts; attempt++) {
+      Optional<VersionedShow> current = this.showRepository.findVersionedByShowToken(showToken);
+      if(current.isEmpty()) {
+        return Optional.empty();
+      }
+      VersionedShow versionedShow = current.get();
+      versionedShow.setShow(change.apply(versionedShow.getShow()));
+      if(this.showRepository.replaceIfUnchanged(versionedShow)) {
+        return Optional.of(versionedShow.getShow());
+      }
+      boolean exhausted = attempt == this.maxAttempts;
+      this.meterRegistry.counter("show.write.conflicts",
+              "operation", operation, "outcome", exhausted ? "exhausted" : "retried").increment();
+      if(!exhausted) {
+        this.backOff(attempt);
+      }
+    }
+    log.warn("Gave up on {} for show {} after {} conflicting attempts", operation, showToken, this.maxAttempts);
+    throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
+  }
+
+  private void backOff(int attempt) {
+    // Short jittered pause so two writers that collided do not collide again in lockstep.
+    long maxMillis = Math.min(50L, 5L << attempt);
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(1, maxMillis + 1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.remotefalcon.controlpanel.dashboard.ColumnarStats;
+import com.remotefalcon.controlpanel.repository.ShowRepository;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.enums.StatusResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-show cache of {@link ColumnarStats}, so flipping between date ranges on the
+ * dashboard does not reload and re-map the show's stats each time.
+ *
+ * <p>Entries are weighed by their estimated size and evicted least-recently-used once
+ * {@code dashboard.stats-cache.max-bytes} is reached. Writes made here (purges, range
+ * deletes, account deletion) invalidate the show's entry; stats appended by the viewer
+ * API are picked up when the entry expires after {@code dashboard.stats-cache.ttl-seconds}.
+ */
+@Service
+public class StatsColumnCache {
+  private final ShowRepository showRepository;
+  private final boolean enabled;
+  private final Cache<String, ColumnarStats> cache;
+
+  public StatsColumnCache(ShowRepository showRepository, MeterRegistry meterRegistry,
+                          @Value("${dashboard.stats-cache.enabled:true}") boolean enabled,
+                          @Value("${dashboard.stats-cache.max-bytes:268435456}") long maxBytes,
+                          @Value("${dashboard.stats-cache.ttl-seconds:60}") long ttlSeconds) {
+    this.showRepository = showRepository;
+    this.enabled = enabled;
+    this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String showToken, ColumnarStats stats) -> (int) Math.min(Integer.MAX_VALUE, stats.sizeInBytes()))
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+    GuavaCacheMetrics.monitor(meterRegistry, this.cache, "dashboard.statsColumns");
+  }
+
+  public ColumnarStats get(String showToken) {
+    if(!this.enabled) {
+      return this.load(showToken);
+    }
+    try {
+      return this.cache.get(showToken, () -> this.load(showToken));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if(e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new RuntimeException(StatusResponse.UNEXPECTED_ERROR.name());
+    }
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  public void invalidate(String showToken) {
+    this.cache.invalidate(showToken);
+  }
+
+  public void invalidateAll() {
+    this.cache.invalidateAll();
+  }
+
+  private ColumnarStats load(String showToken) {
+    Optional<Show> show = this.showRepository.findStatsOnlyByShowToken(showToken);
+    if(show.isEmpty()) {
+      throw new RuntimeException(StatusResponse.SHOW_NOT_FOUND.name());
+    }
+    return ColumnarStats.of(show.get().getStats());
+  }
+}
@@ -0,0 +1,255 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.remotefalcon.controlpanel.document.StatsRetentionCheckpoint;
+import com.remotefalcon.controlpanel.repository.ShowRepository;
+import com.remotefalcon.library.documents.Show;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Removes stats older than the 18-month retention window with one server-side update
+ * covering all four stats arrays, so no show document is read into the JVM. Used by the
+ * nightly sweep in {@code SERVER_SIDE} and {@code INCREMENTAL} modes and by the
+ * {@code purgeStats} mutation.
+ *
+ * <p>The {@code INCREMENTAL} sweep walks the shows in {@code _id} order, a batch of
+ * {@code stats.retention.batch-size} at a time, and records its position in
+ * {@link StatsRetentionCheckpoint} after every batch, so a sweep cut short by a restart
+ * or a lost lease resumes where it stopped. The checkpoint carries the lease's fencing
+ * token and is only written while no later holder has written it. Batches are paced by
+ * a rate limiter (shows per second) that halves whenever the smoothed latency of the
+ * sweep's own Mongo commands goes above {@code stats.retention.target-latency-millis}
+ * and creeps back up while it stays below, so the sweep yields to show-night traffic
+ * and can run during the day.
+ *
+ * <p>The number of shows modified is counted under {@code stats.retention.modified},
+ * tagged by {@code scope}. The
+ * incremental sweep also publishes {@code stats.retention.sweep.processed},
+ * {@code .total}, {@code .progress}, {@code .rate} (shows/s) and {@code .eta} (seconds).
+ */
+@Service
+@Slf4j
+public class StatsRetentionService {
+  static final long RETENTION_MONTHS = 18;
+  private static final String CHECKPOINT_ID = "stats";
+  private static final double LATENCY_SMOOTHING = 0.3;
+
+  private final ShowRepository showRepository;
+  private final StatsRollupService statsRollupService;
+  private final StatsColumnCache statsColumnCache;
+  private final MongoTemplate mongoTemplate;
+  private final MeterRegistry meterRegistry;
+  private final int batchSize;
+  private final double targetLatencyMillis;
+  private final double minRate;
+  private final double maxRate;
+  private final Duration minInterval;
+  private final RateLimiter rateLimiter;
+
+  private volatile long processed;
+  private volatile long total;
+  private volatile double observedRate;
+  private volatile boolean sweeping;
+  private double smoothedLatencyMillis;
+
+  public StatsRetentionService(ShowRepository showRepository, StatsRollupService statsRollupService,
+                               StatsColumnCache statsColumnCache, MongoTemplate mongoTemplate, MeterRegistry meterRegistry,
+                               @Value("${stats.retention.batch-size:100}") int batchSize,
+                               @Value("${stats.retention.target-latency-millis:50}") double targetLatencyMillis,
+                               @Value("${stats.retention.min-rate:5}") double minRate,
+                               @Value("${stats.retention.max-rate:500}") double maxRate,
+                               @Value("${stats.retention.min-interval-hours:20}") long minIntervalHours) {
+    this.showRepository = showRepository;
+    this.statsRollupService = statsRollupService;
+    this.statsColumnCache = statsColumnCache;
+    this.mongoTemplate = mongoTemplate;
+    this.meterRegistry = meterRegistry;
+    this.batchSize = batchSize;
+    this.targetLatencyMillis = targetLatencyMillis;
+    this.minRate = minRate;
+    this.maxRate = maxRate;
+    this.minInterval = Duration.ofHours(minIntervalHours);
+    this.rateLimiter = RateLimiter.create(maxRate);
+    meterRegistry.gauge("stats.retention.sweep.processed", this, service -> service.processed);
+    meterRegistry.gauge("stats.retention.sweep.total", this, service -> service.total);
+    meterRegistry.gauge("stats.retention.sweep.progress", this, service -> service.total == 0 ? 0 : Math.min(1.0, (double) service.processed / service.total));
+    meterRegistry.gauge("stats.retention.sweep.rate", this, service -> service.sweeping ? service.rateLimiter.getRate() : 0);
+    meterRegistry.gauge("stats.retention.sweep.eta", this, StatsRetentionService::etaSeconds);
+  }
+
+  public long purgeAllShows() {
+    LocalDateTime cutoff = cutoff();
+    Timer.Sample sample = Timer.start(this.meterRegistry);
+    long modified = this.pull(null, cutoff, "all");
+    this.statsRollupService.deleteAllRollupsBefore(cutoff);
+    this.statsColumnCache.invalidateAll();
+    long nanos = sample.stop(this.meterRegistry.timer("stats.retention.sweep"));
+    log.info("Stats retention sweep complete: {} shows modified, {} ms", modified, nanos / 1_000_000);
+    return modified;
+  }
+
+  public long purgeShow(String showToken) {
+    LocalDateTime cutoff = cutoff();
+    long modified = this.pull(showToken, cutoff, "show");
+    if(modified > 0) {
+      this.statsRollupService.deleteRollupsBefore(showToken, cutoff);
+      this.statsColumnCache.invalidate(showToken);
+    }
+    return modified;
+  }
+
+  /**
+   * Runs or resumes the incremental sweep until it completes or {@code lease} is lost.
+   * A sweep that completed less than {@code stats.retention.min-interval-hours} ago is not
+   * started again.
+   */
+  public void sweepIncrementally(JobLeaseService.Lease lease) {
+    StatsRetentionCheckpoint checkpoint = this.mongoTemplate.findById(CHECKPOINT_ID, StatsRetentionCheckpoint.class);
+    LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+    if(checkpoint != null && checkpoint.getCompletedAt() != null) {
+      if(checkpoint.getCompletedAt().isAfter(now.minus(this.minInterval))) {
+        log.info("Stats retention sweep skipped: last completed at {}", checkpoint.getCompletedAt());
+        return;
+      }
+      checkpoint = null;
+    }
+    if(checkpoint == null) {
+      checkpoint = StatsRetentionCheckpoint.builder()
+              .id(CHECKPOINT_ID)
+              .cutoff(cutoff())
+              .total(this.mongoTemplate.estimatedCount(Show.class))
+              .startedAt(now)
+              .build();
+    }else {
+      log.info("Resuming stats retention sweep after show {} ({} of ~{} done)",
+              checkpoint.getLastShowId(), checkpoint.getProcessed(), checkpoint.getTotal());
+    }
+
+    this.processed = checkpoint.getProcessed();
+    this.total = checkpoint.getTotal();
+    this.sweeping = true;
+    long runStartNanos = System.nanoTime();
+    long processedThisRun = 0;
+    try {
+      while(lease.isHeld()) {
+        this.rateLimiter.acquire(this.batchSize);
+        long batchStartNanos = System.nanoTime();
+        List<Document> batch = this.nextBatch(checkpoint.getLastShowId());
+        if(batch.isEmpty()) {
+          this.complete(checkpoint, lease);
+          return;
+        }
+        List<String> showTokens = batch.stream().map(show -> show.getString("showToken")).filter(token -> token != null).toList();
+        if(!showTokens.isEmpty()) {
+          long count = this.showRepository.pullStatsBefore(showTokens, checkpoint.getCutoff());
+          this.meterRegistry.counter("stats.retention.modified", "scope", "batch").increment(count);
+          showTokens.forEach(this.statsColumnCache::invalidate);
+        }
+        long batchNanos = System.nanoTime() - batchStartNanos;
+        this.meterRegistry.timer("stats.retention.batch").record(Duration.ofNanos(batchNanos));
+        this.adaptRate(batchNanos / 1_000_000.0 / 2);
+
+        checkpoint.setLastShowId(batch.get(batch.size() - 1).get("_id").toString());
+        checkpoint.setProcessed(checkpoint.getProcessed() + batch.size());
+        checkpoint.setUpdatedAt(LocalDateTime.now(ZoneOffset.UTC));
+        if(!this.saveCheckpoint(checkpoint, lease)) {
+          return;
+        }
+        processedThisRun += batch.size();
+        this.processed = checkpoint.getProcessed();
+        this.observedRate = processedThisRun / Math.max(1e-3, (System.nanoTime() - runStartNanos) / 1e9);
+      }
+      log.warn("Stats retention sweep paused after show {}: lease lost", checkpoint.getLastShowId());
+    } finally {
+      this.sweeping = false;
+    }
+  }
+
+  public static LocalDateTime cutoff() {
+    return LocalDateTime.now(ZoneOffset.UTC).minusMonths(RETENTION_MONTHS);
+  }
+
+  private List<Document> nextBatch(String lastShowId) {
+    Query query = new Query();
+    if(lastShowId != null) {
+      query.addCriteria(Criteria.where("_id").gt(ObjectId.isValid(lastShowId) ? new ObjectId(lastShowId) : lastShowId));
+    }
+    query.with(Sort.by("_id")).limit(this.batchSize);
+    query.fields().include("showToken");
+    return this.mongoTemplate.find(query, Document.class, this.mongoTemplate.getCollectionName(Show.class));
+  }
+
+  private void complete(StatsRetentionCheckpoint checkpoint, JobLeaseService.Lease lease) {
+    this.statsRollupService.deleteAllRollupsBefore(checkpoint.getCutoff());
+    checkpoint.setCompletedAt(LocalDateTime.now(ZoneOffset.UTC));
+    checkpoint.setUpdatedAt(checkpoint.getCompletedAt());
+    if(!this.saveCheckpoint(checkpoint, lease)) {
+      return;
+    }
+    log.info("Stats retention sweep complete: {} shows since {}, cutoff {}",
+            checkpoint.getProcessed(), checkpoint.getStartedAt(), checkpoint.getCutoff());
+  }
+
+  /**
+   * Writes the checkpoint unless a later holder of the lease already has; returns false,
+   * and the sweep must stop, if one has.
+   */
+  private boolean saveCheckpoint(StatsRetentionCheckpoint checkpoint, JobLeaseService.Lease lease) {
+    checkpoint.setFencingToken(lease.getFencingToken());
+    Query notNewer = Query.query(Criteria.where("_id").is(CHECKPOINT_ID).orOperator(
+            Criteria.where("fencingToken").lte(lease.getFencingToken()),
+            Criteria.where("fencingToken").exists(false)));
+    try {
+      this.mongoTemplate.findAndReplace(notNewer, checkpoint, FindAndReplaceOptions.options().upsert());
+      return true;
+    } catch (DuplicateKeyException e) {
+      // The filter missed because a newer token is stored, and the upsert hit its _id.
+      log.warn("Stats retention sweep stopped: checkpoint was written under a newer lease than {}", lease.getFencingToken());
+      this.meterRegistry.counter("stats.retention.sweep.fenced").increment();
+      return false;
+    }
+  }
+
+  // Multiplicative decrease above the target latency, additive increase below it.
+  private void adaptRate(double latencyMillis) {
+    this.smoothedLatencyMillis = this.smoothedLatencyMillis == 0 ? latencyMillis
+            : LATENCY_SMOOTHING * latencyMillis + (1 - LATENCY_SMOOTHING) * this.smoothedLatencyMillis;
+    double rate = this.rateLimiter.getRate();
+    if(this.smoothedLatencyMillis > this.targetLatencyMillis) {
+      rate = Math.max(this.minRate, rate / 2);
+    }else {
+      rate = Math.min(this.maxRate, rate + this.minRate);
+    }
+    this.rateLimiter.setRate(rate);
+  }
+
+  private double etaSeconds() {
+    if(!this.sweeping || this.observedRate <= 0) {
+      return 0;
+    }
+    return Math.max(0, this.total - this.processed) / this.observedRate;
+  }
+
+  private long pull(String showToken, LocalDateTime cutoff, String scope) {
+    long modified = this.showRepository.pullStatsBefore(showToken, cutoff);
+    this.meterRegistry.counter("stats.retention.modified", "scope", scope).increment(modified);
+    return modified;
+  }
+}
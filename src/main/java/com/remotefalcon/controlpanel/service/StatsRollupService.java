@@ -0,0 +1,415 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.remotefalcon.controlpanel.dashboard.DashboardStatsAccumulator;
+import com.remotefalcon.controlpanel.document.StatsRollup;
+import com.remotefalcon.controlpanel.document.StatsRollupWatermark;
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.controlpanel.repository.ShowRepository;
+import com.remotefalcon.controlpanel.repository.StatsRollupRepository;
+import com.remotefalcon.controlpanel.response.dashboard.DashboardStatsResponse;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.Stat;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.BooleanOperators;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Maintains the {@code statsRollup} collection: hourly, per-sequence counts of the
+ * embedded {@code Show.stats} arrays, so the dashboard can be answered from
+ * O(days x sequences) buckets instead of every raw event.
+ *
+ * <p>The rollup is incremental and runs on one replica at a time, under the
+ * {@value #LEASE} job lease. A single watermark records how far stats have been counted;
+ * each run pulls, for the shows with stats between the watermark and "now", the stats
+ * from the start of the watermark's hour with {@code $filter}, recounts those whole hours
+ * and {@code $set}s their buckets. Recounting rather than {@code $inc}-ing makes a window
+ * safe to process twice, so the watermark is only moved once the window has been
+ * written: a run that dies part-way is simply repeated.
+ *
+ * <p>Ranges to re-derive (after stats were deleted from a show, or when a show's rollup
+ * failed) are queued on the watermark document and rebuilt under the same lease, so they
+ * never interleave with a window in flight. A backfill rebuilds everything from the
+ * embedded arrays.
+ */
+@Service
+@Slf4j
+public class StatsRollupService {
+  public static final String LEASE = "statsRollup";
+  public static final Duration LEASE_TTL = Duration.ofMinutes(2);
+  private static final String WATERMARK_ID = "stats";
+  // The viewer API stamps stats with the current time; stay a minute behind so writes
+  // that are still in flight fall into the next window rather than being skipped.
+  private static final long ROLLUP_LAG_MINUTES = 1;
+  // Lower bound of a range covering all of a show's stats.
+  private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+  private final MongoTemplate mongoTemplate;
+  private final StatsRollupRepository statsRollupRepository;
+  private final ShowRepository showRepository;
+  private final JobLeaseService jobLeaseService;
+
+  public StatsRollupService(MongoTemplate mongoTemplate, StatsRollupRepository statsRollupRepository,
+                            ShowRepository showRepository, JobLeaseService jobLeaseService) {
+    this.mongoTemplate = mongoTemplate;
+    this.statsRollupRepository = statsRollupRepository;
+    this.showRepository = showRepository;
+    this.jobLeaseService = jobLeaseService;
+  }
+
+  /**
+   * Builds the dashboard sections from rollup buckets. Buckets are whole UTC hours, so
+   * the hour containing the window start is counted in full.
+   */
+  public DashboardStatsResponse dashboardStats(String showToken, DashboardStatsAccumulator accumulator) {
+    List<StatsRollup> buckets = this.statsRollupRepository.findByShowTokenAndTypeInAndBucketGreaterThanEqualAndBucketLessThan(
+            showToken, accumulator.getStatTypes(), accumulator.getStartUtc().truncatedTo(ChronoUnit.HOURS), accumulator.getEndUtc());
+    for(StatsRollup bucket : buckets) {
+      long epochSecond = bucket.getBucket().toEpochSecond(ZoneOffset.UTC);
+      int total = bucket.getTotal() != null ? bucket.getTotal() : 0;
+      if(bucket.getType() == StatType.PAGE) {
+        accumulator.addPage(epochSecond, total, bucket.getViewerIps());
+      }else {
+        accumulator.addSequence(bucket.getType(), epochSecond, bucket.getName(), total);
+      }
+    }
+    return accumulator.toResponse();
+  }
+
+  /**
+   * Rebuilds the queued ranges, then rolls up every stat recorded since the last run.
+   * Falls back to a full backfill the first time, when no watermark exists yet. Stops,
+   * leaving the watermark where it was, once {@code lease} is lost.
+   */
+  public void rollupNewStats(JobLeaseService.Lease lease) {
+    StatsRollupWatermark watermark = this.currentWatermark();
+    if(watermark == null || watermark.getRolledUpTo() == null) {
+      log.info("No stats rollup watermark found, running full backfill");
+      this.rebuildAllShows(lease);
+      return;
+    }
+    this.rebuildPendingRanges(lease, watermark);
+    LocalDateTime rolledUpTo = watermark.getRolledUpTo();
+    LocalDateTime rollupTo = this.rollupCutoff();
+    if(!rollupTo.isAfter(rolledUpTo)) {
+      return;
+    }
+
+    // Whole hours are recounted, from the start of the one the watermark is in.
+    LocalDateTime recountAfter = rolledUpTo.truncatedTo(ChronoUnit.HOURS).minus(1, ChronoUnit.MILLIS);
+    int shows = 0;
+    int failed = 0;
+    long startMillis = System.currentTimeMillis();
+    try (Stream<Show> slices = this.mongoTemplate.aggregateStream(
+            statsWindowAggregation(rolledUpTo, recountAfter, rollupTo), Show.class)) {
+      Iterator<Show> it = slices.iterator();
+      while (it.hasNext()) {
+        if(!lease.isHeld()) {
+          log.warn("Stats rollup stopped after {} shows: lease lost, window after {} will be repeated", shows, rolledUpTo);
+          return;
+        }
+        Show show = it.next();
+        try {
+          this.rollupShow(show, recountAfter, rollupTo);
+          shows++;
+        } catch (Exception e) {
+          log.warn("Stats rollup failed for show {}, queued for rebuild: {}", show.getShowToken(), e.getMessage());
+          this.queue(show.getShowToken(), recountAfter.plus(1, ChronoUnit.MILLIS), rollupTo);
+          failed++;
+        }
+      }
+    }
+    if(!this.advanceWatermark(rolledUpTo, rollupTo)) {
+      log.warn("Stats rollup watermark moved from {} during the run; not advancing it", rolledUpTo);
+      return;
+    }
+    log.info("Stats rollup complete: {} shows updated, {} queued for rebuild, up to {}, {} ms",
+            shows, failed, rollupTo, System.currentTimeMillis() - startMillis);
+  }
+
+  /**
+   * Discards all rollups and rebuilds them from the embedded stats arrays, unless the
+   * rollup job is running on some replica right now.
+   */
+  @Async
+  public void backfillAllShows() {
+    if(!this.jobLeaseService.runExclusively(LEASE, LEASE_TTL, Duration.ZERO, this::rebuildAllShows)) {
+      log.info("Stats rollup backfill not started: the rollup job is running on another replica");
+    }
+  }
+
+  /**
+   * Re-derives a show's buckets for the hours from {@code from} through {@code to}, after
+   * stats inside that range were removed. The range is queued first and rebuilt straight
+   * away when the rollup lease is free, or by the next rollup run otherwise, so it never
+   * races a window being rolled up.
+   */
+  public void rebuildShowRange(String showToken, LocalDateTime from, LocalDateTime to) {
+    this.queue(showToken, from, to);
+    boolean ran = this.jobLeaseService.runExclusively(LEASE, LEASE_TTL, Duration.ZERO,
+            lease -> this.rebuildPendingRanges(lease, this.currentWatermark()));
+    if(!ran) {
+      log.info("Stats rollup rebuild for show {} queued for the next rollup run", showToken);
+    }
+  }
+
+  /**
+   * Drops the buckets that lie entirely before {@code dateTime}.
+   */
+  public void deleteRollupsBefore(String showToken, LocalDateTime dateTime) {
+    this.statsRollupRepository.deleteByShowTokenAndBucketLessThan(showToken, dateTime.truncatedTo(ChronoUnit.HOURS));
+  }
+
+  /**
+   * Drops every show's buckets that lie entirely before {@code dateTime}.
+   */
+  public void deleteAllRollupsBefore(LocalDateTime dateTime) {
+    this.statsRollupRepository.deleteByBucketLessThan(dateTime.truncatedTo(ChronoUnit.HOURS));
+  }
+
+  public void deleteRollups(String showToken) {
+    this.statsRollupRepository.deleteByShowToken(showToken);
+  }
+
+  private void rebuildAllShows(JobLeaseService.Lease lease) {
+    LocalDateTime rollupTo = this.rollupCutoff();
+    // Ranges queued so far are covered by the rebuild; ones queued while it runs are not.
+    StatsRollupWatermark watermark = this.currentWatermark();
+    List<StatsRollupWatermark.PendingRange> covered = watermark != null && watermark.getPendingRanges() != null
+            ? watermark.getPendingRanges() : List.of();
+    this.statsRollupRepository.deleteAll();
+
+    int shows = 0;
+    long startMillis = System.currentTimeMillis();
+    Query query = new Query();
+    query.fields().include("showToken").include("stats");
+    try (Stream<Show> stream = this.mongoTemplate.stream(query, Show.class)) {
+      Iterator<Show> it = stream.iterator();
+      while (it.hasNext()) {
+        if(!lease.isHeld()) {
+          log.warn("Stats rollup backfill stopped after {} shows: lease lost, it will start over", shows);
+          return;
+        }
+        Show show = it.next();
+        try {
+          this.rollupShow(show, null, rollupTo);
+          shows++;
+        } catch (Exception e) {
+          log.warn("Stats rollup backfill failed for show {}, queued for rebuild: {}", show.getShowToken(), e.getMessage());
+          this.queue(show.getShowToken(), BEGINNING, rollupTo);
+        }
+      }
+    }
+    Update update = Update.update("rolledUpTo", rollupTo);
+    if(!covered.isEmpty()) {
+      update.pull("pendingRanges", new Document("rangeId", new Document("$in",
+              covered.stream().map(StatsRollupWatermark.PendingRange::getRangeId).toList())));
+    }
+    this.mongoTemplate.upsert(Query.query(Criteria.where("_id").is(WATERMARK_ID)), update, StatsRollupWatermark.class);
+    log.info("Stats rollup backfill complete: {} shows up to {}, {} ms",
+            shows, rollupTo, System.currentTimeMillis() - startMillis);
+  }
+
+  private void rebuildPendingRanges(JobLeaseService.Lease lease, StatsRollupWatermark watermark) {
+    if(watermark == null || watermark.getPendingRanges() == null) {
+      return;
+    }
+    for(StatsRollupWatermark.PendingRange range : watermark.getPendingRanges()) {
+      if(!lease.isHeld()) {
+        return;
+      }
+      try {
+        this.rebuildRange(range, watermark.getRolledUpTo());
+        this.mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(WATERMARK_ID)),
+                new Update().pull("pendingRanges", new Document("rangeId", range.getRangeId())),
+                StatsRollupWatermark.class);
+      } catch (Exception e) {
+        log.warn("Stats rollup rebuild failed for show {}, will retry: {}", range.getShowToken(), e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Deletes the range's buckets and recounts them from the show's stats up to
+   * {@code rolledUpTo}. Only the stats of those hours are read.
+   */
+  private void rebuildRange(StatsRollupWatermark.PendingRange range, LocalDateTime rolledUpTo) {
+    LocalDateTime firstBucket = range.getFrom().truncatedTo(ChronoUnit.HOURS);
+    LocalDateTime bucketsEnd = range.getTo().truncatedTo(ChronoUnit.HOURS).plusHours(1);
+    this.statsRollupRepository.deleteByShowTokenAndBucketGreaterThanEqualAndBucketLessThan(range.getShowToken(), firstBucket, bucketsEnd);
+    if(rolledUpTo == null || rolledUpTo.isBefore(firstBucket)) {
+      return;
+    }
+    // Stats carry millisecond precision, so this is the last instant before bucketsEnd.
+    LocalDateTime upTo = bucketsEnd.minus(1, ChronoUnit.MILLIS);
+    if(upTo.isAfter(rolledUpTo)) {
+      upTo = rolledUpTo;
+    }
+    LocalDateTime after = firstBucket.minus(1, ChronoUnit.MILLIS);
+    Show window = this.showRepository.findStatsByShowToken(range.getShowToken(), after, upTo.plus(1, ChronoUnit.MILLIS));
+    if(window != null) {
+      this.rollupShow(window, after, upTo);
+    }
+  }
+
+  private void queue(String showToken, LocalDateTime from, LocalDateTime to) {
+    StatsRollupWatermark.PendingRange range = StatsRollupWatermark.PendingRange.builder()
+            .rangeId(UUID.randomUUID().toString())
+            .showToken(showToken)
+            .from(from)
+            .to(to)
+            .build();
+    this.mongoTemplate.upsert(Query.query(Criteria.where("_id").is(WATERMARK_ID)),
+            new Update().push("pendingRanges", range), StatsRollupWatermark.class);
+  }
+
+  /**
+   * Counts the show's stats in ({@code after}, {@code upTo}] into hourly buckets and
+   * {@code $set}s them. {@code after} must be just before an hour boundary (or null for
+   * all stats), so every bucket written is a complete count of its hour up to
+   * {@code upTo} and writing it again changes nothing.
+   */
+  private void rollupShow(Show show, LocalDateTime after, LocalDateTime upTo) {
+    Stat stats = show.getStats();
+    if(stats == null) {
+      return;
+    }
+    Map<BucketKey, BucketCounts> buckets = new HashMap<>();
+    this.collect(buckets, StatType.PAGE, stats.getPage(), Stat.Page::getDateTime, page -> null, Stat.Page::getIp, after, upTo);
+    this.collect(buckets, StatType.JUKEBOX, stats.getJukebox(), Stat.Jukebox::getDateTime, Stat.Jukebox::getName, jukebox -> null, after, upTo);
+    this.collect(buckets, StatType.VOTING, stats.getVoting(), Stat.Voting::getDateTime, Stat.Voting::getName, voting -> null, after, upTo);
+    this.collect(buckets, StatType.VOTING_WIN, stats.getVotingWin(), Stat.VotingWin::getDateTime, Stat.VotingWin::getName, votingWin -> null, after, upTo);
+    if(buckets.isEmpty()) {
+      return;
+    }
+
+    BulkOperations bulkOperations = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StatsRollup.class);
+    buckets.forEach((key, counts) -> {
+      Query query = Query.query(Criteria.where("showToken").is(show.getShowToken())
+              .and("bucket").is(key.bucket())
+              .and("type").is(key.type())
+              .and("name").is(key.name()));
+      Update update = new Update().set("total", counts.total);
+      if(counts.viewerIps != null) {
+        update.set("viewerIps", counts.viewerIps);
+      }
+      bulkOperations.upsert(query, update);
+    });
+    bulkOperations.execute();
+  }
+
+  private <T> void collect(Map<BucketKey, BucketCounts> buckets, StatType type, List<T> stats,
+                           Function<T, LocalDateTime> dateTime, Function<T, String> name, Function<T, String> ip,
+                           LocalDateTime after, LocalDateTime upTo) {
+    if(stats == null) {
+      return;
+    }
+    for(T stat : stats) {
+      LocalDateTime statDateTime = dateTime.apply(stat);
+      if(statDateTime == null || (after != null && !statDateTime.isAfter(after)) || statDateTime.isAfter(upTo)) {
+        continue;
+      }
+      String viewerIp = ip.apply(stat);
+      // The dashboard ignores page hits without an IP, so they are not rolled up either.
+      if(type == StatType.PAGE && viewerIp == null) {
+        continue;
+      }
+      BucketCounts counts = buckets.computeIfAbsent(
+              new BucketKey(type, statDateTime.truncatedTo(ChronoUnit.HOURS), name.apply(stat)),
+              key -> new BucketCounts());
+      counts.total++;
+      if(viewerIp != null) {
+        if(counts.viewerIps == null) {
+          counts.viewerIps = new HashSet<>();
+        }
+        counts.viewerIps.add(viewerIp);
+      }
+    }
+  }
+
+  /**
+   * Projects each show down to its token and the stats that fall inside
+   * ({@code after}, {@code upTo}], skipping shows with nothing new.
+   */
+  static TypedAggregation<Show> statsWindowAggregation(LocalDateTime after, LocalDateTime upTo) {
+    return statsWindowAggregation(after, after, upTo);
+  }
+
+  /**
+   * Like {@link #statsWindowAggregation(LocalDateTime, LocalDateTime)}, but projects the
+   * stats in ({@code projectAfter}, {@code upTo}] of the shows that have any in
+   * ({@code after}, {@code upTo}].
+   */
+  static TypedAggregation<Show> statsWindowAggregation(LocalDateTime after, LocalDateTime projectAfter, LocalDateTime upTo) {
+    Date afterDate = toDate(projectAfter);
+    Date upToDate = toDate(upTo);
+    Criteria hasNewStats = new Criteria().orOperator(
+            Criteria.where("stats.page").elemMatch(Criteria.where("dateTime").gt(after).lte(upTo)),
+            Criteria.where("stats.jukebox").elemMatch(Criteria.where("dateTime").gt(after).lte(upTo)),
+            Criteria.where("stats.voting").elemMatch(Criteria.where("dateTime").gt(after).lte(upTo)),
+            Criteria.where("stats.votingWin").elemMatch(Criteria.where("dateTime").gt(after).lte(upTo)));
+    return Aggregation.newAggregation(Show.class,
+            Aggregation.match(hasNewStats),
+            Aggregation.project("showToken")
+                    .and(windowFilter("stats.page", afterDate, upToDate)).as("stats.page")
+                    .and(windowFilter("stats.jukebox", afterDate, upToDate)).as("stats.jukebox")
+                    .and(windowFilter("stats.voting", afterDate, upToDate)).as("stats.voting")
+                    .and(windowFilter("stats.votingWin", afterDate, upToDate)).as("stats.votingWin"));
+  }
+
+  private static ArrayOperators.Filter windowFilter(String field, Date after, Date upTo) {
+    return ArrayOperators.Filter.filter(field).as("stat").by(BooleanOperators.And.and(
+            ComparisonOperators.Gt.valueOf("stat.dateTime").greaterThanValue(after),
+            ComparisonOperators.Lte.valueOf("stat.dateTime").lessThanEqualToValue(upTo)));
+  }
+
+  // Spring stores LocalDateTime as a Date in the JVM default zone; aggregation
+  // expressions are not run through the converters, so do the same by hand.
+  private static Date toDate(LocalDateTime dateTime) {
+    return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+  }
+
+  private StatsRollupWatermark currentWatermark() {
+    return this.mongoTemplate.findById(WATERMARK_ID, StatsRollupWatermark.class);
+  }
+
+  private boolean advanceWatermark(LocalDateTime rolledUpTo, LocalDateTime rollupTo) {
+    UpdateResult result = this.mongoTemplate.updateFirst(
+            Query.query(Criteria.where("_id").is(WATERMARK_ID).and("rolledUpTo").is(rolledUpTo)),
+            Update.update("rolledUpTo", rollupTo),
+            StatsRollupWatermark.class);
+    return result.getModifiedCount() == 1;
+  }
+
+  private LocalDateTime rollupCutoff() {
+    return LocalDateTime.now(ZoneOffset.UTC).minusMinutes(ROLLUP_LAG_MINUTES).truncatedTo(ChronoUnit.SECONDS);
+  }
+
+  private record BucketKey(StatType type, LocalDateTime bucket, String name) {
+  }
+
+  private static final class BucketCounts {
+    private int total;
+    private Set<String> viewerIps;
+  }
+}
@@ -0,0 +1,481 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.google.common.collect.Lists;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.TimeSeriesGranularity;
+import com.mongodb.client.model.TimeSeriesOptions;
+import com.mongodb.client.result.UpdateResult;
+import com.remotefalcon.controlpanel.document.StatsEvent;
+import com.remotefalcon.controlpanel.document.StatsTimeSeriesState;
+import com.remotefalcon.controlpanel.enums.DashboardStatsSource;
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.controlpanel.repository.DashboardStatsBuckets;
+import com.remotefalcon.controlpanel.repository.ShowRepository;
+import com.remotefalcon.controlpanel.repository.StatsEventRepository;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.Stat;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a copy of every show's stats as individual events in the {@code statsEvents}
+ * time-series collection, when {@code stats.time-series.enabled} is on, so the stats can
+ * eventually leave the {@code Show} document.
+ *
+ * <p>The viewer API still appends stats to the embedded arrays, so the copy is a
+ * dual-write one step removed: {@link #copyNewStats} copies the window between
+ * {@link StatsTimeSeriesState#getCopiedTo} and "now" on one replica, like the rollup job,
+ * and only then moves the watermark. A show whose copy failed is queued with the
+ * watermark move and copied again by the next run; a run that stopped before moving it
+ * is repeated, after dropping the events it left past the watermark.
+ * {@link #migrateAllShows} copies each show's older history once, resuming after the
+ * last show it finished. The two never overlap: the migration takes everything up to the
+ * watermark it seeded, the window copy everything after.
+ *
+ * <p>Mongo expires events {@code stats.time-series.expire-after-days} after their
+ * {@code dateTime}, so the time series needs no sweep. Once the migration has completed,
+ * the dashboard can read from it ({@code TIME_SERIES} source). The nightly retention
+ * job, in {@code TIME_SERIES} mode, then only trims the embedded arrays down to their
+ * last {@code stats.time-series.embedded-days}, which keeps the show document at a
+ * constant size. It refuses to unless {@code dashboard.stats-source} is
+ * {@code TIME_SERIES}; once it has trimmed them, every dashboard source is served from
+ * the time series, since the embedded arrays no longer hold the history. Copies are
+ * counted under {@code stats.timeseries.copied}, tagged by {@code source}.
+ *
+ * <p>Needs MongoDB 7 or later: the copy, the migration and range deletes remove events
+ * by {@code dateTime}, which older servers only allow on the metaField.
+ * {@link #ensureCollection} turns the time series off on an older server.
+ */
+@Service
+@Slf4j
+public class StatsTimeSeriesService {
+  public static final String COPY_LEASE = "statsTimeSeriesCopy";
+  public static final Duration COPY_LEASE_TTL = Duration.ofMinutes(2);
+  private static final String COLLECTION = "statsEvents";
+  private static final String STATE_ID = "stats";
+  // Same lag as the rollup: stats still being written fall into the next window.
+  private static final long COPY_LAG_MINUTES = 1;
+  private static final int INSERT_BATCH_SIZE = 1000;
+  // Namespace already exists: another replica created the collection first.
+  private static final int NAMESPACE_EXISTS = 48;
+  // Deleting time-series events by dateTime, not only by metaField, needs MongoDB 7.
+  private static final int MIN_MONGO_MAJOR_VERSION = 7;
+
+  private final MongoTemplate mongoTemplate;
+  private final StatsEventRepository statsEventRepository;
+  private final ShowRepository showRepository;
+  private final StatsRollupService statsRollupService;
+  private final StatsColumnCache statsColumnCache;
+  private final JobLeaseService jobLeaseService;
+  private final MeterRegistry meterRegistry;
+  private volatile boolean enabled;
+  private final long expireAfterDays;
+  private final TimeSeriesGranularity granularity;
+  private final long embeddedDays;
+  private final DashboardStatsSource dashboardStatsSource;
+
+  private volatile boolean migrated;
+  private volatile boolean embeddedTrimmed;
+
+  public StatsTimeSeriesService(MongoTemplate mongoTemplate, StatsEventRepository statsEventRepository,
+                                ShowRepository showRepository, StatsRollupService statsRollupService,
+                                StatsColumnCache statsColumnCache, JobLeaseService jobLeaseService, MeterRegistry meterRegistry,
+                                @Value("${stats.time-series.enabled:false}") boolean enabled,
+                                @Value("${stats.time-series.expire-after-days:548}") long expireAfterDays,
+                                @Value("${stats.time-series.granularity:HOURS}") TimeSeriesGranularity granularity,
+                                @Value("${stats.time-series.embedded-days:2}") long embeddedDays,
+                                @Value("${dashboard.stats-source:DOCUMENT}") DashboardStatsSource dashboardStatsSource) {
+    this.mongoTemplate = mongoTemplate;
+    this.statsEventRepository = statsEventRepository;
+    this.showRepository = showRepository;
+    this.statsRollupService = statsRollupService;
+    this.statsColumnCache = statsColumnCache;
+    this.jobLeaseService = jobLeaseService;
+    this.meterRegistry = meterRegistry;
+    this.enabled = enabled;
+    this.expireAfterDays = expireAfterDays;
+    this.granularity = granularity;
+    this.embeddedDays = embeddedDays;
+    this.dashboardStatsSource = dashboardStatsSource;
+  }
+
+  /**
+   * Creates {@code statsEvents} as a time-series collection, or brings the expiry of an
+   * existing one in line with {@code stats.time-series.expire-after-days}. Turns the time
+   * series off instead when the server is older than MongoDB 7.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void ensureCollection() {
+    if(!this.enabled) {
+      return;
+    }
+    try {
+      int majorVersion = this.mongoTemplate.executeCommand(new Document("buildInfo", 1))
+              .getList("versionArray", Integer.class).get(0);
+      if(majorVersion < MIN_MONGO_MAJOR_VERSION) {
+        this.enabled = false;
+        log.error("Stats time series disabled: it needs MongoDB {} or later, the server runs {}",
+                MIN_MONGO_MAJOR_VERSION, majorVersion);
+        return;
+      }
+      if(this.mongoTemplate.collectionExists(COLLECTION)) {
+        this.mongoTemplate.executeCommand(new Document("collMod", COLLECTION)
+                .append("expireAfterSeconds", TimeUnit.DAYS.toSeconds(this.expireAfterDays)));
+        return;
+      }
+      this.mongoTemplate.getDb().createCollection(COLLECTION, new CreateCollectionOptions()
+              .timeSeriesOptions(new TimeSeriesOptions("dateTime").metaField("meta").granularity(this.granularity))
+              .expireAfter(this.expireAfterDays, TimeUnit.DAYS));
+      log.info("Created time-series collection {} ({} granularity, expiring after {} days)",
+              COLLECTION, this.granularity, this.expireAfterDays);
+    } catch (MongoCommandException e) {
+      if(e.getErrorCode() != NAMESPACE_EXISTS) {
+        log.error("Failed to ensure time-series collection {}: {}", COLLECTION, e.getMessage(), e);
+      }
+    } catch (Exception e) {
+      log.error("Failed to ensure time-series collection {}: {}", COLLECTION, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Whether the time series holds every show's full history and can serve the dashboard.
+   */
+  public boolean isReadable() {
+    if(!this.enabled) {
+      return false;
+    }
+    if(!this.migrated) {
+      StatsTimeSeriesState state = this.currentState();
+      this.migrated = state != null && state.getMigratedAt() != null;
+    }
+    return this.migrated;
+  }
+
+  /**
+   * Whether the embedded arrays have been trimmed, so only the time series holds every
+   * show's full history.
+   */
+  public boolean isEmbeddedStatsTrimmed() {
+    if(!this.enabled) {
+      return false;
+    }
+    if(!this.embeddedTrimmed) {
+      StatsTimeSeriesState state = this.currentState();
+      this.embeddedTrimmed = state != null && state.getEmbeddedTrimmedAt() != null;
+    }
+    return this.embeddedTrimmed;
+  }
+
+  public DashboardStatsBuckets dashboardStatsBuckets(String showToken, LocalDateTime start, LocalDateTime end,
+                                                     ZoneId userZone, Set<StatType> types) {
+    return this.statsEventRepository.getDashboardStatsBuckets(showToken, start, end, userZone.getId(), types);
+  }
+
+  /**
+   * Copies the stats recorded since the last run, on one replica at a time. Does nothing
+   * until {@link #migrateAllShows} has seeded the watermark.
+   */
+  public void copyNewStats() {
+    if(!this.enabled) {
+      return;
+    }
+    this.jobLeaseService.runExclusively(COPY_LEASE, COPY_LEASE_TTL, Duration.ZERO, this::copyNewStats);
+  }
+
+  void copyNewStats(JobLeaseService.Lease lease) {
+    StatsTimeSeriesState state = this.currentState();
+    if(state == null) {
+      return;
+    }
+    this.copyPendingWindows(lease, state);
+    LocalDateTime copiedTo = state.getCopiedTo();
+    LocalDateTime copyTo = copyCutoff();
+    if(!copyTo.isAfter(copiedTo) || !lease.isHeld()) {
+      return;
+    }
+    // Left by a run that stopped before moving the watermark; the window is copied again.
+    this.mongoTemplate.remove(Query.query(Criteria.where("dateTime").gt(copiedTo)), StatsEvent.class);
+
+    long events = 0;
+    List<StatsTimeSeriesState.PendingWindow> failed = new ArrayList<>();
+    try (Stream<Show> slices = this.mongoTemplate.aggregateStream(StatsRollupService.statsWindowAggregation(copiedTo, copyTo), Show.class)) {
+      Iterator<Show> it = slices.iterator();
+      while (it.hasNext()) {
+        if(!lease.isHeld()) {
+          log.warn("Stats time-series copy stopped: lease lost, window after {} will be repeated", copiedTo);
+          return;
+        }
+        Show show = it.next();
+        try {
+          events += this.copy(show, copiedTo, copyTo);
+        } catch (Exception e) {
+          log.warn("Stats time-series copy failed for show {}, queued for retry: {}", show.getShowToken(), e.getMessage());
+          failed.add(StatsTimeSeriesState.PendingWindow.builder()
+                  .windowId(UUID.randomUUID().toString())
+                  .showToken(show.getShowToken())
+                  .after(copiedTo)
+                  .upTo(copyTo)
+                  .build());
+        }
+      }
+    }
+    this.meterRegistry.counter("stats.timeseries.copied", "source", "window").increment(events);
+    if(!this.advanceWatermark(copiedTo, copyTo, failed)) {
+      log.warn("Stats time-series watermark moved from {} during the run; not advancing it", copiedTo);
+    }
+  }
+
+  /**
+   * Copies every show's stats up to the watermark into the time series, one show at a
+   * time in {@code _id} order, on one replica. Safe to re-run: it resumes after the last
+   * show it finished and returns straight away once the migration has completed.
+   */
+  @Async
+  public void migrateAllShows() {
+    if(!this.enabled) {
+      log.warn("Stats time-series migration skipped: stats.time-series.enabled is off");
+      return;
+    }
+    boolean ran = this.jobLeaseService.runExclusively("statsTimeSeriesMigration", Duration.ofMinutes(2), Duration.ZERO,
+            this::migrate);
+    if(!ran) {
+      log.info("Stats time-series migration already running on another replica");
+    }
+  }
+
+  /**
+   * Trims the embedded stats arrays of every show to the last
+   * {@code stats.time-series.embedded-days}, never past what has been copied, and drops
+   * rollups older than the retention window. Returns false, without touching anything,
+   * until the migration has completed, or when {@code dashboard.stats-source} is not
+   * {@code TIME_SERIES}: the other sources read the embedded arrays.
+   */
+  public boolean trimEmbeddedStats() {
+    StatsTimeSeriesState state = this.currentState();
+    if(!this.enabled || state == null || state.getMigratedAt() == null) {
+      return false;
+    }
+    if(this.dashboardStatsSource != DashboardStatsSource.TIME_SERIES) {
+      log.warn("Embedded stats not trimmed: dashboard.stats-source is {}, which reads them", this.dashboardStatsSource);
+      return false;
+    }
+    LocalDateTime cutoff = LocalDateTime.now(ZoneOffset.UTC).minusDays(this.embeddedDays);
+    if(cutoff.isAfter(state.getCopiedTo())) {
+      cutoff = state.getCopiedTo();
+    }
+    // Windows still to be copied must stay in the show until they are.
+    for(StatsTimeSeriesState.PendingWindow window : Optional.ofNullable(state.getPendingWindows()).orElse(List.of())) {
+      if(cutoff.isAfter(window.getAfter())) {
+        cutoff = window.getAfter();
+      }
+    }
+    if(state.getEmbeddedTrimmedAt() == null) {
+      // Set first, so every replica switches its readers over before anything goes.
+      this.mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(STATE_ID)),
+              Update.update("embeddedTrimmedAt", LocalDateTime.now(ZoneOffset.UTC)), StatsTimeSeriesState.class);
+      this.embeddedTrimmed = true;
+    }
+    long modified = this.showRepository.pullStatsBefore((String) null, cutoff);
+    this.meterRegistry.counter("stats.retention.modified", "scope", "embedded").increment(modified);
+    this.statsRollupService.deleteAllRollupsBefore(StatsRetentionService.cutoff());
+    this.statsColumnCache.invalidateAll();
+    log.info("Embedded stats trimmed to {}: {} shows modified", cutoff, modified);
+    return true;
+  }
+
+  /**
+   * Removes the show's events dated strictly between {@code after} and {@code before}
+   * and returns how many of each type went.
+   */
+  public Map<StatType, Long> deleteBetween(String showToken, LocalDateTime after, LocalDateTime before) {
+    Map<StatType, Long> removed = new EnumMap<>(StatType.class);
+    if(!this.enabled) {
+      return removed;
+    }
+    for(StatType type : StatType.values()) {
+      Query query = Query.query(Criteria.where("meta.showToken").is(showToken)
+              .and("meta.type").is(type)
+              .and("dateTime").gt(after).lt(before));
+      removed.put(type, this.mongoTemplate.remove(query, StatsEvent.class).getDeletedCount());
+    }
+    return removed;
+  }
+
+  public void deleteForShow(String showToken) {
+    if(this.enabled) {
+      this.statsEventRepository.deleteByMetaShowToken(showToken);
+    }
+  }
+
+  private void migrate(JobLeaseService.Lease lease) {
+    StatsTimeSeriesState state = this.startMigration();
+    if(state.getMigratedAt() != null) {
+      log.info("Stats time-series migration already completed at {}", state.getMigratedAt());
+      return;
+    }
+    String resumeAfter = state.getLastShowId();
+    if(resumeAfter != null) {
+      log.info("Resuming stats time-series migration after show {} ({} shows done)", resumeAfter, state.getMigratedShows());
+    }
+    LocalDateTime upTo = state.getMigrateUpTo();
+    Query query = new Query();
+    if(resumeAfter != null) {
+      query.addCriteria(Criteria.where("_id").gt(ObjectId.isValid(resumeAfter) ? new ObjectId(resumeAfter) : resumeAfter));
+    }
+    query.with(Sort.by("_id"));
+    query.fields().include("showToken").include("stats");
+
+    long startMillis = System.currentTimeMillis();
+    boolean first = true;
+    try (Stream<Show> shows = this.mongoTemplate.stream(query, Show.class)) {
+      Iterator<Show> it = shows.iterator();
+      while (it.hasNext()) {
+        if(!lease.isHeld()) {
+          log.warn("Stats time-series migration paused after show {}: lease lost", resumeAfter);
+          return;
+        }
+        Show show = it.next();
+        if(first && resumeAfter != null) {
+          // An interrupted run may have inserted part of this show's history.
+          this.mongoTemplate.remove(Query.query(Criteria.where("meta.showToken").is(show.getShowToken())
+                  .and("dateTime").lte(upTo)), StatsEvent.class);
+        }
+        first = false;
+        long events = this.copy(show, null, upTo);
+        this.meterRegistry.counter("stats.timeseries.copied", "source", "migration").increment(events);
+        this.mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(STATE_ID)), new Update()
+                .set("lastShowId", show.getId())
+                .inc("migratedShows", 1)
+                .inc("migratedEvents", events), StatsTimeSeriesState.class);
+        resumeAfter = show.getId();
+      }
+    }
+    this.mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(STATE_ID)),
+            Update.update("migratedAt", LocalDateTime.now(ZoneOffset.UTC)), StatsTimeSeriesState.class);
+    StatsTimeSeriesState completed = this.currentState();
+    log.info("Stats time-series migration complete: {} shows, {} events up to {}, {} ms in this run",
+            completed.getMigratedShows(), completed.getMigratedEvents(), upTo, System.currentTimeMillis() - startMillis);
+  }
+
+  // Seeds the watermark on the first run, so the window copy starts where the
+  // migration stops.
+  private StatsTimeSeriesState startMigration() {
+    LocalDateTime upTo = copyCutoff();
+    try {
+      return this.mongoTemplate.insert(StatsTimeSeriesState.builder()
+              .id(STATE_ID)
+              .copiedTo(upTo)
+              .migrateUpTo(upTo)
+              .startedAt(LocalDateTime.now(ZoneOffset.UTC))
+              .build());
+    } catch (DuplicateKeyException e) {
+      return this.currentState();
+    }
+  }
+
+  private long copy(Show show, LocalDateTime after, LocalDateTime upTo) {
+    Stat stats = show.getStats();
+    if(stats == null) {
+      return 0;
+    }
+    List<StatsEvent> events = new ArrayList<>();
+    collect(events, show.getShowToken(), StatType.PAGE, stats.getPage(), Stat.Page::getDateTime, page -> null, Stat.Page::getIp, after, upTo);
+    collect(events, show.getShowToken(), StatType.JUKEBOX, stats.getJukebox(), Stat.Jukebox::getDateTime, Stat.Jukebox::getName, jukebox -> null, after, upTo);
+    collect(events, show.getShowToken(), StatType.VOTING, stats.getVoting(), Stat.Voting::getDateTime, Stat.Voting::getName, voting -> null, after, upTo);
+    collect(events, show.getShowToken(), StatType.VOTING_WIN, stats.getVotingWin(), Stat.VotingWin::getDateTime, Stat.VotingWin::getName, votingWin -> null, after, upTo);
+    Lists.partition(events, INSERT_BATCH_SIZE).forEach(batch -> this.mongoTemplate.insert(batch, StatsEvent.class));
+    return events.size();
+  }
+
+  private static <T> void collect(List<StatsEvent> events, String showToken, StatType type, List<T> stats,
+                                  Function<T, LocalDateTime> dateTime, Function<T, String> name, Function<T, String> ip,
+                                  LocalDateTime after, LocalDateTime upTo) {
+    if(stats == null) {
+      return;
+    }
+    StatsEvent.Meta meta = StatsEvent.Meta.builder().showToken(showToken).type(type).build();
+    for(T stat : stats) {
+      LocalDateTime statDateTime = dateTime.apply(stat);
+      if(statDateTime == null || (after != null && !statDateTime.isAfter(after)) || statDateTime.isAfter(upTo)) {
+        continue;
+      }
+      events.add(StatsEvent.builder()
+              .dateTime(statDateTime)
+              .meta(meta)
+              .name(name.apply(stat))
+              .ip(ip.apply(stat))
+              .build());
+    }
+  }
+
+  private void copyPendingWindows(JobLeaseService.Lease lease, StatsTimeSeriesState state) {
+    if(state.getPendingWindows() == null) {
+      return;
+    }
+    for(StatsTimeSeriesState.PendingWindow window : state.getPendingWindows()) {
+      if(!lease.isHeld()) {
+        return;
+      }
+      try {
+        // A failed copy may have inserted part of the window.
+        this.mongoTemplate.remove(Query.query(Criteria.where("meta.showToken").is(window.getShowToken())
+                .and("dateTime").gt(window.getAfter()).lte(window.getUpTo())), StatsEvent.class);
+        Show show = this.showRepository.findStatsByShowToken(window.getShowToken(), window.getAfter(),
+                window.getUpTo().plus(1, ChronoUnit.MILLIS));
+        long events = show != null ? this.copy(show, window.getAfter(), window.getUpTo()) : 0;
+        this.meterRegistry.counter("stats.timeseries.copied", "source", "retry").increment(events);
+        this.mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(STATE_ID)),
+                new Update().pull("pendingWindows", new Document("windowId", window.getWindowId())),
+                StatsTimeSeriesState.class);
+      } catch (Exception e) {
+        log.warn("Stats time-series copy failed again for show {}, will retry: {}", window.getShowToken(), e.getMessage());
+      }
+    }
+  }
+
+  private StatsTimeSeriesState currentState() {
+    return this.mongoTemplate.findById(STATE_ID, StatsTimeSeriesState.class);
+  }
+
+  // Moves the watermark and queues the shows that failed in one update, so a crash
+  // between the two cannot lose a window or copy it twice.
+  private boolean advanceWatermark(LocalDateTime copiedTo, LocalDateTime copyTo, List<StatsTimeSeriesState.PendingWindow> failed) {
+    Update update = Update.update("copiedTo", copyTo);
+    if(!failed.isEmpty()) {
+      update.push("pendingWindows").each(failed.toArray());
+    }
+    UpdateResult result = this.mongoTemplate.updateFirst(
+            Query.query(Criteria.where("_id").is(STATE_ID).and("copiedTo").is(copiedTo)),
+            update,
+            StatsTimeSeriesState.class);
+    return result.getModifiedCount() == 1;
+  }
+
+  private static LocalDateTime copyCutoff() {
+    return LocalDateTime.now(ZoneOffset.UTC).minusMinutes(COPY_LAG_MINUTES).truncatedTo(ChronoUnit.SECONDS);
+  }
+}
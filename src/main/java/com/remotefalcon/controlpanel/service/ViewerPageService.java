@@ -0,0 +1,364 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.google.common.hash.Hashing;
+import com.remotefalcon.controlpanel.document.ViewerPageBody;
+import com.remotefalcon.controlpanel.document.ViewerPageContent;
+import com.remotefalcon.controlpanel.repository.ViewerPageBodyRepository;
+import com.remotefalcon.controlpanel.repository.ViewerPageContentRepository;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.ViewerPage;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Keeps viewer page HTML out of {@code Show.pages}, when {@code viewer-pages.separate-html}
+ * is on, as content-addressed {@link ViewerPageContent} documents referenced from
+ * per-page {@link ViewerPageBody} documents. Identical HTML, such as the default
+ * template every show starts with, is stored once.
+ *
+ * <p>Writers pass pages through {@link #store}, which re-points only the pages whose hash
+ * changed and writes the show's pages, with {@code html} stripped, through a callback.
+ * Readers call {@link #withHtml} only when the HTML was asked for. A page that still
+ * carries embedded HTML (written before the switch, or by another service) is served
+ * as-is, so the two layouts can coexist while {@link #migrateAllShows} runs.
+ *
+ * <p>Reference counts are kept with {@code $inc} and no transaction: a content document
+ * is taken (upsert, +1) before a page points at it and released (-1, deleted at zero)
+ * after the page stops pointing at it, and only once the show itself has been written.
+ * A page body is only ever re-pointed or deleted as a compare-and-set on the hash it was
+ * read with, and the old content is released only by the writer whose compare-and-set
+ * matched, so two stores of the same page cannot both release it; the one that lost
+ * re-reads the page and tries again. A failure in between can only leave a count too
+ * high, never delete HTML that is still referenced. {@link #migrateAllShows} corrects
+ * such counts in both directions.
+ */
+@Service
+@Slf4j
+public class ViewerPageService {
+  // Longer than a store takes between taking content and writing the page body for it.
+  private static final Duration RECONCILE_GRACE = Duration.ofMinutes(5);
+
+  private final ViewerPageBodyRepository viewerPageBodyRepository;
+  private final ViewerPageContentRepository viewerPageContentRepository;
+  private final MongoTemplate mongoTemplate;
+  private final ShowWriteService showWriteService;
+  private final boolean separateHtml;
+
+  public ViewerPageService(ViewerPageBodyRepository viewerPageBodyRepository,
+                           ViewerPageContentRepository viewerPageContentRepository,
+                           MongoTemplate mongoTemplate, ShowWriteService showWriteService,
+                           @Value("${viewer-pages.separate-html:false}") boolean separateHtml) {
+    this.viewerPageBodyRepository = viewerPageBodyRepository;
+    this.viewerPageContentRepository = viewerPageContentRepository;
+    this.mongoTemplate = mongoTemplate;
+    this.showWriteService = showWriteService;
+    this.separateHtml = separateHtml;
+  }
+
+  /**
+   * Points each of {@code pages} at the content holding its HTML and hands the pages to
+   * embed in the show to {@code writeShow}, which returns false when no show was
+   * written. Pages no longer in the list are released once the show no longer lists
+   * them; if the show is not written, the page references are put back as they were.
+   * A page submitted without HTML keeps its current content. A page re-pointed by another
+   * store since it was read is re-read and compared again.
+   */
+  public boolean store(String showToken, List<ViewerPage> pages, Predicate<List<ViewerPage>> writeShow) {
+    if(!this.separateHtml || pages == null) {
+      return writeShow.test(pages);
+    }
+    Map<String, ViewerPageBody> current = new HashMap<>();
+    this.viewerPageBodyRepository.findByShowToken(showToken).forEach(body -> current.put(body.getName(), body));
+
+    Set<String> names = new HashSet<>();
+    Map<String, String> repointed = new HashMap<>();
+    List<ViewerPage> embedded = new ArrayList<>(pages.size());
+    for(ViewerPage page : pages) {
+      names.add(page.getName());
+      ViewerPageBody body = current.get(page.getName());
+      if(page.getHtml() != null) {
+        String hash = hash(page.getHtml());
+        boolean taken = false;
+        while(body == null || !hash.equals(body.getHash())) {
+          if(!taken) {
+            this.acquire(hash, page.getHtml());
+            taken = true;
+          }
+          if(this.repoint(showToken, page.getName(), body, hash)) {
+            repointed.put(page.getName(), hash);
+            break;
+          }
+          body = this.mongoTemplate.findOne(bodyQuery(showToken, page.getName()), ViewerPageBody.class);
+        }
+        if(taken && !repointed.containsKey(page.getName())) {
+          // Another store pointed the page at this content first and holds its own reference.
+          this.release(hash);
+        }
+        if(body != null) {
+          current.put(page.getName(), body);
+        }else {
+          current.remove(page.getName());
+        }
+      }
+      embedded.add(ViewerPage.builder()
+              .name(page.getName())
+              .active(page.getActive())
+              .build());
+    }
+
+    boolean written;
+    try {
+      written = writeShow.test(embedded);
+    } catch (RuntimeException e) {
+      this.rollBack(showToken, current, repointed);
+      throw e;
+    }
+    if(!written) {
+      this.rollBack(showToken, current, repointed);
+      return false;
+    }
+    repointed.keySet().stream()
+            .map(current::get)
+            .filter(Objects::nonNull)
+            .forEach(body -> this.release(body.getHash()));
+    current.values().stream()
+            .filter(body -> !names.contains(body.getName()))
+            .forEach(this::delete);
+    return true;
+  }
+
+  /**
+   * Fills in the HTML of pages that do not carry it embedded, with one read of the
+   * show's page references and one of their contents.
+   */
+  public List<ViewerPage> withHtml(String showToken, List<ViewerPage> pages) {
+    if(pages == null || pages.stream().allMatch(page -> page.getHtml() != null)) {
+      return pages;
+    }
+    Map<String, String> hashByName = new HashMap<>();
+    this.viewerPageBodyRepository.findByShowToken(showToken).forEach(body -> hashByName.put(body.getName(), body.getHash()));
+    Map<String, String> htmlByHash = new HashMap<>();
+    this.viewerPageContentRepository.findAllById(new HashSet<>(hashByName.values()))
+            .forEach(content -> htmlByHash.put(content.getHash(), content.getHtml()));
+    pages.forEach(page -> {
+      if(page.getHtml() == null && hashByName.containsKey(page.getName())) {
+        page.setHtml(htmlByHash.get(hashByName.get(page.getName())));
+      }
+    });
+    return pages;
+  }
+
+  public void deleteForShow(String showToken) {
+    this.viewerPageBodyRepository.findByShowToken(showToken).forEach(this::delete);
+  }
+
+  /**
+   * Moves the embedded HTML of every show, and of page bodies that still hold their
+   * own copy, into shared content documents, then reconciles the reference counts.
+   * Safe to re-run; shows and bodies already migrated are skipped.
+   */
+  @Async
+  public void migrateAllShows() {
+    if(!this.separateHtml) {
+      log.warn("Viewer page migration skipped: viewer-pages.separate-html is off");
+      return;
+    }
+    int migrated = 0;
+    long startMillis = System.currentTimeMillis();
+    Query query = Query.query(Criteria.where("pages.html").ne(null));
+    query.fields().include("showToken", "pages");
+    try (Stream<Show> shows = this.mongoTemplate.stream(query, Show.class)) {
+      Iterator<Show> it = shows.iterator();
+      while (it.hasNext()) {
+        Show show = it.next();
+        String showToken = show.getShowToken();
+        try {
+          this.store(showToken, show.getPages(), embedded -> this.showWriteService.modify(showToken, "migrateViewerPages", current -> {
+            current.setPages(withoutHtml(current.getPages()));
+            return current;
+          }).isPresent());
+          migrated++;
+        } catch (Exception e) {
+          log.warn("Viewer page migration failed for show {}: {}", showToken, e.getMessage());
+        }
+      }
+    }
+    int bodies = this.migrateInlineBodies();
+    this.reconcileReferenceCounts();
+    log.info("Viewer page migration complete: {} shows, {} page bodies, {} distinct pages, {} ms",
+            migrated, bodies, this.viewerPageContentRepository.count(), System.currentTimeMillis() - startMillis);
+  }
+
+  /**
+   * Page bodies written before content was shared carry their HTML inline; take a
+   * reference to the shared copy and drop theirs.
+   */
+  private int migrateInlineBodies() {
+    int migrated = 0;
+    Query query = Query.query(Criteria.where("html").exists(true));
+    query.fields().include("hash", "html");
+    try (Stream<Document> bodies = this.mongoTemplate.stream(query, Document.class, "viewerPageBody")) {
+      Iterator<Document> it = bodies.iterator();
+      while (it.hasNext()) {
+        Document body = it.next();
+        String html = body.getString("html");
+        String hash = html != null ? hash(html) : body.getString("hash");
+        if(html != null) {
+          this.acquire(hash, html);
+        }
+        this.mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(body.get("_id"))),
+                new Update().set("hash", hash).unset("html"), ViewerPageBody.class);
+        migrated++;
+      }
+    }
+    return migrated;
+  }
+
+  /**
+   * Sets every content's count to the number of page bodies referencing it and deletes
+   * content nothing references. Content taken within the last
+   * {@link #RECONCILE_GRACE} may belong to a page written while the tally ran, so it is
+   * left for the next run, and each correction only applies if the count has not moved
+   * and nothing took the content since the content was read.
+   */
+  private void reconcileReferenceCounts() {
+    LocalDateTime settledBefore = LocalDateTime.now().minus(RECONCILE_GRACE);
+    Map<String, Long> references = new HashMap<>();
+    this.mongoTemplate.aggregate(Aggregation.newAggregation(Aggregation.group("hash").count().as("references")),
+                    ViewerPageBody.class, Document.class)
+            .forEach(result -> references.put(result.getString("_id"), ((Number) result.get("references")).longValue()));
+
+    BulkOperations bulkOperations = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ViewerPageContent.class);
+    int operations = 0;
+    Query contents = Query.query(settled(settledBefore));
+    contents.fields().include("refCount");
+    try (Stream<ViewerPageContent> stream = this.mongoTemplate.stream(contents, ViewerPageContent.class)) {
+      Iterator<ViewerPageContent> it = stream.iterator();
+      while (it.hasNext()) {
+        ViewerPageContent content = it.next();
+        long counted = references.getOrDefault(content.getHash(), 0L);
+        if(counted == content.getRefCount()) {
+          continue;
+        }
+        Query unchanged = Query.query(new Criteria().andOperator(
+                Criteria.where("_id").is(content.getHash()).and("refCount").is(content.getRefCount()),
+                settled(settledBefore)));
+        if(counted == 0) {
+          bulkOperations.remove(unchanged);
+        }else {
+          bulkOperations.updateOne(unchanged, new Update().set("refCount", counted));
+        }
+        operations++;
+      }
+    }
+    if(operations > 0) {
+      bulkOperations.execute();
+    }
+  }
+
+  // Not taken since the cutoff. Content stored before lastAcquired was recorded falls back to its creation date.
+  private static Criteria settled(LocalDateTime settledBefore) {
+    return new Criteria().orOperator(
+            Criteria.where("lastAcquired").lt(settledBefore),
+            Criteria.where("lastAcquired").exists(false).and("createdDate").lt(settledBefore));
+  }
+
+  // Points re-pointed pages back at the content they had and lets go of the new content.
+  // A page another store has re-pointed since is left to it, along with the release.
+  private void rollBack(String showToken, Map<String, ViewerPageBody> current, Map<String, String> repointed) {
+    repointed.forEach((name, hash) -> {
+      ViewerPageBody body = current.get(name);
+      boolean restored;
+      if(body != null) {
+        restored = this.mongoTemplate.updateFirst(bodyQuery(showToken, name, hash), new Update()
+                .set("hash", body.getHash())
+                .set("updatedDate", body.getUpdatedDate()), ViewerPageBody.class).getMatchedCount() > 0;
+      }else {
+        restored = this.mongoTemplate.remove(bodyQuery(showToken, name, hash), ViewerPageBody.class).getDeletedCount() > 0;
+      }
+      if(restored) {
+        this.release(hash);
+      }
+    });
+  }
+
+  // Compare-and-set: matches only while the page still points at the content it was read
+  // with, or, for a page read as new, while it has no body (the unique index on showToken
+  // and name turns a concurrent insert into a duplicate key).
+  private boolean repoint(String showToken, String name, ViewerPageBody body, String hash) {
+    if(body == null) {
+      try {
+        this.mongoTemplate.insert(ViewerPageBody.builder()
+                .showToken(showToken)
+                .name(name)
+                .hash(hash)
+                .updatedDate(LocalDateTime.now())
+                .build());
+        return true;
+      } catch (DuplicateKeyException e) {
+        return false;
+      }
+    }
+    return this.mongoTemplate.updateFirst(bodyQuery(showToken, name, body.getHash()), new Update()
+            .set("hash", hash)
+            .set("updatedDate", LocalDateTime.now()), ViewerPageBody.class).getMatchedCount() > 0;
+  }
+
+  private void acquire(String hash, String html) {
+    this.mongoTemplate.upsert(Query.query(Criteria.where("_id").is(hash)), new Update()
+            .setOnInsert("html", html)
+            .setOnInsert("createdDate", LocalDateTime.now())
+            .set("lastAcquired", LocalDateTime.now())
+            .inc("refCount", 1), ViewerPageContent.class);
+  }
+
+  private void release(String hash) {
+    Query query = Query.query(Criteria.where("_id").is(hash));
+    this.mongoTemplate.updateFirst(query, new Update().inc("refCount", -1), ViewerPageContent.class);
+    this.mongoTemplate.remove(Query.query(Criteria.where("_id").is(hash).and("refCount").lte(0)), ViewerPageContent.class);
+  }
+
+  private void delete(ViewerPageBody body) {
+    if(this.mongoTemplate.remove(bodyQuery(body.getShowToken(), body.getName(), body.getHash()), ViewerPageBody.class).getDeletedCount() > 0) {
+      this.release(body.getHash());
+    }
+  }
+
+  private static List<ViewerPage> withoutHtml(List<ViewerPage> pages) {
+    if(pages == null) {
+      return null;
+    }
+    return pages.stream()
+            .map(page -> ViewerPage.builder().name(page.getName()).active(page.getActive()).build())
+            .toList();
+  }
+
+  private static Query bodyQuery(String showToken, String name) {
+    return Query.query(Criteria.where("showToken").is(showToken).and("name").is(name));
+  }
+
+  private static Query bodyQuery(String showToken, String name, String hash) {
+    return Query.query(Criteria.where("showToken").is(showToken).and("name").is(name).and("hash").is(hash));
+  }
+
+  private static String hash(String html) {
+    return Hashing.sha256().hashString(html, StandardCharsets.UTF_8).toString();
+  }
+}
@@ -4,18 +4,25 @@ import com.remotefalcon.controlpanel.response.dashboard.DashboardStatsResponse;
 import com.remotefalcon.library.models.Sequence;
 
  
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @Component
 public class ExcelUtil {
@@ -27,152 +34,128 @@ public class ExcelUtil {
       "imageUrl",
       "category");
 
-  public ResponseEntity<ByteArrayResource> generateDashboardExcel(DashboardStatsResponse dashboardStats,
-      String timezone) {
-    ResponseEntity<ByteArrayResource> response = ResponseEntity.status(204).build();
-    StringBuilder csvBuilder = new StringBuilder();
-
-    this.appendUniquePageVisitsByDate(csvBuilder, dashboardStats, timezone);
-    this.appendTotalPageVisitsByDate(csvBuilder, dashboardStats, timezone);
-    this.appendSequenceRequestsByDate(csvBuilder, dashboardStats, timezone);
-    this.appendSequenceRequestsBySequence(csvBuilder, dashboardStats);
-    this.appendSequenceVotesByDate(csvBuilder, dashboardStats, timezone);
-    this.appendSequenceVotesBySequence(csvBuilder, dashboardStats);
-    this.appendSequenceWinsByDate(csvBuilder, dashboardStats, timezone);
-    this.appendSequenceWinsBySequence(csvBuilder, dashboardStats);
-
-    byte[] csvBytes = csvBuilder.toString().getBytes(StandardCharsets.UTF_8);
-    ByteArrayResource resource = new ByteArrayResource(csvBytes);
-    HttpHeaders httpHeaders = new HttpHeaders();
-    httpHeaders.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=stats.csv");
-    httpHeaders.add(HttpHeaders.CONTENT_LENGTH, String.valueOf(csvBytes.length));
-    response = ResponseEntity.ok().headers(httpHeaders)
-        .contentType(MediaType.parseMediaType("text/csv"))
-        .body(resource);
-    return response;
-  }
-
-  private void appendUniquePageVisitsByDate(StringBuilder csvBuilder, DashboardStatsResponse dashboardStats,
-      String timezone) {
-    appendSectionHeader(csvBuilder, "Unique Page Visits by Date");
-    appendRow(csvBuilder, List.of("Date", "Unique Visits", "Viewer IPs"));
-    dashboardStats.getPage().forEach(visit -> {
-      String viewerIps = String.join(" | ", visit.getViewerIps());
-      appendRow(csvBuilder, List.of(
+  /**
+   * Streams the dashboard CSV straight to the response, row by row, optionally gzipped,
+   * so no copy of the file is held in memory.
+   */
+  public ResponseEntity<StreamingResponseBody> generateDashboardExcel(DashboardStatsResponse dashboardStats,
+      String timezone, boolean gzip) {
+    return this.csvResponse("stats.csv", gzip, writer -> {
+      this.appendUniquePageVisitsByDate(writer, dashboardStats, timezone);
+      this.appendTotalPageVisitsByDate(writer, dashboardStats, timezone);
+      this.appendSequenceRequestsByDate(writer, dashboardStats, timezone);
+      this.appendSequenceRequestsBySequence(writer, dashboardStats);
+      this.appendSequenceVotesByDate(writer, dashboardStats, timezone);
+      this.appendSequenceVotesBySequence(writer, dashboardStats);
+      this.appendSequenceWinsByDate(writer, dashboardStats, timezone);
+      this.appendSequenceWinsBySequence(writer, dashboardStats);
+    });
+  }
+
+  private void appendUniquePageVisitsByDate(CsvWriter csvWriter, DashboardStatsResponse dashboardStats,
+      String timezone) throws IOException {
+    csvWriter.sectionHeader("Unique Page Visits by Date");
+    csvWriter.row(Arrays.asList("Date", "Unique Visits", "Viewer IPs"));
+    for (DashboardStatsResponse.Stat visit : dashboardStats.getPage()) {
+      String viewerIps = visit.getViewerIps() != null ? String.join(" | ", visit.getViewerIps()) : "";
+      csvWriter.row(Arrays.asList(
           formatDateColumn(visit.getDate(), timezone),
           visit.getUnique(),
           viewerIps));
-    });
+    }
   }
 
-  private void appendTotalPageVisitsByDate(StringBuilder csvBuilder, DashboardStatsResponse dashboardStats,
-      String timezone) {
-    appendSectionHeader(csvBuilder, "Total Page Visits by Date");
-    appendRow(csvBuilder, List.of("Date", "Total Visits"));
-    dashboardStats.getPage().forEach(visit -> appendRow(csvBuilder, List.of(
-        formatDateColumn(visit.getDate(), timezone),
-        visit.getTotal())));
-  }
-
-  private void appendSequenceRequestsByDate(StringBuilder csvBuilder, DashboardStatsResponse dashboardStats,
-      String timezone) {
-    appendSectionHeader(csvBuilder, "Sequence Requests by Date");
-    appendRow(csvBuilder, List.of("Date", "Sequence Requests", "Total Requests"));
-    dashboardStats.getJukeboxByDate().forEach(request -> {
-      StringBuilder sequenceRequests = new StringBuilder();
-      int sequenceRequestIndex = 1;
-      for (DashboardStatsResponse.SequenceStat sequenceRequest : request.getSequences()) {
-        sequenceRequests.append(String.format("%s: %s", sequenceRequest.getName(), sequenceRequest.getTotal()));
-        if (request.getSequences().size() > sequenceRequestIndex) {
-          sequenceRequests.append(" | ");
-        }
-        sequenceRequestIndex++;
-      }
-      appendRow(csvBuilder, List.of(
+  private void appendTotalPageVisitsByDate(CsvWriter csvWriter, DashboardStatsResponse dashboardStats,
+      String timezone) throws IOException {
+    csvWriter.sectionHeader("Total Page Visits by Date");
+    csvWriter.row(Arrays.asList("Date", "Total Visits"));
+    for (DashboardStatsResponse.Stat visit : dashboardStats.getPage()) {
+      csvWriter.row(Arrays.asList(
+          formatDateColumn(visit.getDate(), timezone),
+          visit.getTotal()));
+    }
+  }
+
+  private void appendSequenceRequestsByDate(CsvWriter csvWriter, DashboardStatsResponse dashboardStats,
+      String timezone) throws IOException {
+    csvWriter.sectionHeader("Sequence Requests by Date");
+    csvWriter.row(Arrays.asList("Date", "Sequence Requests", "Total Requests"));
+    for (DashboardStatsResponse.Stat request : dashboardStats.getJukeboxByDate()) {
+      csvWriter.row(Arrays.asList(
           formatDateColumn(request.getDate(), timezone),
-          sequenceRequests.toString(),
+          formatSequenceTotals(request.getSequences()),
           request.getTotal()));
-    });
+    }
   }
 
-  private void appendSequenceRequestsBySequence(StringBuilder csvBuilder, DashboardStatsResponse dashboardStats) {
-    appendSectionHeader(csvBuilder, "Sequence Requests by Sequence");
-    appendRow(csvBuilder, List.of("Sequence Name", "Total Requests"));
-    dashboardStats.getJukeboxBySequence().getSequences().forEach(sequence -> appendRow(csvBuilder, List.of(
-        sequence.getName(),
-        sequence.getTotal())));
-  }
-
-  private void appendSequenceVotesByDate(StringBuilder csvBuilder, DashboardStatsResponse dashboardStats,
-      String timezone) {
-    appendSectionHeader(csvBuilder, "Sequence Votes by Date");
-    appendRow(csvBuilder, List.of("Date", "Sequence Votes", "Total Votes"));
-    dashboardStats.getVotingByDate().forEach(vote -> {
-      StringBuilder sequenceVotes = new StringBuilder();
-      int sequenceVoteIndex = 1;
-      for (DashboardStatsResponse.SequenceStat sequenceVote : vote.getSequences()) {
-        sequenceVotes.append(String.format("%s: %s", sequenceVote.getName(), sequenceVote.getTotal()));
-        if (vote.getSequences().size() > sequenceVoteIndex) {
-          sequenceVotes.append(" | ");
-        }
-        sequenceVoteIndex++;
-      }
-      appendRow(csvBuilder, List.of(
+  private void appendSequenceRequestsBySequence(CsvWriter csvWriter, DashboardStatsResponse dashboardStats)
+      throws IOException {
+    csvWriter.sectionHeader("Sequence Requests by Sequence");
+    csvWriter.row(Arrays.asList("Sequence Name", "Total Requests"));
+    for (DashboardStatsResponse.SequenceStat sequence : dashboardStats.getJukeboxBySequence().getSequences()) {
+      csvWriter.row(Arrays.asList(
+          sequence.getName(),
+          sequence.getTotal()));
+    }
+  }
+
+  private void appendSequenceVotesByDate(CsvWriter csvWriter, DashboardStatsResponse dashboardStats,
+      String timezone) throws IOException {
+    csvWriter.sectionHeader("Sequence Votes by Date");
+    csvWriter.row(Arrays.asList("Date", "Sequence Votes", "Total Votes"));
+    for (DashboardStatsResponse.Stat vote : dashboardStats.getVotingByDate()) {
+      csvWriter.row(Arrays.asList(
           formatDateColumn(vote.getDate(), timezone),
-          sequenceVotes.toString(),
+          formatSequenceTotals(vote.getSequences()),
           vote.getTotal()));
-    });
+    }
   }
 
-  private void appendSequenceVotesBySequence(StringBuilder csvBuilder, DashboardStatsResponse dashboardStats) {
-    appendSectionHeader(csvBuilder, "Sequence Votes by Sequence");
-    appendRow(csvBuilder, List.of("Sequence Name", "Total Votes"));
-    dashboardStats.getVotingBySequence().getSequences().forEach(sequence -> appendRow(csvBuilder, List.of(
-        sequence.getName(),
-        sequence.getTotal())));
-  }
-
-  private void appendSequenceWinsByDate(StringBuilder csvBuilder, DashboardStatsResponse dashboardStats,
-      String timezone) {
-    appendSectionHeader(csvBuilder, "Sequence Wins by Date");
-    appendRow(csvBuilder, List.of("Date", "Sequence Wins", "Total Wins"));
-    dashboardStats.getVotingWinByDate().forEach(win -> {
-      StringBuilder sequenceWins = new StringBuilder();
-      int sequenceWinIndex = 1;
-      for (DashboardStatsResponse.SequenceStat sequenceWin : win.getSequences()) {
-        sequenceWins.append(String.format("%s: %s", sequenceWin.getName(), sequenceWin.getTotal()));
-        if (win.getSequences().size() > sequenceWinIndex) {
-          sequenceWins.append(" | ");
-        }
-        sequenceWinIndex++;
-      }
-      appendRow(csvBuilder, List.of(
-          formatDateColumn(win.getDate(), timezone),
-          sequenceWins.toString(),
-          win.getTotal()));
-    });
+  private void appendSequenceVotesBySequence(CsvWriter csvWriter, DashboardStatsResponse dashboardStats)
+      throws IOException {
+    csvWriter.sectionHeader("Sequence Votes by Sequence");
+    csvWriter.row(Arrays.asList("Sequence Name", "Total Votes"));
+    for (DashboardStatsResponse.SequenceStat sequence : dashboardStats.getVotingBySequence().getSequences()) {
+      csvWriter.row(Arrays.asList(
+          sequence.getName(),
+          sequence.getTotal()));
+    }
   }
 
-  private void appendSequenceWinsBySequence(StringBuilder csvBuilder, DashboardStatsResponse dashboardStats) {
-    appendSectionHeader(csvBuilder, "Sequence Wins by Sequence");
-    appendRow(csvBuilder, List.of("Sequence Name", "Total Wins"));
-    dashboardStats.getVotingWinBySequence().getSequences().forEach(sequence -> appendRow(csvBuilder, List.of(
-        sequence.getName(),
-        sequence.getTotal())));
+  private void appendSequenceWinsByDate(CsvWriter csvWriter, DashboardStatsResponse dashboardStats,
+      String timezone) throws IOException {
+    csvWriter.sectionHeader("Sequence Wins by Date");
+    csvWriter.row(Arrays.asList("Date", "Sequence Wins", "Total Wins"));
+    for (DashboardStatsResponse.Stat win : dashboardStats.getVotingWinByDate()) {
+      csvWriter.row(Arrays.asList(
+          formatDateColumn(win.getDate(), timezone),
+          formatSequenceTotals(win.getSequences()),
+          win.getTotal()));
+    }
   }
 
-  private void appendSectionHeader(StringBuilder csvBuilder, String header) {
-    if (csvBuilder.length() > 0) {
-      csvBuilder.append("\n");
+  private void appendSequenceWinsBySequence(CsvWriter csvWriter, DashboardStatsResponse dashboardStats)
+      throws IOException {
+    csvWriter.sectionHeader("Sequence Wins by Sequence");
+    csvWriter.row(Arrays.asList("Sequence Name", "Total Wins"));
+    for (DashboardStatsResponse.SequenceStat sequence : dashboardStats.getVotingWinBySequence().getSequences()) {
+      csvWriter.row(Arrays.asList(
+          sequence.getName(),
+          sequence.getTotal()));
     }
-    csvBuilder.append(header).append("\n");
   }
 
-  private void appendRow(StringBuilder csvBuilder, List<Object> values) {
-    List<String> escapedValues = values.stream()
-        .map(this::escapeCsvValue)
-        .toList();
-    csvBuilder.append(String.join(",", escapedValues)).append("\n");
+  private String formatSequenceTotals(List<DashboardStatsResponse.SequenceStat> sequences) {
+    StringBuilder sequenceTotals = new StringBuilder();
+    int sequenceIndex = 1;
+    for (DashboardStatsResponse.SequenceStat sequence : sequences) {
+      sequenceTotals.append(String.format("%s: %s", sequence.getName(), sequence.getTotal()));
+      if (sequences.size() > sequenceIndex) {
+        sequenceTotals.append(" | ");
+      }
+      sequenceIndex++;
+    }
+    return sequenceTotals.toString();
   }
 
   private String formatDateColumn(Long date, String timezone) {
@@ -181,7 +164,7 @@ public class ExcelUtil {
         .format(DateTimeFormatter.ISO_LOCAL_DATE);
   }
 
-  public ResponseEntity<ByteArrayResource> generateSequencesExcel(List<Sequence> sequences) {
+  public ResponseEntity<StreamingResponseBody> generateSequencesExcel(List<Sequence> sequences, boolean gzip) {
     if (sequences == null || sequences.isEmpty()) {
       return ResponseEntity.status(204).build();
     }
@@ -198,33 +181,81 @@ public class ExcelUtil {
       }
     });
 
-    StringBuilder csvBuilder = new StringBuilder();
-    csvBuilder.append(String.join(",", SEQUENCE_CSV_HEADERS)).append("\n");
-
-    sequences.forEach(sequence -> csvBuilder.append(String.join(",",
-        escapeCsvValue(sequence.getName()),
-        escapeCsvValue(sequence.getDisplayName()),
-        escapeCsvValue(sequence.getArtist()),
-        escapeCsvValue(sequence.getGroup()),
-        escapeCsvValue(sequence.getImageUrl()),
-        escapeCsvValue(sequence.getCategory()))).append("\n"));
+    return this.csvResponse("sequences.csv", gzip, csvWriter -> {
+      csvWriter.line(String.join(",", SEQUENCE_CSV_HEADERS));
+      for (Sequence sequence : sequences) {
+        csvWriter.row(Arrays.asList(
+            sequence.getName(),
+            sequence.getDisplayName(),
+            sequence.getArtist(),
+            sequence.getGroup(),
+            sequence.getImageUrl(),
+            sequence.getCategory()));
+      }
+    });
+  }
 
-    byte[] csvBytes = csvBuilder.toString().getBytes(StandardCharsets.UTF_8);
-    ByteArrayResource resource = new ByteArrayResource(csvBytes);
+  private ResponseEntity<StreamingResponseBody> csvResponse(String filename, boolean gzip, CsvContent content) {
+    StreamingResponseBody body = outputStream -> {
+      OutputStream target = gzip ? new GZIPOutputStream(outputStream, 8192) : outputStream;
+      Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8));
+      content.write(new CsvWriter(writer));
+      writer.flush();
+      if (target instanceof GZIPOutputStream gzipOutputStream) {
+        gzipOutputStream.finish();
+      }
+    };
     HttpHeaders httpHeaders = new HttpHeaders();
-    httpHeaders.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=sequences.csv");
-    httpHeaders.add(HttpHeaders.CONTENT_LENGTH, String.valueOf(csvBytes.length));
+    httpHeaders.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename + (gzip ? ".gz" : ""));
     return ResponseEntity.ok()
         .headers(httpHeaders)
-        .contentType(MediaType.parseMediaType("text/csv"))
-        .body(resource);
+        .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : "text/csv"))
+        .body(body);
   }
 
-  private String escapeCsvValue(Object value) {
+  private static String escapeCsvValue(Object value) {
     if (value == null) {
       return "\"\"";
     }
     String stringValue = String.valueOf(value).replace("\"", "\"\"");
     return "\"" + stringValue + "\"";
   }
+
+  @FunctionalInterface
+  private interface CsvContent {
+    void write(CsvWriter csvWriter) throws IOException;
+  }
+
+  private static final class CsvWriter {
+    private final Writer writer;
+    private boolean empty = true;
+
+    private CsvWriter(Writer writer) {
+      this.writer = writer;
+    }
+
+    private void sectionHeader(String header) throws IOException {
+      if (!this.empty) {
+        this.writer.write("\n");
+      }
+      this.line(header);
+    }
+
+    private void row(List<Object> values) throws IOException {
+      for (int i = 0; i < values.size(); i++) {
+        if (i > 0) {
+          this.writer.write(',');
+        }
+        this.writer.write(escapeCsvValue(values.get(i)));
+      }
+      this.writer.write('\n');
+      this.empty = false;
+    }
+
+    private void line(String line) throws IOException {
+      this.writer.write(line);
+      this.writer.write('\n');
+      this.empty = false;
+    }
+  }
 }
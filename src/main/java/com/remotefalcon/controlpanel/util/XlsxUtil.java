@@ -0,0 +1,207 @@
+package com.remotefalcon.controlpanel.util;
+
+import com.remotefalcon.controlpanel.response.dashboard.DashboardStatsResponse;
+import com.remotefalcon.library.models.Sequence;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Builds the stats and sequences downloads as real {@code .xlsx} workbooks.
+ *
+ * <p>Workbooks are written with POI's streaming {@link SXSSFWorkbook}: only the last
+ * {@link #ROW_WINDOW} rows of a sheet stay in memory and older rows are flushed to a
+ * temporary file, so heap use does not grow with the export range. The finished
+ * workbook is written straight to the response stream.
+ */
+@Component
+public class XlsxUtil {
+  public static final MediaType XLSX_MEDIA_TYPE =
+      MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+  static final int ROW_WINDOW = 100;
+  // Excel's hard limit on the length of a single cell.
+  private static final int MAX_CELL_LENGTH = 32767;
+
+  /**
+   * One sheet per dashboard section. The by-date sheets carry a column per sequence, in
+   * the same order as the matching by-sequence sheet.
+   */
+  public ResponseEntity<StreamingResponseBody> generateDashboardXlsx(DashboardStatsResponse dashboardStats,
+      String timezone) {
+    ZoneId zone = ZoneId.of(timezone == null ? "America/Chicago" : timezone);
+    return this.xlsxResponse("stats.xlsx", outputStream -> this.writeDashboardXlsx(dashboardStats, zone, outputStream));
+  }
+
+  public ResponseEntity<StreamingResponseBody> generateSequencesXlsx(List<Sequence> sequences) {
+    if (sequences == null || sequences.isEmpty()) {
+      return ResponseEntity.status(204).build();
+    }
+    sequences.sort(Comparator.comparing(Sequence::getName, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)));
+    return this.xlsxResponse("sequences.xlsx", outputStream -> {
+      try (SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW)) {
+        SheetWriter sheet = new SheetWriter(workbook, "Sequences", ExcelUtil.SEQUENCE_CSV_HEADERS);
+        for (Sequence sequence : sequences) {
+          Row row = sheet.nextRow();
+          setText(row, 0, sequence.getName());
+          setText(row, 1, sequence.getDisplayName());
+          setText(row, 2, sequence.getArtist());
+          setText(row, 3, sequence.getGroup());
+          setText(row, 4, sequence.getImageUrl());
+          setText(row, 5, sequence.getCategory());
+        }
+        workbook.write(outputStream);
+      }
+    });
+  }
+
+  void writeDashboardXlsx(DashboardStatsResponse dashboardStats, ZoneId zone, OutputStream outputStream)
+      throws IOException {
+    try (SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW)) {
+      CellStyle dateStyle = workbook.createCellStyle();
+      dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+
+      this.writePageVisits(workbook, dashboardStats.getPage(), zone, dateStyle);
+      this.writeByDate(workbook, "Requests by Date", "Total Requests", dashboardStats.getJukeboxByDate(),
+          dashboardStats.getJukeboxBySequence(), zone, dateStyle);
+      this.writeBySequence(workbook, "Requests by Sequence", "Total Requests", dashboardStats.getJukeboxBySequence());
+      this.writeByDate(workbook, "Votes by Date", "Total Votes", dashboardStats.getVotingByDate(),
+          dashboardStats.getVotingBySequence(), zone, dateStyle);
+      this.writeBySequence(workbook, "Votes by Sequence", "Total Votes", dashboardStats.getVotingBySequence());
+      this.writeByDate(workbook, "Wins by Date", "Total Wins", dashboardStats.getVotingWinByDate(),
+          dashboardStats.getVotingWinBySequence(), zone, dateStyle);
+      this.writeBySequence(workbook, "Wins by Sequence", "Total Wins", dashboardStats.getVotingWinBySequence());
+      workbook.write(outputStream);
+    }
+  }
+
+  private void writePageVisits(SXSSFWorkbook workbook, List<DashboardStatsResponse.Stat> page, ZoneId zone,
+      CellStyle dateStyle) {
+    boolean includeViewerIps = page != null && page.stream().anyMatch(visit -> visit.getViewerIps() != null);
+    List<String> headers = new ArrayList<>(List.of("Date", "Total Visits", "Unique Visits"));
+    if (includeViewerIps) {
+      headers.add("Viewer IPs");
+    }
+    SheetWriter sheet = new SheetWriter(workbook, "Page Visits", headers);
+    for (DashboardStatsResponse.Stat visit : Optional.ofNullable(page).orElse(List.of())) {
+      Row row = sheet.nextRow();
+      setDate(row, 0, visit.getDate(), zone, dateStyle);
+      setNumber(row, 1, visit.getTotal());
+      setNumber(row, 2, visit.getUnique());
+      if (includeViewerIps && visit.getViewerIps() != null) {
+        setText(row, 3, String.join(" | ", visit.getViewerIps()));
+      }
+    }
+  }
+
+  private void writeByDate(SXSSFWorkbook workbook, String sheetName, String totalHeader,
+      List<DashboardStatsResponse.Stat> byDate, DashboardStatsResponse.Stat bySequence, ZoneId zone,
+      CellStyle dateStyle) {
+    // Column order follows the by-sequence totals (most popular first); any name that only
+    // shows up on a single day is appended after them.
+    Map<String, Integer> sequenceColumns = new LinkedHashMap<>();
+    if (bySequence != null && bySequence.getSequences() != null) {
+      bySequence.getSequences().forEach(sequence -> sequenceColumns.putIfAbsent(sequence.getName(), sequenceColumns.size()));
+    }
+    List<DashboardStatsResponse.Stat> days = Optional.ofNullable(byDate).orElse(List.of());
+    days.stream()
+        .filter(day -> day.getSequences() != null)
+        .flatMap(day -> day.getSequences().stream())
+        .forEach(sequence -> sequenceColumns.putIfAbsent(sequence.getName(), sequenceColumns.size()));
+
+    List<String> headers = new ArrayList<>(List.of("Date", totalHeader));
+    sequenceColumns.keySet().forEach(name -> headers.add(name == null ? "" : name));
+    SheetWriter sheet = new SheetWriter(workbook, sheetName, headers);
+    for (DashboardStatsResponse.Stat day : days) {
+      Row row = sheet.nextRow();
+      setDate(row, 0, day.getDate(), zone, dateStyle);
+      setNumber(row, 1, day.getTotal());
+      if (day.getSequences() != null) {
+        day.getSequences().forEach(sequence -> setNumber(row, 2 + sequenceColumns.get(sequence.getName()), sequence.getTotal()));
+      }
+    }
+  }
+
+  private void writeBySequence(SXSSFWorkbook workbook, String sheetName, String totalHeader,
+      DashboardStatsResponse.Stat bySequence) {
+    SheetWriter sheet = new SheetWriter(workbook, sheetName, List.of("Sequence Name", totalHeader));
+    if (bySequence == null || bySequence.getSequences() == null) {
+      return;
+    }
+    for (DashboardStatsResponse.SequenceStat sequence : bySequence.getSequences()) {
+      Row row = sheet.nextRow();
+      setText(row, 0, sequence.getName());
+      setNumber(row, 1, sequence.getTotal());
+    }
+  }
+
+  private ResponseEntity<StreamingResponseBody> xlsxResponse(String filename, StreamingResponseBody body) {
+    HttpHeaders httpHeaders = new HttpHeaders();
+    httpHeaders.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename);
+    return ResponseEntity.ok()
+        .headers(httpHeaders)
+        .contentType(XLSX_MEDIA_TYPE)
+        .body(body);
+  }
+
+  private static void setDate(Row row, int column, Long epochMillis, ZoneId zone, CellStyle dateStyle) {
+    if (epochMillis == null) {
+      return;
+    }
+    var cell = row.createCell(column);
+    cell.setCellValue(LocalDate.ofInstant(Instant.ofEpochMilli(epochMillis), zone));
+    cell.setCellStyle(dateStyle);
+  }
+
+  private static void setNumber(Row row, int column, Integer value) {
+    if (value != null) {
+      row.createCell(column).setCellValue(value);
+    }
+  }
+
+  private static void setText(Row row, int column, String value) {
+    if (value != null) {
+      row.createCell(column).setCellValue(value.length() > MAX_CELL_LENGTH ? value.substring(0, MAX_CELL_LENGTH) : value);
+    }
+  }
+
+  /**
+   * Appends rows to a new sheet that starts with a bold, frozen header row.
+   */
+  private static final class SheetWriter {
+    private final Sheet sheet;
+    private int nextRow;
+
+    private SheetWriter(SXSSFWorkbook workbook, String name, List<String> headers) {
+      this.sheet = workbook.createSheet(name);
+      CellStyle headerStyle = workbook.createCellStyle();
+      Font headerFont = workbook.createFont();
+      headerFont.setBold(true);
+      headerStyle.setFont(headerFont);
+      Row header = this.nextRow();
+      for (int i = 0; i < headers.size(); i++) {
+        var cell = header.createCell(i);
+        cell.setCellValue(headers.get(i));
+        cell.setCellStyle(headerStyle);
+      }
+      this.sheet.createFreezePane(0, 1);
+    }
+
+    private Row nextRow() {
+      return this.sheet.createRow(this.nextRow++);
+    }
+  }
+}
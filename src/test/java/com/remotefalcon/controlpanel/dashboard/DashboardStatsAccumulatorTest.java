@@ -0,0 +1,102 @@
+package com.remotefalcon.controlpanel.dashboard;
+
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.controlpanel.enums.UniqueViewerMode;
+import com.remotefalcon.controlpanel.response.dashboard.DashboardStatsResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DashboardStatsAccumulatorTest {
+  private static final ZoneId ZONE = ZoneId.of("America/Chicago");
+  private static final ZonedDateTime START = ZonedDateTime.of(2024, 12, 1, 0, 0, 0, 0, ZONE);
+  private static final ZonedDateTime END = START.plusDays(3);
+
+  @Test
+  public void uniqueViewers_exact_countsRepeatViewersOnceAcrossDays() {
+    DashboardStatsAccumulator accumulator = this.accumulator(UniqueViewerMode.EXACT);
+    accumulator.addPage(this.epochSecond(0, 10), "10.0.0.1");
+    accumulator.addPage(this.epochSecond(0, 11), "10.0.0.2");
+    accumulator.addPage(this.epochSecond(1, 10), "10.0.0.1");
+    accumulator.addPage(LocalDate.of(2024, 12, 3), 4, List.of("10.0.0.2", "10.0.0.3"));
+
+    List<DashboardStatsResponse.Stat> pages = accumulator.pageStats();
+    assertEquals(List.of(2, 1, 4), pages.stream().map(DashboardStatsResponse.Stat::getTotal).toList());
+    assertEquals(List.of(2, 1, 2), pages.stream().map(DashboardStatsResponse.Stat::getUnique).toList());
+    // The range-wide count merges the days instead of adding their uniques (5).
+    assertEquals(3, accumulator.uniqueViewers());
+  }
+
+  @Test
+  public void uniqueViewers_hll_mergesDailySketches() {
+    DashboardStatsAccumulator exact = this.accumulator(UniqueViewerMode.EXACT);
+    DashboardStatsAccumulator hll = this.accumulator(UniqueViewerMode.HLL);
+    for(int day = 0; day < 3; day++) {
+      // 20,000 viewers a day, half of them returning from the day before.
+      for(int viewer = day * 10_000; viewer < day * 10_000 + 20_000; viewer++) {
+        exact.addPage(this.epochSecond(day, 12), "viewer-" + viewer);
+        hll.addPage(this.epochSecond(day, 12), "viewer-" + viewer);
+      }
+    }
+
+    assertEquals(40_000, exact.uniqueViewers());
+    assertEquals(exact.uniqueViewers(), hll.uniqueViewers(), 40_000 * 0.05);
+    List<DashboardStatsResponse.Stat> exactPages = exact.pageStats();
+    List<DashboardStatsResponse.Stat> hllPages = hll.pageStats();
+    for(int day = 0; day < 3; day++) {
+      assertEquals(exactPages.get(day).getTotal(), hllPages.get(day).getTotal());
+      assertEquals(exactPages.get(day).getUnique(), hllPages.get(day).getUnique(), 20_000 * 0.05);
+    }
+  }
+
+  @Test
+  public void viewerIps_onlyReturnedWhenAskedFor() {
+    DashboardStatsAccumulator withoutIps = new DashboardStatsAccumulator(START, END, UniqueViewerMode.HLL, false, EnumSet.of(StatType.PAGE));
+    DashboardStatsAccumulator withIps = new DashboardStatsAccumulator(START, END, UniqueViewerMode.HLL, true, EnumSet.of(StatType.PAGE));
+    withoutIps.addPage(this.epochSecond(0, 10), "10.0.0.1");
+    withIps.addPage(this.epochSecond(0, 10), "10.0.0.1");
+
+    assertNull(withoutIps.pageStats().get(0).getViewerIps());
+    assertEquals(Set.of("10.0.0.1"), withIps.pageStats().get(0).getViewerIps());
+  }
+
+  @Test
+  public void sequences_mergedByDayAndByName() {
+    DashboardStatsAccumulator accumulator = this.accumulator(UniqueViewerMode.EXACT);
+    accumulator.addSequence(StatType.JUKEBOX, this.epochSecond(0, 20), "Carol", 1);
+    accumulator.addSequence(StatType.JUKEBOX, this.epochSecond(0, 21), "Carol", 2);
+    accumulator.addSequence(StatType.JUKEBOX, LocalDate.of(2024, 12, 2), "Bells", 1);
+
+    List<DashboardStatsResponse.Stat> byDate = accumulator.statsByDate(StatType.JUKEBOX);
+    assertEquals(List.of(3, 1, 0), byDate.stream().map(DashboardStatsResponse.Stat::getTotal).toList());
+    List<DashboardStatsResponse.SequenceStat> bySequence = accumulator.statsBySequence(StatType.JUKEBOX).getSequences();
+    assertEquals("Carol", bySequence.get(0).getName());
+    assertEquals(3, bySequence.get(0).getTotal());
+    assertEquals(1, bySequence.get(1).getTotal());
+  }
+
+  @Test
+  public void toResponse_leavesUnrequestedSectionsNull() {
+    DashboardStatsResponse response = new DashboardStatsAccumulator(START, END, UniqueViewerMode.EXACT, false, EnumSet.of(StatType.VOTING))
+        .toResponse();
+
+    assertNull(response.getPage());
+    assertNull(response.getJukeboxByDate());
+    assertNotNull(response.getVotingByDate());
+  }
+
+  private DashboardStatsAccumulator accumulator(UniqueViewerMode mode) {
+    return new DashboardStatsAccumulator(START, END, mode, false, EnumSet.allOf(StatType.class));
+  }
+
+  private long epochSecond(int day, int hour) {
+    return START.plusDays(day).withHour(hour).toEpochSecond();
+  }
+}
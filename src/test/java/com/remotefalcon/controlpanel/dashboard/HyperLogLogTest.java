@@ -0,0 +1,72 @@
+package com.remotefalcon.controlpanel.dashboard;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HyperLogLogTest {
+
+  @Test
+  public void cardinality_empty() {
+    assertEquals(0, new HyperLogLog().cardinality());
+  }
+
+  @Test
+  public void cardinality_ignoresDuplicatesAndNulls() {
+    HyperLogLog sketch = new HyperLogLog();
+    for(int i = 0; i < 5; i++) {
+      sketch.offer("10.0.0.1");
+      sketch.offer("10.0.0.2");
+      sketch.offer(null);
+    }
+    assertEquals(2, sketch.cardinality());
+  }
+
+  @Test
+  public void cardinality_withinErrorBound() {
+    for(int distinct : new int[] { 1_000, 50_000, 500_000 }) {
+      HyperLogLog sketch = new HyperLogLog();
+      for(int i = 0; i < distinct; i++) {
+        sketch.offer(ip(i));
+      }
+      // Three standard errors (about 5% at the default precision).
+      assertEquals(distinct, sketch.cardinality(), distinct * 0.05, "distinct=" + distinct);
+    }
+  }
+
+  @Test
+  public void merge_countsTheUnionOnce() {
+    HyperLogLog first = new HyperLogLog();
+    HyperLogLog second = new HyperLogLog();
+    HyperLogLog union = new HyperLogLog();
+    // Overlapping halves: 0..59,999 and 40,000..99,999.
+    for(int i = 0; i < 60_000; i++) {
+      first.offer(ip(i));
+      union.offer(ip(i));
+    }
+    for(int i = 40_000; i < 100_000; i++) {
+      second.offer(ip(i));
+      union.offer(ip(i));
+    }
+
+    first.merge(second);
+
+    assertEquals(union.cardinality(), first.cardinality());
+    assertEquals(100_000, first.cardinality(), 100_000 * 0.05);
+  }
+
+  @Test
+  public void merge_differentPrecision() {
+    assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(12).merge(new HyperLogLog(10)));
+  }
+
+  @Test
+  public void precision_outOfRange() {
+    assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(3));
+    assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(19));
+  }
+
+  private static String ip(int i) {
+    return (i >>> 24 & 0xFF) + "." + (i >>> 16 & 0xFF) + "." + (i >>> 8 & 0xFF) + "." + (i & 0xFF);
+  }
+}
@@ -0,0 +1,173 @@
+package com.remotefalcon.controlpanel.repository;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.Preference;
+import com.remotefalcon.library.models.Sequence;
+import com.remotefalcon.library.models.Vote;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Compare-and-set show writes against a real Mongo. Skipped when Docker is not available.
+ */
+public class ShowRepositoryCustomImplTest {
+  private static final String SHOW_TOKEN = "abc123";
+
+  private static GenericContainer<?> mongo;
+  private static MongoClient client;
+
+  private MongoTemplate mongoTemplate;
+  private ApplicationEventPublisher applicationEventPublisher;
+  private ShowRepositoryCustomImpl showRepository;
+
+  @BeforeAll
+  public static void startMongo() {
+    assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is not available");
+    mongo = new GenericContainer<>("mongo:7.0").withExposedPorts(27017);
+    mongo.start();
+    client = MongoClients.create("mongodb://" + mongo.getHost() + ":" + mongo.getMappedPort(27017));
+  }
+
+  @AfterAll
+  public static void stopMongo() {
+    if(client != null) {
+      client.close();
+    }
+    if(mongo != null) {
+      mongo.stop();
+    }
+  }
+
+  @BeforeEach
+  public void setUp() {
+    this.mongoTemplate = new MongoTemplate(client, "remote-falcon-test");
+    this.mongoTemplate.dropCollection(Show.class);
+    this.applicationEventPublisher = mock(ApplicationEventPublisher.class);
+    this.showRepository = new ShowRepositoryCustomImpl(this.mongoTemplate, this.applicationEventPublisher);
+    this.showRepository.insertWithRevision(Show.builder().showToken(SHOW_TOKEN).showName("Show").votes(List.of()).build());
+  }
+
+  @Test
+  public void insertWithRevision_startsAtZero() {
+    assertEquals(0L, this.showRepository.findVersionedByShowToken(SHOW_TOKEN).orElseThrow().getRevision());
+  }
+
+  @Test
+  public void replaceIfUnchanged_staleRevisionLoses() {
+    VersionedShow first = this.showRepository.findVersionedByShowToken(SHOW_TOKEN).orElseThrow();
+    VersionedShow second = this.showRepository.findVersionedByShowToken(SHOW_TOKEN).orElseThrow();
+
+    first.getShow().setShowName("First");
+    assertTrue(this.showRepository.replaceIfUnchanged(first));
+    second.getShow().setShowName("Second");
+    assertFalse(this.showRepository.replaceIfUnchanged(second));
+
+    VersionedShow stored = this.showRepository.findVersionedByShowToken(SHOW_TOKEN).orElseThrow();
+    assertEquals("First", stored.getShow().getShowName());
+    assertEquals(1L, stored.getRevision());
+  }
+
+  @Test
+  public void replaceIfUnchanged_keepsVoteRecordedWithoutRevision() {
+    VersionedShow versionedShow = this.showRepository.findVersionedByShowToken(SHOW_TOKEN).orElseThrow();
+    // The viewer API pushes votes without touching the revision.
+    this.mongoTemplate.updateFirst(Query.query(Criteria.where("showToken").is(SHOW_TOKEN)),
+        new Update().push("votes", Vote.builder().ownerVoted(false).build()), Show.class);
+
+    versionedShow.getShow().setShowName("Renamed");
+    assertTrue(this.showRepository.replaceIfUnchanged(versionedShow));
+
+    Show stored = this.showRepository.findVersionedByShowToken(SHOW_TOKEN).orElseThrow().getShow();
+    assertEquals("Renamed", stored.getShowName());
+    assertEquals(1, stored.getVotes().size());
+  }
+
+  @Test
+  public void replaceIfUnchanged_keepsNestedViewerWrittenFields() {
+    this.mongoTemplate.updateFirst(Query.query(Criteria.where("showToken").is(SHOW_TOKEN)), new Update()
+        .set("preferences", Preference.builder().sequencesPlayed(0).build())
+        .set("sequences", List.of(Sequence.builder().name("one").visibilityCount(0).build())), Show.class);
+    VersionedShow versionedShow = this.showRepository.findVersionedByShowToken(SHOW_TOKEN).orElseThrow();
+    // The plugin and viewer API count plays and visibility without touching the revision.
+    this.mongoTemplate.updateFirst(Query.query(Criteria.where("showToken").is(SHOW_TOKEN)), new Update()
+        .set("preferences.sequencesPlayed", 7)
+        .set("sequences.0.visibilityCount", 3)
+        .set("playingNow", "one"), Show.class);
+
+    versionedShow.getShow().getPreferences().setPageTitle("Title");
+    versionedShow.getShow().setSequences(List.of(Sequence.builder().name("one").displayName("One").visibilityCount(0).build(),
+        Sequence.builder().name("two").visibilityCount(0).build()));
+    assertTrue(this.showRepository.replaceIfUnchanged(versionedShow));
+
+    Show stored = this.showRepository.findVersionedByShowToken(SHOW_TOKEN).orElseThrow().getShow();
+    assertEquals("Title", stored.getPreferences().getPageTitle());
+    assertEquals(7, stored.getPreferences().getSequencesPlayed());
+    assertEquals("One", stored.getSequences().get(0).getDisplayName());
+    assertEquals(3, stored.getSequences().get(0).getVisibilityCount());
+    assertEquals(0, stored.getSequences().get(1).getVisibilityCount());
+    assertEquals("one", stored.getPlayingNow());
+  }
+
+  @Test
+  public void updateByShowToken_publishesTheRevision() {
+    assertTrue(this.showRepository.updateByShowToken(SHOW_TOKEN, new Update().set("showName", "Renamed")));
+    assertTrue(this.showRepository.updateByShowToken(SHOW_TOKEN, new Update().set("showName", "Renamed again")));
+
+    verify(this.applicationEventPublisher).publishEvent(new ShowChangedEvent(SHOW_TOKEN, 2L));
+  }
+
+  @Test
+  public void replaceIfUnchanged_storesValuesThatLookLikeExpressions() {
+    VersionedShow versionedShow = this.showRepository.findVersionedByShowToken(SHOW_TOKEN).orElseThrow();
+
+    versionedShow.getShow().setShowName("$showToken");
+    assertTrue(this.showRepository.replaceIfUnchanged(versionedShow));
+
+    Document stored = this.mongoTemplate.findOne(Query.query(Criteria.where("showToken").is(SHOW_TOKEN)), Document.class,
+        this.mongoTemplate.getCollectionName(Show.class));
+    assertEquals("$showToken", stored.getString("showName"));
+  }
+
+  @Test
+  public void pullStatsBefore_trimsEveryArrayInOnePass() {
+    LocalDateTime cutoff = LocalDateTime.of(2024, 1, 1, 0, 0);
+    Date before = Date.from(cutoff.minusHours(1).atZone(ZoneId.systemDefault()).toInstant());
+    Date after = Date.from(cutoff.plusHours(1).atZone(ZoneId.systemDefault()).toInstant());
+    // A null array must not stop the other arrays of the show from being trimmed.
+    this.mongoTemplate.updateFirst(Query.query(Criteria.where("showToken").is(SHOW_TOKEN)), new Update()
+        .set("stats.page", List.of(new Document("dateTime", before), new Document("dateTime", after)))
+        .set("stats.jukebox", List.of(new Document("dateTime", before)))
+        .set("stats.voting", null), Show.class);
+
+    assertEquals(1, this.showRepository.pullStatsBefore(SHOW_TOKEN, cutoff));
+    assertEquals(0, this.showRepository.pullStatsBefore(SHOW_TOKEN, cutoff));
+
+    Document stats = this.mongoTemplate.findOne(Query.query(Criteria.where("showToken").is(SHOW_TOKEN)), Document.class,
+        this.mongoTemplate.getCollectionName(Show.class)).get("stats", Document.class);
+    assertEquals(List.of(new Document("dateTime", after)), stats.getList("page", Document.class));
+    assertEquals(List.of(), stats.getList("jukebox", Document.class));
+    assertNull(stats.get("voting"));
+  }
+}
@@ -0,0 +1,127 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.remotefalcon.controlpanel.dashboard.DashboardStatsOptions;
+import com.remotefalcon.controlpanel.dto.TokenDTO;
+import com.remotefalcon.controlpanel.enums.DashboardStatsSource;
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.controlpanel.enums.UniqueViewerMode;
+import com.remotefalcon.controlpanel.repository.DashboardStatsBuckets;
+import com.remotefalcon.controlpanel.repository.ShowRepository;
+import com.remotefalcon.controlpanel.response.dashboard.DashboardStatsResponse;
+import com.remotefalcon.controlpanel.util.AuthUtil;
+import com.remotefalcon.controlpanel.util.ExcelUtil;
+import com.remotefalcon.controlpanel.util.XlsxUtil;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.Stat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DashboardServiceTest {
+  private static final String SHOW_TOKEN = "abc123";
+  private static final String TIMEZONE = "America/Chicago";
+
+  @Mock private AuthUtil authUtil;
+  @Mock private ExcelUtil excelUtil;
+  @Mock private XlsxUtil xlsxUtil;
+  @Mock private ShowRepository showRepository;
+  @Mock private StatsRollupService statsRollupService;
+  @Mock private StatsColumnCache statsColumnCache;
+  @Mock private StatsTimeSeriesService statsTimeSeriesService;
+
+  private DashboardService dashboardService;
+  private long startDate;
+  private long endDate;
+
+  @BeforeEach
+  public void setUp() {
+    this.dashboardService = new DashboardService(this.authUtil, this.excelUtil, this.xlsxUtil, this.showRepository,
+        this.statsRollupService, this.statsColumnCache, this.statsTimeSeriesService, new SimpleMeterRegistry());
+    lenient().when(this.authUtil.getJwtPayload()).thenReturn(TokenDTO.builder().showToken(SHOW_TOKEN).build());
+    Instant now = Instant.now();
+    this.startDate = now.minus(7, ChronoUnit.DAYS).toEpochMilli();
+    this.endDate = now.toEpochMilli();
+  }
+
+  @Test
+  public void aggregation_unknownShow() {
+    // What $facet returns when no show matched: empty sections, found=false.
+    when(this.showRepository.getDashboardStatsBuckets(eq(SHOW_TOKEN), any(), any(), anyString(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean()))
+        .thenReturn(DashboardStatsBuckets.builder().page(List.of()).jukebox(List.of()).voting(List.of()).votingWin(List.of()).found(false).build());
+
+    RuntimeException exception = assertThrows(RuntimeException.class, () -> this.dashboardStats(DashboardStatsSource.AGGREGATION));
+    assertEquals("SHOW_NOT_FOUND", exception.getMessage());
+  }
+
+  @Test
+  public void aggregation_knownShowWithoutStats() {
+    when(this.showRepository.getDashboardStatsBuckets(eq(SHOW_TOKEN), any(), any(), anyString(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean()))
+        .thenReturn(DashboardStatsBuckets.builder().page(List.of()).jukebox(List.of()).voting(List.of()).votingWin(List.of()).found(true).build());
+
+    assertNotNull(this.dashboardStats(DashboardStatsSource.AGGREGATION));
+  }
+
+  @Test
+  public void timeSeries_beforeMigration_readsTheDocument() {
+    when(this.statsTimeSeriesService.isReadable()).thenReturn(false);
+    when(this.showRepository.findStatsByShowToken(eq(SHOW_TOKEN), any(), any()))
+        .thenReturn(Show.builder().showToken(SHOW_TOKEN).stats(Stat.builder().build()).build());
+
+    assertNotNull(this.dashboardStats(DashboardStatsSource.TIME_SERIES));
+
+    verify(this.statsTimeSeriesService, never()).dashboardStatsBuckets(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  public void timeSeries_afterMigration_readsTheTimeSeries() {
+    when(this.statsTimeSeriesService.isReadable()).thenReturn(true);
+
+    assertNotNull(this.dashboardStats(DashboardStatsSource.TIME_SERIES));
+
+    verify(this.statsTimeSeriesService).dashboardStatsBuckets(eq(SHOW_TOKEN), any(), any(), any(), any());
+    verify(this.showRepository, never()).findStatsByShowToken(any(), any(), any());
+  }
+
+  @Test
+  public void embeddedStatsTrimmed_everySourceReadsTheTimeSeries() {
+    when(this.statsTimeSeriesService.isEmbeddedStatsTrimmed()).thenReturn(true);
+    when(this.statsTimeSeriesService.isReadable()).thenReturn(true);
+
+    assertNotNull(this.dashboardStats(DashboardStatsSource.DOCUMENT));
+
+    verify(this.statsTimeSeriesService).dashboardStatsBuckets(eq(SHOW_TOKEN), any(), any(), any(), any());
+    verify(this.statsColumnCache, never()).get(any());
+    verify(this.showRepository, never()).findStatsByShowToken(any(), any(), any());
+  }
+
+  @Test
+  public void document_showWithoutStats_returnsOnlyTheSelectedSections() {
+    when(this.showRepository.findStatsByShowToken(eq(SHOW_TOKEN), any(), any())).thenReturn(Show.builder().showToken(SHOW_TOKEN).build());
+
+    DashboardStatsResponse response = this.dashboardService.dashboardStats(this.startDate, this.endDate, TIMEZONE,
+        DashboardStatsOptions.builder().source(DashboardStatsSource.DOCUMENT).uniqueViewerMode(UniqueViewerMode.EXACT)
+            .statTypes(Set.of(StatType.PAGE)).build());
+
+    assertFalse(response.getPage().isEmpty());
+    assertEquals(0, response.getUniqueViewers());
+    assertNull(response.getJukeboxByDate());
+  }
+
+  private Object dashboardStats(DashboardStatsSource source) {
+    return this.dashboardService.dashboardStats(this.startDate, this.endDate, TIMEZONE,
+        DashboardStatsOptions.builder().source(source).uniqueViewerMode(UniqueViewerMode.EXACT).build());
+  }
+}
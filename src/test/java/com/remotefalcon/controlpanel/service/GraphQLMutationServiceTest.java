@@ -0,0 +1,212 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.remotefalcon.controlpanel.dto.TokenDTO;
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.controlpanel.repository.ShowRepository;
+import com.remotefalcon.controlpanel.util.AuthUtil;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.Preference;
+import com.remotefalcon.library.models.PsaSequence;
+import com.remotefalcon.library.models.Sequence;
+import com.remotefalcon.library.models.SequenceGroup;
+import com.remotefalcon.library.models.Stat;
+import com.remotefalcon.library.models.ViewerPage;
+import com.remotefalcon.library.models.Vote;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class GraphQLMutationServiceTest {
+  private static final String SHOW_TOKEN = "abc123";
+
+  @InjectMocks GraphQLMutationService graphQLMutationService;
+
+  @Mock private ShowRepository showRepository;
+  @Mock private AuthUtil authUtil;
+  @Mock private ViewerPageService viewerPageService;
+  @Mock private ShowWriteService showWriteService;
+  @Mock private StatsRollupService statsRollupService;
+  @Mock private StatsColumnCache statsColumnCache;
+  @Mock private StatsTimeSeriesService statsTimeSeriesService;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    lenient().when(this.authUtil.getTokenDTO()).thenReturn(TokenDTO.builder().showToken(SHOW_TOKEN).build());
+    lenient().when(this.showRepository.updateByShowToken(eq(SHOW_TOKEN), any(Update.class))).thenReturn(true);
+    lenient().when(this.viewerPageService.store(eq(SHOW_TOKEN), any(), any()))
+        .thenAnswer(invocation -> ((Predicate<List<ViewerPage>>) invocation.getArgument(2)).test(invocation.getArgument(1)));
+  }
+
+  @Test
+  public void deleteStatsInRange_rebuildsTheRangeItDeleted() {
+    LocalDateTime start = LocalDateTime.of(2024, 12, 24, 18, 30);
+    LocalDateTime end = LocalDateTime.of(2024, 12, 24, 22, 15);
+    when(this.showRepository.deleteStatsBetween(SHOW_TOKEN, start, end))
+        .thenReturn(Optional.of(Map.of(StatType.JUKEBOX, 3L)));
+
+    this.graphQLMutationService.deleteStatsInRange(start.toInstant(ZoneOffset.UTC).toEpochMilli(), end.toInstant(ZoneOffset.UTC).toEpochMilli());
+
+    verify(this.statsRollupService).rebuildShowRange(SHOW_TOKEN, start, end);
+    verify(this.statsColumnCache).invalidate(SHOW_TOKEN);
+  }
+
+  @Test
+  public void deleteStatsInRange_countsFromTheTimeSeriesOnceTheShowIsTrimmed() {
+    when(this.showRepository.deleteStatsBetween(eq(SHOW_TOKEN), any(), any())).thenReturn(Optional.of(Map.of(StatType.JUKEBOX, 1L)));
+    when(this.statsTimeSeriesService.deleteBetween(eq(SHOW_TOKEN), any(), any())).thenReturn(Map.of(StatType.JUKEBOX, 4L));
+    when(this.statsTimeSeriesService.isEmbeddedStatsTrimmed()).thenReturn(true);
+
+    assertEquals(4, this.graphQLMutationService.deleteStatsInRange(0L, 3_600_000L).getTotal());
+  }
+
+  @Test
+  public void backfillStatsRollups_refusedOnceTheShowIsTrimmed() {
+    when(this.statsTimeSeriesService.isEmbeddedStatsTrimmed()).thenReturn(true);
+
+    assertFalse(this.graphQLMutationService.backfillStatsRollups());
+
+    verify(this.statsRollupService, never()).backfillAllShows();
+  }
+
+  @Test
+  public void updatePreferences_setsOnlyPreferences() {
+    when(this.showRepository.findFieldsByShowToken(SHOW_TOKEN, "preferences.viewerControlEnabled"))
+        .thenReturn(Optional.of(Show.builder().showToken(SHOW_TOKEN).preferences(Preference.builder().viewerControlEnabled(true).build()).build()));
+
+    assertTrue(this.graphQLMutationService.updatePreferences(Preference.builder().viewerControlEnabled(true).build()));
+
+    assertEquals(Set.of("preferences"), this.setFields(this.capturedUpdate()));
+    this.assertNoWholeDocumentAccess();
+  }
+
+  @Test
+  public void updatePages_setsOnlyPages() {
+    assertTrue(this.graphQLMutationService.updatePages(List.of()));
+
+    assertEquals(Set.of("pages"), this.setFields(this.capturedUpdate()));
+    this.assertNoWholeDocumentAccess();
+  }
+
+  @Test
+  public void updatePsaSequences_setsOnlyPsaSequences() {
+    assertTrue(this.graphQLMutationService.updatePsaSequences(List.of(PsaSequence.builder().name("psa").build())));
+
+    assertEquals(Set.of("psaSequences"), this.setFields(this.capturedUpdate()));
+    this.assertNoWholeDocumentAccess();
+  }
+
+  @Test
+  public void updateSequences_setsOnlySequences() {
+    assertTrue(this.graphQLMutationService.updateSequences(List.of(Sequence.builder().name("seq").build())));
+
+    assertEquals(Set.of("sequences"), this.setFields(this.capturedUpdate()));
+    this.assertNoWholeDocumentAccess();
+  }
+
+  @Test
+  public void updateSequenceGroups_setsOnlySequenceGroups() {
+    assertTrue(this.graphQLMutationService.updateSequenceGroups(List.of(SequenceGroup.builder().name("group").build())));
+
+    assertEquals(Set.of("sequenceGroups"), this.setFields(this.capturedUpdate()));
+    this.assertNoWholeDocumentAccess();
+  }
+
+  @Test
+  public void updateExpoPushToken_setsOnlyTheToken() {
+    assertTrue(this.graphQLMutationService.updateExpoPushToken("token"));
+
+    assertEquals(Set.of("userProfile.expoPushToken"), this.setFields(this.capturedUpdate()));
+    this.assertNoWholeDocumentAccess();
+  }
+
+  @Test
+  public void deleteNowPlaying_setsOnlyPlayingFields() {
+    assertTrue(this.graphQLMutationService.deleteNowPlaying());
+
+    assertEquals(Set.of("playingNow", "playingNext", "playingNextFromSchedule"), this.setFields(this.capturedUpdate()));
+    this.assertNoWholeDocumentAccess();
+  }
+
+  @Test
+  public void updatePages_unknownShow() {
+    when(this.showRepository.updateByShowToken(eq(SHOW_TOKEN), any(Update.class))).thenReturn(false);
+
+    RuntimeException exception = assertThrows(RuntimeException.class, () -> this.graphQLMutationService.updatePages(List.of()));
+    assertEquals("UNEXPECTED_ERROR", exception.getMessage());
+    verify(this.showRepository, never()).save(any());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void adminUpdateShow_appliesSentFieldsToTheShowAsReRead() {
+    Show current = Show.builder().id("id-1").showToken(SHOW_TOKEN).password("hash").showName("Old name").showSubdomain("old")
+        .playingNow("Sequence").votes(List.of(Vote.builder().build())).build();
+    when(this.showWriteService.modify(eq(SHOW_TOKEN), eq("adminUpdateShow"), any())).thenAnswer(invocation ->
+        Optional.of(((UnaryOperator<Show>) invocation.getArgument(2)).apply(current)));
+
+    assertTrue(this.graphQLMutationService.adminUpdateShow(Show.builder().showToken(SHOW_TOKEN).showName("New name")
+        .password("ignored").votes(List.of()).build()));
+
+    assertEquals("New name", current.getShowName());
+    // Left out, so cleared, as the whole-show save did.
+    assertNull(current.getShowSubdomain());
+    assertEquals("Sequence", current.getPlayingNow());
+    assertEquals("id-1", current.getId());
+    assertEquals("hash", current.getPassword());
+    assertEquals(1, current.getVotes().size());
+  }
+
+  @Test
+  public void purgeStatsForShow_pullsServerSideInsteadOfSaving() {
+    Stat stats = Stat.builder()
+        .page(new ArrayList<>(List.of(Stat.Page.builder().dateTime(LocalDateTime.now().minusYears(3)).build())))
+        .build();
+
+    this.graphQLMutationService.purgeStatsForShow(Show.builder().showToken(SHOW_TOKEN).stats(stats).build());
+
+    verify(this.showRepository).pullStatsBefore(eq(SHOW_TOKEN), any(LocalDateTime.class));
+    verify(this.showRepository, never()).save(any());
+  }
+
+  private Update capturedUpdate() {
+    ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+    verify(this.showRepository).updateByShowToken(eq(SHOW_TOKEN), update.capture());
+    Document document = update.getValue().getUpdateObject();
+    // Only $set may appear, and never on the stats arrays.
+    assertEquals(Set.of("$set"), document.keySet());
+    assertTrue(this.setFields(update.getValue()).stream().noneMatch(field -> field.startsWith("stats")));
+    return update.getValue();
+  }
+
+  private Set<String> setFields(Update update) {
+    return update.getUpdateObject().get("$set", Document.class).keySet();
+  }
+
+  private void assertNoWholeDocumentAccess() {
+    verify(this.showRepository, never()).save(any());
+    verify(this.showRepository, never()).findByShowToken(any());
+  }
+}
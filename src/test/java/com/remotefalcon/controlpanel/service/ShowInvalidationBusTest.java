@@ -0,0 +1,112 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.remotefalcon.controlpanel.repository.ShowChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ShowInvalidationBusTest {
+  private static final String SHOW_TOKEN = "abc123";
+
+  @Mock private ShowCache showCache;
+  @Mock private ShowCache otherShowCache;
+
+  @Test
+  public void receive_passesRevisionToCache() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    ShowInvalidationBus bus = new ShowInvalidationBus(mock(MongoTemplate.class), this.showCache, meterRegistry, true, 1024, 10);
+    when(this.showCache.onRemoteChange(SHOW_TOKEN, 7L)).thenReturn(true);
+
+    bus.receive(new Document("showToken", SHOW_TOKEN).append("revision", 7L).append("origin", "other").append("createdDate", new Date()));
+
+    verify(this.showCache).onRemoteChange(SHOW_TOKEN, 7L);
+    assertEquals(1.0, meterRegistry.counter("show.invalidation.received", "outcome", "evicted").count());
+  }
+
+  @Test
+  public void receive_withoutRevision() {
+    ShowInvalidationBus bus = new ShowInvalidationBus(mock(MongoTemplate.class), this.showCache, new SimpleMeterRegistry(), true, 1024, 10);
+
+    bus.receive(new Document("showToken", SHOW_TOKEN).append("origin", "other"));
+
+    verify(this.showCache).onRemoteChange(SHOW_TOKEN, null);
+  }
+
+  /**
+   * Two replicas sharing a single-node Mongo: a change published by one evicts the show
+   * on the other only. Skipped when Docker is not available.
+   */
+  @Test
+  public void publishedChangeReachesOtherReplica() {
+    assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is not available");
+    try (GenericContainer<?> mongo = new GenericContainer<>("mongo:7.0").withExposedPorts(27017)) {
+      mongo.start();
+      try (MongoClient client = MongoClients.create("mongodb://" + mongo.getHost() + ":" + mongo.getMappedPort(27017))) {
+        MongoTemplate mongoTemplate = new MongoTemplate(client, "remote-falcon-test");
+        ShowInvalidationBus publisher = new ShowInvalidationBus(mongoTemplate, this.showCache, new SimpleMeterRegistry(), true, 1024 * 1024, 10);
+        ShowInvalidationBus subscriber = new ShowInvalidationBus(mongoTemplate, this.otherShowCache, new SimpleMeterRegistry(), true, 1024 * 1024, 10);
+        publisher.start();
+        subscriber.start();
+        try {
+          publisher.onShowChanged(new ShowChangedEvent(SHOW_TOKEN, 3L));
+
+          verify(this.otherShowCache, timeout(5000)).onRemoteChange(SHOW_TOKEN, 3L);
+          verify(this.showCache, after(200).never()).onRemoteChange(any(), any());
+        } finally {
+          publisher.stop();
+          subscriber.stop();
+        }
+      }
+    }
+  }
+
+  /**
+   * A message whose ObjectId sorts before the last one seen (minted on a replica whose
+   * clock is behind) is still delivered. Skipped when Docker is not available.
+   */
+  @Test
+  public void messageWithEarlierIdIsNotSkipped() {
+    assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is not available");
+    try (GenericContainer<?> mongo = new GenericContainer<>("mongo:7.0").withExposedPorts(27017)) {
+      mongo.start();
+      try (MongoClient client = MongoClients.create("mongodb://" + mongo.getHost() + ":" + mongo.getMappedPort(27017))) {
+        MongoTemplate mongoTemplate = new MongoTemplate(client, "remote-falcon-test");
+        ShowInvalidationBus subscriber = new ShowInvalidationBus(mongoTemplate, this.showCache, new SimpleMeterRegistry(), true, 1024 * 1024, 10);
+        subscriber.start();
+        try {
+          long now = System.currentTimeMillis();
+          this.insert(mongoTemplate, new ObjectId(new Date(now + 60_000)), "ahead");
+          verify(this.showCache, timeout(5000)).onRemoteChange("ahead", null);
+
+          this.insert(mongoTemplate, new ObjectId(new Date(now - 60_000)), "behind");
+
+          verify(this.showCache, timeout(5000)).onRemoteChange("behind", null);
+        } finally {
+          subscriber.stop();
+        }
+      }
+    }
+  }
+
+  private void insert(MongoTemplate mongoTemplate, ObjectId id, String showToken) {
+    mongoTemplate.getCollection(ShowInvalidationBus.COLLECTION)
+        .insertOne(new Document("_id", id).append("showToken", showToken).append("origin", "other").append("createdDate", new Date()));
+  }
+}
@@ -0,0 +1,117 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.remotefalcon.library.documents.Show;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ShowTouchBufferTest {
+  @Mock private MongoTemplate mongoTemplate;
+  @Mock private BulkOperations bulkOperations;
+
+  private SimpleMeterRegistry meterRegistry;
+  private ShowTouchBuffer showTouchBuffer;
+
+  @BeforeEach
+  public void setUp() {
+    this.meterRegistry = new SimpleMeterRegistry();
+    this.showTouchBuffer = new ShowTouchBuffer(this.mongoTemplate, this.meterRegistry, true);
+    when(this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Show.class)).thenReturn(this.bulkOperations);
+  }
+
+  @Test
+  public void flush_coalescesTouchesPerShow() {
+    LocalDateTime now = LocalDateTime.now();
+    this.showTouchBuffer.touchLastLogin("show1", now.minusMinutes(1));
+    this.showTouchBuffer.touchLastLogin("show1", now);
+    this.showTouchBuffer.touchLastLogin("show2", now);
+
+    this.showTouchBuffer.flush();
+
+    verify(this.bulkOperations, times(2)).updateOne(any(Query.class), any(Update.class));
+    assertEquals(2.0, this.meterRegistry.counter("show.touch.flushed").count());
+  }
+
+  @Test
+  public void flush_requeuesOnlyTheFailedTouches() {
+    this.showTouchBuffer.touchLastLogin("show1", LocalDateTime.now());
+    this.showTouchBuffer.touchLastLogin("show2", LocalDateTime.now());
+    this.showTouchBuffer.touchLastLogin("show3", LocalDateTime.now());
+    ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+    when(this.bulkOperations.execute()).thenThrow(this.bulkFailure(1)).thenReturn(null);
+
+    this.showTouchBuffer.flush();
+    verify(this.bulkOperations, times(3)).updateOne(queries.capture(), any(Update.class));
+    String failedShow = queries.getAllValues().get(1).getQueryObject().getString("showToken");
+    clearInvocations(this.bulkOperations);
+
+    this.showTouchBuffer.flush();
+
+    verify(this.bulkOperations, times(1)).updateOne(queries.capture(), any(Update.class));
+    assertEquals(failedShow, queries.getValue().getQueryObject().getString("showToken"));
+    assertEquals(1.0, this.meterRegistry.counter("show.touch.failed").count());
+    assertEquals(3.0, this.meterRegistry.counter("show.touch.flushed").count());
+  }
+
+  @Test
+  public void flush_requeuesEverythingWhenTheFailureNamesNoUpdate() {
+    this.showTouchBuffer.touchLastLogin("show1", LocalDateTime.now());
+    this.showTouchBuffer.touchLastLogin("show2", LocalDateTime.now());
+    when(this.bulkOperations.execute()).thenThrow(new RuntimeException("timeout")).thenReturn(null);
+
+    this.showTouchBuffer.flush();
+    clearInvocations(this.bulkOperations);
+    this.showTouchBuffer.flush();
+
+    verify(this.bulkOperations, times(2)).updateOne(any(Query.class), any(Update.class));
+  }
+
+  @Test
+  public void flush_signInDefaultsMissingStatsAndTracesItsErrorBackToTheShow() {
+    this.showTouchBuffer.touchSignIn("show1", LocalDateTime.now(), LocalDateTime.now().plusYears(2), "1.2.3.4");
+    this.showTouchBuffer.touchLastLogin("show2", LocalDateTime.now());
+    ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+    when(this.bulkOperations.execute()).thenThrow(this.bulkFailure(1)).thenReturn(null);
+
+    this.showTouchBuffer.flush();
+    verify(this.bulkOperations, times(3)).updateOne(queries.capture(), any(Update.class));
+    assertTrue(queries.getAllValues().stream().anyMatch(query -> query.getQueryObject().containsKey("stats")));
+    clearInvocations(this.bulkOperations);
+
+    // The stats default failed, so show1's sign-in is written again, stats default included.
+    this.showTouchBuffer.flush();
+
+    verify(this.bulkOperations, times(2)).updateOne(queries.capture(), any(Update.class));
+    assertTrue(queries.getAllValues().subList(3, 5).stream()
+        .allMatch(query -> "show1".equals(query.getQueryObject().getString("showToken"))));
+  }
+
+  private BulkOperationException bulkFailure(int index) {
+    BulkWriteError error = new BulkWriteError(11000, "failed", new BsonDocument(), index);
+    return new BulkOperationException("failed", new MongoBulkWriteException(BulkWriteResult.unacknowledged(), List.of(error),
+        null, new ServerAddress(), Set.of()));
+  }
+}
@@ -0,0 +1,79 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.remotefalcon.controlpanel.document.StatsRetentionCheckpoint;
+import com.remotefalcon.controlpanel.repository.ShowRepository;
+import com.remotefalcon.library.documents.Show;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StatsRetentionServiceTest {
+  private static final long FENCING_TOKEN = 7;
+
+  @Mock private ShowRepository showRepository;
+  @Mock private StatsRollupService statsRollupService;
+  @Mock private StatsColumnCache statsColumnCache;
+  @Mock private MongoTemplate mongoTemplate;
+  @Mock private JobLeaseService.Lease lease;
+
+  private StatsRetentionService statsRetentionService;
+
+  @BeforeEach
+  public void setUp() {
+    this.statsRetentionService = new StatsRetentionService(this.showRepository, this.statsRollupService, this.statsColumnCache,
+        this.mongoTemplate, new SimpleMeterRegistry(), 100, 50, 5, 100_000, 20);
+    lenient().when(this.lease.isHeld()).thenReturn(true);
+    lenient().when(this.lease.getFencingToken()).thenReturn(FENCING_TOKEN);
+  }
+
+  @Test
+  public void sweepIncrementally_writesCheckpointFencedByTheLease() {
+    when(this.mongoTemplate.find(any(Query.class), eq(Document.class), any()))
+        .thenReturn(List.of(this.show()))
+        .thenReturn(List.of());
+
+    this.statsRetentionService.sweepIncrementally(this.lease);
+
+    ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+    ArgumentCaptor<StatsRetentionCheckpoint> checkpoint = ArgumentCaptor.forClass(StatsRetentionCheckpoint.class);
+    verify(this.mongoTemplate, times(2)).findAndReplace(query.capture(), checkpoint.capture(), any(FindAndReplaceOptions.class));
+    assertTrue(query.getValue().getQueryObject().toString().contains("fencingToken"));
+    assertEquals(FENCING_TOKEN, checkpoint.getValue().getFencingToken());
+    assertNotNull(checkpoint.getValue().getCompletedAt());
+    verify(this.mongoTemplate, never()).save(any());
+  }
+
+  @Test
+  public void sweepIncrementally_stopsWhenANewerHolderWroteTheCheckpoint() {
+    when(this.mongoTemplate.find(any(Query.class), eq(Document.class), any())).thenReturn(List.of(this.show()));
+    when(this.mongoTemplate.findAndReplace(any(Query.class), any(StatsRetentionCheckpoint.class), any(FindAndReplaceOptions.class)))
+        .thenThrow(new DuplicateKeyException("newer fencing token"));
+
+    this.statsRetentionService.sweepIncrementally(this.lease);
+
+    verify(this.mongoTemplate, times(1)).find(any(Query.class), eq(Document.class), any());
+    verify(this.statsRollupService, never()).deleteAllRollupsBefore(any());
+  }
+
+  private Document show() {
+    return new Document("_id", new ObjectId()).append("showToken", "abc123");
+  }
+}
@@ -0,0 +1,176 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.remotefalcon.controlpanel.document.StatsRollup;
+import com.remotefalcon.controlpanel.document.StatsRollupWatermark;
+import com.remotefalcon.controlpanel.repository.ShowRepository;
+import com.remotefalcon.controlpanel.repository.StatsRollupRepository;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.Stat;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StatsRollupServiceTest {
+  private static final String SHOW_TOKEN = "abc123";
+
+  @Mock private MongoTemplate mongoTemplate;
+  @Mock private StatsRollupRepository statsRollupRepository;
+  @Mock private ShowRepository showRepository;
+  @Mock private JobLeaseService jobLeaseService;
+  @Mock private JobLeaseService.Lease lease;
+  @Mock private BulkOperations bulkOperations;
+
+  private StatsRollupService statsRollupService;
+  private LocalDateTime rolledUpTo;
+
+  @BeforeEach
+  public void setUp() {
+    this.statsRollupService = new StatsRollupService(this.mongoTemplate, this.statsRollupRepository, this.showRepository, this.jobLeaseService);
+    this.rolledUpTo = LocalDateTime.now(ZoneOffset.UTC).minusMinutes(10).truncatedTo(ChronoUnit.SECONDS);
+    lenient().when(this.lease.isHeld()).thenReturn(true);
+    lenient().when(this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StatsRollup.class)).thenReturn(this.bulkOperations);
+    lenient().when(this.mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(StatsRollupWatermark.class)))
+        .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+  }
+
+  @Test
+  public void rollupNewStats_advancesWatermarkOnlyAfterBucketsAreWritten() {
+    this.givenWatermark(StatsRollupWatermark.builder().id("stats").rolledUpTo(this.rolledUpTo).build());
+    this.givenWindow(this.showWithJukebox(this.rolledUpTo.plusMinutes(1)));
+
+    this.statsRollupService.rollupNewStats(this.lease);
+
+    InOrder inOrder = inOrder(this.bulkOperations, this.mongoTemplate);
+    inOrder.verify(this.bulkOperations).execute();
+    inOrder.verify(this.mongoTemplate).updateFirst(argThat(query -> query.getQueryObject().containsKey("rolledUpTo")),
+        argThat(update -> update.getUpdateObject().get("$set", Document.class).containsKey("rolledUpTo")), eq(StatsRollupWatermark.class));
+  }
+
+  @Test
+  public void rollupNewStats_setsWholeHourCountsSoAReplayIsHarmless() {
+    this.givenWatermark(StatsRollupWatermark.builder().id("stats").rolledUpTo(this.rolledUpTo).build());
+    LocalDateTime hourStart = this.rolledUpTo.truncatedTo(ChronoUnit.HOURS);
+    // One stat already counted by an earlier window, one new.
+    this.givenWindow(this.showWithJukebox(hourStart.plusSeconds(1), this.rolledUpTo.plusMinutes(1)));
+
+    this.statsRollupService.rollupNewStats(this.lease);
+
+    ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+    verify(this.bulkOperations, atLeastOnce()).upsert(any(Query.class), update.capture());
+    Document written = update.getAllValues().get(0).getUpdateObject();
+    assertFalse(written.containsKey("$inc"));
+    int total = update.getAllValues().stream()
+        .mapToInt(value -> value.getUpdateObject().get("$set", Document.class).getInteger("total"))
+        .sum();
+    assertEquals(2, total);
+  }
+
+  @Test
+  public void rollupNewStats_leaseLost_leavesWatermark() {
+    this.givenWatermark(StatsRollupWatermark.builder().id("stats").rolledUpTo(this.rolledUpTo).build());
+    this.givenWindow(this.showWithJukebox(this.rolledUpTo.plusMinutes(1)));
+    when(this.lease.isHeld()).thenReturn(false);
+
+    this.statsRollupService.rollupNewStats(this.lease);
+
+    verify(this.bulkOperations, never()).execute();
+    verify(this.mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(StatsRollupWatermark.class));
+  }
+
+  @Test
+  public void rollupNewStats_failedShowIsQueuedForRebuild() {
+    this.givenWatermark(StatsRollupWatermark.builder().id("stats").rolledUpTo(this.rolledUpTo).build());
+    this.givenWindow(this.showWithJukebox(this.rolledUpTo.plusMinutes(1)));
+    when(this.bulkOperations.execute()).thenThrow(new RuntimeException("write failed"));
+
+    this.statsRollupService.rollupNewStats(this.lease);
+
+    ArgumentCaptor<Update> queued = ArgumentCaptor.forClass(Update.class);
+    verify(this.mongoTemplate).upsert(any(Query.class), queued.capture(), eq(StatsRollupWatermark.class));
+    assertTrue(queued.getValue().getUpdateObject().containsKey("$push"));
+  }
+
+  @Test
+  public void rollupNewStats_withoutWatermark_setsItAfterTheBackfill() {
+    this.givenWatermark(null);
+    when(this.mongoTemplate.stream(any(Query.class), eq(Show.class)))
+        .thenReturn(Stream.of(this.showWithJukebox(this.rolledUpTo)));
+
+    this.statsRollupService.rollupNewStats(this.lease);
+
+    InOrder inOrder = inOrder(this.statsRollupRepository, this.bulkOperations, this.mongoTemplate);
+    inOrder.verify(this.statsRollupRepository).deleteAll();
+    inOrder.verify(this.bulkOperations).execute();
+    inOrder.verify(this.mongoTemplate).upsert(any(Query.class),
+        argThat(update -> update.getUpdateObject().get("$set", Document.class).containsKey("rolledUpTo")), eq(StatsRollupWatermark.class));
+  }
+
+  @Test
+  public void rebuildShowRange_leaseBusy_staysQueued() {
+    when(this.jobLeaseService.runExclusively(anyString(), any(), any(), any())).thenReturn(false);
+
+    this.statsRollupService.rebuildShowRange(SHOW_TOKEN, this.rolledUpTo.minusHours(2), this.rolledUpTo.minusHours(1));
+
+    verify(this.mongoTemplate).upsert(any(Query.class), argThat(update -> update.getUpdateObject().containsKey("$push")), eq(StatsRollupWatermark.class));
+    verify(this.statsRollupRepository, never()).deleteByShowTokenAndBucketGreaterThanEqualAndBucketLessThan(any(), any(), any());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void rebuildShowRange_rebuildsAndDequeuesUnderTheLease() {
+    StatsRollupWatermark.PendingRange range = StatsRollupWatermark.PendingRange.builder()
+        .rangeId("range-1").showToken(SHOW_TOKEN).from(this.rolledUpTo.minusHours(2)).to(this.rolledUpTo.minusHours(1)).build();
+    this.givenWatermark(StatsRollupWatermark.builder().id("stats").rolledUpTo(this.rolledUpTo).pendingRanges(List.of(range)).build());
+    when(this.jobLeaseService.runExclusively(anyString(), any(), any(), any())).thenAnswer(invocation -> {
+      ((Consumer<JobLeaseService.Lease>) invocation.getArgument(3)).accept(this.lease);
+      return true;
+    });
+
+    this.statsRollupService.rebuildShowRange(SHOW_TOKEN, range.getFrom(), range.getTo());
+
+    verify(this.statsRollupRepository).deleteByShowTokenAndBucketGreaterThanEqualAndBucketLessThan(eq(SHOW_TOKEN), any(), any());
+    verify(this.mongoTemplate).updateFirst(any(Query.class),
+        argThat(update -> update.getUpdateObject().containsKey("$pull")), eq(StatsRollupWatermark.class));
+  }
+
+  private void givenWatermark(StatsRollupWatermark watermark) {
+    when(this.mongoTemplate.findById("stats", StatsRollupWatermark.class)).thenReturn(watermark);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void givenWindow(Show... shows) {
+    when(this.mongoTemplate.aggregateStream(any(TypedAggregation.class), eq(Show.class))).thenReturn(Stream.of(shows));
+  }
+
+  private Show showWithJukebox(LocalDateTime... dateTimes) {
+    List<Stat.Jukebox> jukebox = Stream.of(dateTimes)
+        .map(dateTime -> Stat.Jukebox.builder().name("Sequence").dateTime(dateTime).build())
+        .toList();
+    return Show.builder().showToken(SHOW_TOKEN).stats(Stat.builder().jukebox(jukebox).build()).build();
+  }
+}
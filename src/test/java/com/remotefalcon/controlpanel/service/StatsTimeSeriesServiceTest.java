@@ -0,0 +1,186 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.mongodb.client.model.TimeSeriesGranularity;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import com.remotefalcon.controlpanel.document.StatsEvent;
+import com.remotefalcon.controlpanel.document.StatsTimeSeriesState;
+import com.remotefalcon.controlpanel.enums.DashboardStatsSource;
+import com.remotefalcon.controlpanel.enums.StatType;
+import com.remotefalcon.controlpanel.repository.ShowRepository;
+import com.remotefalcon.controlpanel.repository.StatsEventRepository;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.Stat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StatsTimeSeriesServiceTest {
+  private static final String SHOW_TOKEN = "abc123";
+
+  @Mock private MongoTemplate mongoTemplate;
+  @Mock private StatsEventRepository statsEventRepository;
+  @Mock private ShowRepository showRepository;
+  @Mock private StatsRollupService statsRollupService;
+  @Mock private StatsColumnCache statsColumnCache;
+  @Mock private JobLeaseService jobLeaseService;
+  @Mock private JobLeaseService.Lease lease;
+
+  private LocalDateTime copiedTo;
+
+  @BeforeEach
+  public void setUp() {
+    this.copiedTo = LocalDateTime.now(ZoneOffset.UTC).minusMinutes(10).truncatedTo(ChronoUnit.SECONDS);
+    lenient().when(this.lease.isHeld()).thenReturn(true);
+    lenient().when(this.mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(StatsTimeSeriesState.class)))
+        .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+  }
+
+  @Test
+  public void copyNewStats_advancesWatermarkOnlyAfterTheWindowIsCopied() {
+    this.givenState(StatsTimeSeriesState.builder().id("stats").copiedTo(this.copiedTo).build());
+    this.givenWindow(this.showWithJukebox(this.copiedTo.plusMinutes(1)));
+
+    this.service(DashboardStatsSource.TIME_SERIES).copyNewStats(this.lease);
+
+    InOrder inOrder = inOrder(this.mongoTemplate);
+    inOrder.verify(this.mongoTemplate).insert(anyList(), eq(StatsEvent.class));
+    ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+    inOrder.verify(this.mongoTemplate).updateFirst(argThat(query -> query.getQueryObject().containsKey("copiedTo")),
+        update.capture(), eq(StatsTimeSeriesState.class));
+    assertTrue(update.getValue().getUpdateObject().get("$set", Document.class).containsKey("copiedTo"));
+    assertFalse(update.getValue().getUpdateObject().containsKey("$push"));
+  }
+
+  @Test
+  public void copyNewStats_failedShowIsQueuedWithTheWatermarkMove() {
+    this.givenState(StatsTimeSeriesState.builder().id("stats").copiedTo(this.copiedTo).build());
+    this.givenWindow(this.showWithJukebox(this.copiedTo.plusMinutes(1)));
+    doThrow(new RuntimeException("insert failed")).when(this.mongoTemplate).insert(anyList(), eq(StatsEvent.class));
+
+    this.service(DashboardStatsSource.TIME_SERIES).copyNewStats(this.lease);
+
+    ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+    verify(this.mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(StatsTimeSeriesState.class));
+    Document written = update.getValue().getUpdateObject();
+    assertTrue(written.get("$set", Document.class).containsKey("copiedTo"));
+    assertTrue(written.get("$push", Document.class).containsKey("pendingWindows"));
+  }
+
+  @Test
+  public void copyNewStats_leaseLost_leavesWatermarkAndTheNextRunStartsOver() {
+    this.givenState(StatsTimeSeriesState.builder().id("stats").copiedTo(this.copiedTo).build());
+    this.givenWindow(this.showWithJukebox(this.copiedTo.plusMinutes(1)));
+    when(this.lease.isHeld()).thenReturn(true, false);
+
+    this.service(DashboardStatsSource.TIME_SERIES).copyNewStats(this.lease);
+
+    verify(this.mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(StatsTimeSeriesState.class));
+    // Whatever a stopped run inserted past the watermark is dropped before the window is copied.
+    InOrder inOrder = inOrder(this.mongoTemplate);
+    inOrder.verify(this.mongoTemplate).remove(argThat((Query query) -> query.getQueryObject().containsKey("dateTime")
+        && !query.getQueryObject().containsKey("meta.showToken")), eq(StatsEvent.class));
+    inOrder.verify(this.mongoTemplate).aggregateStream(any(TypedAggregation.class), eq(Show.class));
+  }
+
+  @Test
+  public void copyNewStats_copiesPendingWindowAgainAndDequeuesIt() {
+    StatsTimeSeriesState.PendingWindow window = StatsTimeSeriesState.PendingWindow.builder()
+        .windowId("window-1").showToken(SHOW_TOKEN).after(this.copiedTo.minusMinutes(5)).upTo(this.copiedTo).build();
+    this.givenState(StatsTimeSeriesState.builder().id("stats").copiedTo(this.copiedTo).pendingWindows(List.of(window)).build());
+    when(this.showRepository.findStatsByShowToken(eq(SHOW_TOKEN), eq(window.getAfter()), any()))
+        .thenReturn(this.showWithJukebox(window.getUpTo()));
+    this.givenWindow();
+
+    this.service(DashboardStatsSource.TIME_SERIES).copyNewStats(this.lease);
+
+    InOrder inOrder = inOrder(this.mongoTemplate);
+    inOrder.verify(this.mongoTemplate).remove(argThat((Query query) -> query.getQueryObject().containsKey("meta.showToken")), eq(StatsEvent.class));
+    inOrder.verify(this.mongoTemplate).insert(anyList(), eq(StatsEvent.class));
+    inOrder.verify(this.mongoTemplate).updateFirst(any(Query.class),
+        argThat(update -> update.getUpdateObject().containsKey("$pull")), eq(StatsTimeSeriesState.class));
+  }
+
+  @Test
+  public void trimEmbeddedStats_refusedWhileTheDashboardReadsTheEmbeddedArrays() {
+    this.givenState(StatsTimeSeriesState.builder().id("stats").copiedTo(this.copiedTo).migratedAt(this.copiedTo).build());
+
+    assertFalse(this.service(DashboardStatsSource.AGGREGATION).trimEmbeddedStats());
+
+    verify(this.showRepository, never()).pullStatsBefore(any(String.class), any());
+  }
+
+  @Test
+  public void trimEmbeddedStats_keepsPendingWindowsInTheShow() {
+    LocalDateTime pendingAfter = this.copiedTo.minusDays(5);
+    this.givenState(StatsTimeSeriesState.builder().id("stats").copiedTo(this.copiedTo).migratedAt(this.copiedTo)
+        .pendingWindows(List.of(StatsTimeSeriesState.PendingWindow.builder()
+            .windowId("window-1").showToken(SHOW_TOKEN).after(pendingAfter).upTo(pendingAfter.plusMinutes(1)).build()))
+        .build());
+
+    StatsTimeSeriesService service = this.service(DashboardStatsSource.TIME_SERIES);
+    assertTrue(service.trimEmbeddedStats());
+
+    verify(this.showRepository).pullStatsBefore((String) null, pendingAfter);
+    verify(this.mongoTemplate).updateFirst(any(Query.class),
+        argThat(update -> update.getUpdateObject().get("$set", Document.class).containsKey("embeddedTrimmedAt")), eq(StatsTimeSeriesState.class));
+    assertTrue(service.isEmbeddedStatsTrimmed());
+  }
+
+  @Test
+  public void deleteBetween_countsTheEventsRemovedPerType() {
+    when(this.mongoTemplate.remove(any(Query.class), eq(StatsEvent.class))).thenReturn(DeleteResult.acknowledged(2));
+    LocalDateTime end = LocalDateTime.now(ZoneOffset.UTC);
+
+    Map<StatType, Long> removed = this.service(DashboardStatsSource.TIME_SERIES).deleteBetween(SHOW_TOKEN, end.minusHours(1), end);
+
+    assertEquals(StatType.values().length, removed.size());
+    removed.values().forEach(count -> assertEquals(2L, count));
+  }
+
+  private StatsTimeSeriesService service(DashboardStatsSource dashboardStatsSource) {
+    return new StatsTimeSeriesService(this.mongoTemplate, this.statsEventRepository, this.showRepository, this.statsRollupService,
+        this.statsColumnCache, this.jobLeaseService, new SimpleMeterRegistry(), true, 548, TimeSeriesGranularity.HOURS, 2,
+        dashboardStatsSource);
+  }
+
+  private void givenState(StatsTimeSeriesState state) {
+    when(this.mongoTemplate.findById("stats", StatsTimeSeriesState.class)).thenReturn(state);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void givenWindow(Show... shows) {
+    when(this.mongoTemplate.aggregateStream(any(TypedAggregation.class), eq(Show.class))).thenReturn(Stream.of(shows));
+  }
+
+  private Show showWithJukebox(LocalDateTime... dateTimes) {
+    List<Stat.Jukebox> jukebox = Stream.of(dateTimes)
+        .map(dateTime -> Stat.Jukebox.builder().name("Sequence").dateTime(dateTime).build())
+        .toList();
+    return Show.builder().showToken(SHOW_TOKEN).stats(Stat.builder().jukebox(jukebox).build()).build();
+  }
+}
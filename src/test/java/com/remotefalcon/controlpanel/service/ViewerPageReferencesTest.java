@@ -0,0 +1,234 @@
+package com.remotefalcon.controlpanel.service;
+
+import com.google.common.hash.Hashing;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import com.remotefalcon.controlpanel.document.ViewerPageBody;
+import com.remotefalcon.controlpanel.document.ViewerPageContent;
+import com.remotefalcon.controlpanel.repository.ViewerPageBodyRepository;
+import com.remotefalcon.controlpanel.repository.ViewerPageContentRepository;
+import com.remotefalcon.library.documents.Show;
+import com.remotefalcon.library.models.ViewerPage;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Reference handling of {@link ViewerPageService}: when page content is taken and let go
+ * relative to the show write, and how the counts are reconciled.
+ */
+@ExtendWith(MockitoExtension.class)
+public class ViewerPageReferencesTest {
+  private static final String SHOW_TOKEN = "abc123";
+  private static final String OLD_HASH = "old-hash";
+
+  @Mock private ViewerPageBodyRepository viewerPageBodyRepository;
+  @Mock private ViewerPageContentRepository viewerPageContentRepository;
+  @Mock private MongoTemplate mongoTemplate;
+  @Mock private ShowWriteService showWriteService;
+  @Mock private Predicate<List<ViewerPage>> writeShow;
+  @Mock private BulkOperations bulkOperations;
+
+  private ViewerPageService viewerPageService;
+  private ViewerPageBody homeBody;
+  private ViewerPageBody aboutBody;
+
+  @BeforeEach
+  public void setUp() {
+    this.viewerPageService = new ViewerPageService(this.viewerPageBodyRepository, this.viewerPageContentRepository,
+        this.mongoTemplate, this.showWriteService, true);
+    this.homeBody = ViewerPageBody.builder().showToken(SHOW_TOKEN).name("home").hash(OLD_HASH).build();
+    this.aboutBody = ViewerPageBody.builder().showToken(SHOW_TOKEN).name("about").hash("about-hash").build();
+    lenient().when(this.viewerPageBodyRepository.findByShowToken(SHOW_TOKEN)).thenReturn(List.of(this.homeBody, this.aboutBody));
+    lenient().when(this.mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(ViewerPageBody.class)))
+        .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+    lenient().when(this.mongoTemplate.remove(any(Query.class), eq(ViewerPageBody.class))).thenReturn(DeleteResult.acknowledged(1));
+  }
+
+  @Test
+  public void store_releasesOldContentOnlyAfterTheShowIsWritten() {
+    when(this.writeShow.test(any())).thenReturn(true);
+
+    assertTrue(this.viewerPageService.store(SHOW_TOKEN, List.of(this.page("home", "<p>new</p>")), this.writeShow));
+
+    InOrder inOrder = inOrder(this.mongoTemplate, this.writeShow);
+    inOrder.verify(this.mongoTemplate).upsert(any(Query.class), this.incrementsRefCount(1), eq(ViewerPageContent.class));
+    inOrder.verify(this.mongoTemplate).updateFirst(this.bodyWithHash(OLD_HASH), any(Update.class), eq(ViewerPageBody.class));
+    inOrder.verify(this.writeShow).test(argThat(pages -> pages.size() == 1 && pages.get(0).getHtml() == null));
+    inOrder.verify(this.mongoTemplate).updateFirst(this.byHash(OLD_HASH), this.incrementsRefCount(-1), eq(ViewerPageContent.class));
+    inOrder.verify(this.mongoTemplate).remove(this.bodyWithHash("about-hash"), eq(ViewerPageBody.class));
+    inOrder.verify(this.mongoTemplate).updateFirst(this.byHash("about-hash"), this.incrementsRefCount(-1), eq(ViewerPageContent.class));
+  }
+
+  @Test
+  public void store_pageRepointedConcurrently_retriesAndReleasesOnlyWhatItReplaced() {
+    when(this.writeShow.test(any())).thenReturn(true);
+    when(this.mongoTemplate.updateFirst(this.bodyWithHash(OLD_HASH), any(Update.class), eq(ViewerPageBody.class)))
+        .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+    when(this.mongoTemplate.findOne(any(Query.class), eq(ViewerPageBody.class)))
+        .thenReturn(ViewerPageBody.builder().showToken(SHOW_TOKEN).name("home").hash("other-hash").build());
+
+    assertTrue(this.viewerPageService.store(SHOW_TOKEN, List.of(this.page("home", "<p>new</p>"), this.page("about", null)),
+        this.writeShow));
+
+    verify(this.mongoTemplate).updateFirst(this.bodyWithHash("other-hash"), any(Update.class), eq(ViewerPageBody.class));
+    verify(this.mongoTemplate).updateFirst(this.byHash("other-hash"), this.incrementsRefCount(-1), eq(ViewerPageContent.class));
+    verify(this.mongoTemplate, never()).updateFirst(this.byHash(OLD_HASH), any(Update.class), eq(ViewerPageContent.class));
+  }
+
+  @Test
+  public void store_newPageCreatedConcurrently_letsGoOfItsOwnReference() {
+    when(this.viewerPageBodyRepository.findByShowToken(SHOW_TOKEN)).thenReturn(List.of());
+    when(this.writeShow.test(any())).thenReturn(true);
+    when(this.mongoTemplate.insert(any(ViewerPageBody.class))).thenThrow(new DuplicateKeyException("idx_showToken_name"));
+    String hash = Hashing.sha256().hashString("<p>new</p>", StandardCharsets.UTF_8).toString();
+    when(this.mongoTemplate.findOne(any(Query.class), eq(ViewerPageBody.class)))
+        .thenReturn(ViewerPageBody.builder().showToken(SHOW_TOKEN).name("home").hash(hash).build());
+
+    assertTrue(this.viewerPageService.store(SHOW_TOKEN, List.of(this.page("home", "<p>new</p>")), this.writeShow));
+
+    // The other store's body holds its own reference; this store's is let go of once.
+    verify(this.mongoTemplate).updateFirst(this.byHash(hash), this.incrementsRefCount(-1), eq(ViewerPageContent.class));
+    verify(this.mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(ViewerPageBody.class));
+  }
+
+  @Test
+  public void store_showNotWritten_putsReferencesBack() {
+    when(this.writeShow.test(any())).thenReturn(false);
+
+    assertFalse(this.viewerPageService.store(SHOW_TOKEN, List.of(this.page("home", "<p>new</p>")), this.writeShow));
+
+    this.verifyRolledBack();
+  }
+
+  @Test
+  public void store_showWriteFails_putsReferencesBack() {
+    when(this.writeShow.test(any())).thenThrow(new RuntimeException("write failed"));
+
+    assertThrows(RuntimeException.class,
+        () -> this.viewerPageService.store(SHOW_TOKEN, List.of(this.page("home", "<p>new</p>")), this.writeShow));
+
+    this.verifyRolledBack();
+  }
+
+  @Test
+  public void acquire_recordsWhenContentWasTaken() {
+    when(this.writeShow.test(any())).thenReturn(true);
+
+    this.viewerPageService.store(SHOW_TOKEN, List.of(this.page("home", "<p>new</p>")), this.writeShow);
+
+    verify(this.mongoTemplate).upsert(any(Query.class),
+        argThat(update -> update.getUpdateObject().get("$set", Document.class).containsKey("lastAcquired")), eq(ViewerPageContent.class));
+  }
+
+  @Test
+  public void reconcile_onlyConsidersContentNotTakenDuringTheTally() {
+    this.givenTally();
+    this.givenContents();
+
+    this.viewerPageService.migrateAllShows();
+
+    ArgumentCaptor<Query> contents = ArgumentCaptor.forClass(Query.class);
+    verify(this.mongoTemplate).stream(contents.capture(), eq(ViewerPageContent.class));
+    assertTrue(contents.getValue().getQueryObject().toString().contains("lastAcquired"));
+  }
+
+  @Test
+  public void reconcile_deletesUnreferencedContentOnlyIfUnchanged() {
+    this.givenTally();
+    this.givenContents(ViewerPageContent.builder().hash("orphan").refCount(1).build());
+
+    this.viewerPageService.migrateAllShows();
+
+    ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+    verify(this.bulkOperations).remove(removed.capture());
+    String filter = removed.getValue().getQueryObject().toString();
+    assertTrue(filter.contains("orphan"));
+    assertTrue(filter.contains("refCount"));
+    assertTrue(filter.contains("lastAcquired"));
+    verify(this.bulkOperations).execute();
+  }
+
+  @Test
+  public void reconcile_correctsCountsDownAndUp() {
+    this.givenContents(ViewerPageContent.builder().hash("leaked").refCount(3).build(),
+        ViewerPageContent.builder().hash("missed").refCount(1).build(),
+        ViewerPageContent.builder().hash("exact").refCount(0).build());
+    this.givenTally(new Document("_id", "leaked").append("references", 1), new Document("_id", "missed").append("references", 2),
+        new Document("_id", "exact").append("references", 0));
+
+    this.viewerPageService.migrateAllShows();
+
+    verify(this.bulkOperations).updateOne(argThat((Query query) -> query.getQueryObject().toString().contains("leaked")),
+        argThat((Update update) -> update.getUpdateObject().get("$set", Document.class).getLong("refCount") == 1L));
+    verify(this.bulkOperations).updateOne(argThat((Query query) -> query.getQueryObject().toString().contains("missed")),
+        argThat((Update update) -> update.getUpdateObject().get("$set", Document.class).getLong("refCount") == 2L));
+    verify(this.bulkOperations, never()).remove(any(Query.class));
+  }
+
+  private void givenTally(Document... references) {
+    lenient().when(this.mongoTemplate.stream(any(Query.class), eq(Show.class))).thenReturn(Stream.empty());
+    lenient().when(this.mongoTemplate.stream(any(Query.class), eq(Document.class), anyString())).thenReturn(Stream.empty());
+    lenient().when(this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ViewerPageContent.class)).thenReturn(this.bulkOperations);
+    when(this.mongoTemplate.aggregate(any(Aggregation.class), eq(ViewerPageBody.class), eq(Document.class)))
+        .thenReturn(new AggregationResults<>(List.of(references), new Document()));
+  }
+
+  private void givenContents(ViewerPageContent... contents) {
+    when(this.mongoTemplate.stream(any(Query.class), eq(ViewerPageContent.class))).thenReturn(Stream.of(contents));
+  }
+
+  private void verifyRolledBack() {
+    verify(this.mongoTemplate).updateFirst(any(Query.class),
+        argThat(update -> update.getUpdateObject().get("$set") instanceof Document set && OLD_HASH.equals(set.getString("hash"))),
+        eq(ViewerPageBody.class));
+    // The new content is let go of, the old content and the dropped page are kept.
+    verify(this.mongoTemplate).updateFirst(argThat(query -> !OLD_HASH.equals(query.getQueryObject().get("_id"))),
+        this.incrementsRefCount(-1), eq(ViewerPageContent.class));
+    verify(this.mongoTemplate, never()).updateFirst(this.byHash(OLD_HASH), any(Update.class), eq(ViewerPageContent.class));
+    verify(this.mongoTemplate, never()).remove(any(Query.class), eq(ViewerPageBody.class));
+  }
+
+  private ViewerPage page(String name, String html) {
+    return ViewerPage.builder().name(name).active(true).html(html).build();
+  }
+
+  private Query bodyWithHash(String hash) {
+    return argThat(query -> hash.equals(query.getQueryObject().get("hash")));
+  }
+
+  private Query byHash(String hash) {
+    return argThat(query -> hash.equals(query.getQueryObject().get("_id")));
+  }
+
+  private Update incrementsRefCount(int by) {
+    return argThat(update -> {
+      Document inc = update.getUpdateObject().get("$inc", Document.class);
+      return inc != null && ((Number) inc.get("refCount")).intValue() == by;
+    });
+  }
+}
@@ -0,0 +1,134 @@
+package com.remotefalcon.controlpanel.util;
+
+import com.remotefalcon.controlpanel.response.dashboard.DashboardStatsResponse;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the streaming CSV export with the SXSSF XLSX export on a synthetic
+ * multi-season dashboard: wall time, bytes allocated by the exporting thread, and the
+ * size of the file produced. Tagged {@code benchmark}, so the default build skips it;
+ * run it with the {@code benchmark} profile (sizes are optional system properties):
+ *
+ * <pre>
+ *   mvn test -Pbenchmark -Dbenchmark.days=1095 -Dbenchmark.sequences=150
+ * </pre>
+ */
+@Tag("benchmark")
+public class ExportBenchmark {
+  private static final String TIMEZONE = "America/Chicago";
+  private static final int WARMUP_RUNS = 3;
+  private static final int MEASURED_RUNS = 5;
+
+  @Test
+  public void dashboardExports() throws Exception {
+    int days = Integer.getInteger("benchmark.days", 3 * 365);
+    int sequences = Integer.getInteger("benchmark.sequences", 150);
+    DashboardStatsResponse dashboardStats = dashboardStats(days, sequences);
+    System.out.printf("Dashboard: %d days x %d sequences%n", days, sequences);
+
+    ExcelUtil excelUtil = new ExcelUtil();
+    XlsxUtil xlsxUtil = new XlsxUtil();
+    long csv = run("csv", out -> excelUtil.generateDashboardExcel(dashboardStats, TIMEZONE, false).getBody().writeTo(out));
+    long gzip = run("csv.gz", out -> excelUtil.generateDashboardExcel(dashboardStats, TIMEZONE, true).getBody().writeTo(out));
+    long xlsx = run("xlsx", out -> xlsxUtil.generateDashboardXlsx(dashboardStats, TIMEZONE).getBody().writeTo(out));
+
+    assertTrue(csv > 0);
+    assertTrue(gzip > 0 && gzip < csv);
+    assertTrue(xlsx > 0);
+  }
+
+  private static long run(String name, Export export) throws Exception {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      export.writeTo(new CountingOutputStream());
+    }
+    long totalNanos = 0;
+    long totalAllocated = 0;
+    long size = 0;
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      CountingOutputStream out = new CountingOutputStream();
+      long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+      long start = System.nanoTime();
+      export.writeTo(out);
+      totalNanos += System.nanoTime() - start;
+      totalAllocated += threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+      assertTrue(out.count > 0, name + " export wrote nothing");
+      size = out.count;
+    }
+    System.out.printf("%-7s %8.1f ms %10.1f MB allocated %8.1f KB written%n", name,
+        totalNanos / 1e6 / MEASURED_RUNS, totalAllocated / 1048576.0 / MEASURED_RUNS, size / 1024.0);
+    return size;
+  }
+
+  private static DashboardStatsResponse dashboardStats(int days, int sequences) {
+    Random random = new Random(42);
+    ZoneId zone = ZoneId.of(TIMEZONE);
+    LocalDate firstDay = LocalDate.of(2022, 11, 1);
+    List<DashboardStatsResponse.Stat> page = new ArrayList<>();
+    List<DashboardStatsResponse.Stat> byDate = new ArrayList<>();
+    int[] sequenceTotals = new int[sequences];
+    for (int day = 0; day < days; day++) {
+      long date = firstDay.plusDays(day).atStartOfDay(zone).toInstant().toEpochMilli();
+      Set<String> viewerIps = new HashSet<>();
+      int visits = random.nextInt(400);
+      for (int visit = 0; visit < visits; visit++) {
+        viewerIps.add("10.0." + random.nextInt(256) + "." + random.nextInt(256));
+      }
+      page.add(DashboardStatsResponse.Stat.builder().date(date).total(visits).unique(viewerIps.size()).viewerIps(viewerIps).build());
+
+      List<DashboardStatsResponse.SequenceStat> daySequences = new ArrayList<>();
+      int dayTotal = 0;
+      for (int sequence = 0; sequence < sequences; sequence++) {
+        int total = random.nextInt(5);
+        if (total > 0) {
+          daySequences.add(DashboardStatsResponse.SequenceStat.builder().name("Sequence " + sequence).total(total).build());
+          sequenceTotals[sequence] += total;
+          dayTotal += total;
+        }
+      }
+      byDate.add(DashboardStatsResponse.Stat.builder().date(date).total(dayTotal).sequences(daySequences).build());
+    }
+    List<DashboardStatsResponse.SequenceStat> bySequence = new ArrayList<>();
+    for (int sequence = 0; sequence < sequences; sequence++) {
+      bySequence.add(DashboardStatsResponse.SequenceStat.builder().name("Sequence " + sequence).total(sequenceTotals[sequence]).build());
+    }
+    DashboardStatsResponse.Stat sequenceStat = DashboardStatsResponse.Stat.builder().sequences(bySequence).build();
+    return DashboardStatsResponse.builder()
+        .page(page)
+        .jukeboxByDate(byDate)
+        .jukeboxBySequence(sequenceStat)
+        .votingByDate(byDate)
+        .votingBySequence(sequenceStat)
+        .votingWinByDate(byDate)
+        .votingWinBySequence(sequenceStat)
+        .build();
+  }
+
+  @FunctionalInterface
+  private interface Export {
+    void writeTo(OutputStream out) throws Exception;
+  }
+
+  private static final class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+      this.count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      this.count += len;
+    }
+  }
+}